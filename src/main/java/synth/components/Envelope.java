@@ -1,12 +1,20 @@
 package synth.components;
 
+import java.util.Arrays;
+
 import synth.core.AudioComponent;
+import synth.core.FloatAudioComponent;
 
 /**
  * Represents an ADSR (Attack, Decay, Sustain, Release) envelope generator.
  * This component modulates the amplitude of an audio signal over time.
+ *
+ * A linear stage adds its increment to the level every sample. A curved stage tracks the gap between
+ * the level and a target set slightly past the end of the stage, and multiplies the gap by a constant
+ * every sample, so it bends exponentially yet still ends after the stage time. Either way each sample
+ * costs a single add or multiply on the level's dependency chain, with no Math.exp per sample.
  */
-public class Envelope implements AudioComponent {
+public class Envelope implements AudioComponent, FloatAudioComponent {
     /**
      * The different stages of the envelope.
      */
@@ -18,6 +26,38 @@ public class Envelope implements AudioComponent {
         RELEASE
     }
 
+    /**
+     * The shape of a ramp stage.
+     * Curved shapes aim past the end of the stage by the target ratio (relative to the height of the
+     * stage); the smaller the ratio, the more sharply the curve bends.
+     */
+    public enum Curve {
+        LINEAR(0.0),
+        SOFT(0.3),
+        EXPONENTIAL(0.001);
+
+        private final double targetRatio;
+        private final double logSpan; // ln((1 + ratio) / ratio), the time constants a curved stage spans
+
+        Curve(double targetRatio) {
+            this.targetRatio = targetRatio;
+            this.logSpan = targetRatio == 0.0 ? 0.0 : Math.log((1.0 + targetRatio) / targetRatio);
+        }
+    }
+
+    /**
+     * The curve of each ramp stage of an envelope.
+     */
+    public record Curves(Curve attack, Curve decay, Curve release) {
+        public static final Curves LINEAR = new Curves(Curve.LINEAR, Curve.LINEAR, Curve.LINEAR);
+
+        public Curves {
+            if (attack == null || decay == null || release == null) {
+                throw new IllegalArgumentException("Envelope curves cannot be null");
+            }
+        }
+    }
+
     // State Variables
     protected Stage currentStage;
     protected double currentMultiplier;
@@ -25,9 +65,22 @@ public class Envelope implements AudioComponent {
     protected double decayIncrement;
     protected double releaseIncrement;
 
+    // Stage recurrences: gap = gap * multiplier + offset, level = base + gap. A linear stage has a
+    // multiplier of 1.0 and a base of 0.0 (so the gap is the level); a curved stage has an offset of
+    // 0.0 and its target as the base.
+    private Curves curves = Curves.LINEAR;
+    private double gap;
+    private double attackMultiplier, attackOffset, attackBase;
+    private double decayMultiplier, decayOffset, decayBase;
+    private double releaseMultiplier, releaseOffset, releaseBase; // Fixed at note off, like the linear release increment
+    private double releaseCurveMultiplier;
+
     // Pre Computed Constant
     private final double sampleRateReciprocal;
 
+    // Largest rounding error a run is allowed per sample when working out its safe length (2^-52)
+    private static final double ROUNDING_MARGIN = 0x1.0p-52;
+
     // Settings
     // All timings are measured in seconds.
     protected double attackTime;
@@ -56,6 +109,7 @@ public class Envelope implements AudioComponent {
      */
     public void setStage(Stage newStage){
         this.currentStage = newStage;
+        this.gap = this.currentMultiplier - stageBase();
     }
 
     /**
@@ -66,6 +120,14 @@ public class Envelope implements AudioComponent {
         return this.currentStage;
     }
 
+    /**
+     * Gets the current output level of the envelope.
+     * @return The level at the end of the last processed sample, from 0.0 to 1.0.
+     */
+    public double getLevel(){
+        return this.currentMultiplier;
+    }
+
     /**
      * Sets the attack time of the envelope.
      * @param seconds The attack time in seconds. Must not be negative.
@@ -80,6 +142,7 @@ public class Envelope implements AudioComponent {
         } else{
             this.attackIncrement = this.sampleRateReciprocal / this.attackTime;
         }
+        updateAttack();
     }
 
     /**
@@ -96,6 +159,7 @@ public class Envelope implements AudioComponent {
         } else {
             this.decayIncrement = (1.0 - sustainLevel) * this.sampleRateReciprocal / this.decayTime;
         }
+        updateDecay();
     }
 
     /**
@@ -107,6 +171,7 @@ public class Envelope implements AudioComponent {
             throw new IllegalArgumentException("Sustain level must be between 0.0 and 1.0.");
         }
         this.sustainLevel = level;
+        updateDecay();
     }
 
     /**
@@ -118,6 +183,7 @@ public class Envelope implements AudioComponent {
             throw new IllegalArgumentException("Release time cannot be negative.");
         }
         this.releaseTime = seconds;
+        updateRelease();
     }
 
     /**
@@ -135,12 +201,84 @@ public class Envelope implements AudioComponent {
         setReleaseTime(releaseTime);
     }
 
+    /**
+     * Sets the curve of each ramp stage. Attack and decay change shape at once; a release already
+     * under way keeps the curve it started with.
+     * @param curves The attack, decay and release curves.
+     */
+    public void setCurves(Curves curves){
+        if (curves == null) {
+            throw new IllegalArgumentException("Envelope curves cannot be null");
+        }
+        this.curves = curves;
+        updateAttack();
+        updateDecay();
+        updateRelease();
+    }
+
+    public Curves getCurves(){
+        return this.curves;
+    }
+
+    // --- Stage Recurrences ---
+
+    // A stage whose parameters change while it is running carries on from its current level
+
+    private void updateAttack(){
+        Curve curve = this.curves.attack();
+        if (curve == Curve.LINEAR) {
+            this.attackMultiplier = 1.0;
+            this.attackOffset = this.attackIncrement;
+            this.attackBase = 0.0;
+        } else {
+            this.attackMultiplier = curveMultiplier(curve, this.attackTime);
+            this.attackOffset = 0.0;
+            this.attackBase = 1.0 + curve.targetRatio;
+        }
+        if (this.currentStage == Stage.ATTACK) {
+            setStage(Stage.ATTACK);
+        }
+    }
+
+    private void updateDecay(){
+        Curve curve = this.curves.decay();
+        if (curve == Curve.LINEAR) {
+            this.decayMultiplier = 1.0;
+            this.decayOffset = -this.decayIncrement;
+            this.decayBase = 0.0;
+        } else {
+            this.decayMultiplier = curveMultiplier(curve, this.decayTime);
+            this.decayOffset = 0.0;
+            this.decayBase = this.sustainLevel - curve.targetRatio * (1.0 - this.sustainLevel);
+        }
+        if (this.currentStage == Stage.DECAY) {
+            setStage(Stage.DECAY);
+        }
+    }
+
+    // The release recurrence depends on the level at note off, so it is only completed in noteOff
+    private void updateRelease(){
+        Curve curve = this.curves.release();
+        this.releaseCurveMultiplier = curve == Curve.LINEAR ? 1.0 : curveMultiplier(curve, this.releaseTime);
+    }
+
+    /**
+     * Gets the per-sample multiplier that takes a curve from the start of a stage to its end in the stage time.
+     * A zero stage time gives a multiplier of 0.0, which jumps to the target in one sample.
+     */
+    private double curveMultiplier(Curve curve, double seconds){
+        if (seconds == 0.0) {
+            return 0.0;
+        }
+        return Math.exp(-curve.logSpan * this.sampleRateReciprocal / seconds);
+    }
+
     /**
      * Triggers the attack phase of the envelope when a note is played.
      */
     public void noteOn(){
-        this.currentStage = Stage.ATTACK;
         this.currentMultiplier = 0.0;
+        setStage(Stage.ATTACK);
     }
 
     /**
@@ -156,56 +294,386 @@ public class Envelope implements AudioComponent {
             // Nothing left to release, or an instant release: drop straight to Idle.
             this.currentMultiplier = 0.0;
             this.releaseIncrement = 0.0;
-            this.currentStage = Stage.IDLE;
+            setStage(Stage.IDLE);
         } else {
             this.releaseIncrement = this.currentMultiplier * this.sampleRateReciprocal / this.releaseTime;
-            this.currentStage = Stage.RELEASE;
+            Curve curve = this.curves.release();
+            this.releaseMultiplier = this.releaseCurveMultiplier;
+            if (curve == Curve.LINEAR) {
+                this.releaseOffset = -this.releaseIncrement;
+                this.releaseBase = 0.0;
+            } else {
+                // Aim below zero in proportion to the starting level, so the release time does not depend on it
+                this.releaseOffset = 0.0;
+                this.releaseBase = -curve.targetRatio * this.currentMultiplier;
+            }
+            setStage(Stage.RELEASE);
         }
     }
 
+    /**
+     * Ends the envelope at once, dropping its level to 0.0 and its stage to Idle.
+     */
+    public void silence(){
+        this.currentMultiplier = 0.0;
+        this.releaseIncrement = 0.0;
+        setStage(Stage.IDLE);
+    }
+
     /**
      * Processes a block of audio, applying the envelope to each sample.
-     * @param inputBuffer The buffer containing the audio signal to be modulated.
+     * The block is rendered as segments: runs of samples that cannot change stage are filled in a
+     * tight loop without the stage switch, and only the samples where a stage may end are stepped
+     * one at a time. The output is identical to stepping every sample.
+     * @param inputBuffer The buffer containing the audio signal to be modulated, or null to output the envelope itself.
      * @param outputBuffer The buffer where the modulated audio will be written.
      * @param blockSize The number of samples to process.
      */
     @Override
     public void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize) {
-        for (int i = 0; i < blockSize; i++) {
-            switch (currentStage) {
-                case IDLE:
-                    currentMultiplier = 0.0;
-                    break;
-                case ATTACK:
-                    currentMultiplier += attackIncrement;
-                    if (currentMultiplier >= 1.0) {
-                        currentMultiplier = 1.0;
-                        setStage(Stage.DECAY);
-                    }
-                    break;
-                case DECAY:
-                    currentMultiplier -= decayIncrement;
-                    if (currentMultiplier <= sustainLevel) {
-                        currentMultiplier = sustainLevel;
-                        setStage(Stage.SUSTAIN);
-                    }
-                    break;
-                case SUSTAIN:
-                    currentMultiplier = sustainLevel;
-                    break;
-                case RELEASE:
-                    currentMultiplier -= releaseIncrement;
-                    if (currentMultiplier <= 0.0) {
-                        currentMultiplier = 0.0;
-                        setStage(Stage.IDLE);
-                    }
-                    break;
-            }
-            if (inputBuffer == null){
-                outputBuffer[i] = currentMultiplier;
+        int position = 0;
+        while (position < blockSize) {
+            int run = safeRunLength(blockSize - position);
+            if (run > 0) {
+                if (inputBuffer == null) {
+                    generateRun(outputBuffer, position, run);
+                } else {
+                    applyRun(inputBuffer, outputBuffer, position, run);
+                }
+                position += run;
+            } else {
+                // The stage may end on this sample
+                double level = stepSample();
+                outputBuffer[position] = inputBuffer == null ? level : inputBuffer[position] * level;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Processes a block of audio in single precision, applying the envelope to each sample.
+     * The level itself is still accumulated in double precision, so long ramps do not drift.
+     * @param inputBuffer The buffer containing the audio signal to be modulated, or null to output the envelope itself.
+     * @param outputBuffer The buffer where the modulated audio will be written.
+     * @param blockSize The number of samples to process.
+     */
+    @Override
+    public void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize) {
+        int position = 0;
+        while (position < blockSize) {
+            int run = safeRunLength(blockSize - position);
+            if (run > 0) {
+                if (inputBuffer == null) {
+                    generateRun(outputBuffer, position, run);
+                } else {
+                    applyRun(inputBuffer, outputBuffer, position, run);
+                }
+                position += run;
             } else {
-                outputBuffer[i] = inputBuffer[i] * currentMultiplier;
+                float level = (float) stepSample();
+                outputBuffer[position] = inputBuffer == null ? level : inputBuffer[position] * level;
+                position++;
+            }
+        }
+    }
+
+    // --- Segment Primitives ---
+    // Within a run the envelope follows gap = gap * multiplier + offset and level = base + gap each
+    // sample, and never reaches the end of its stage; IDLE and SUSTAIN are constant runs (multiplier
+    // 1.0, offset 0.0, base 0.0). Render loops elsewhere can drive the envelope with these directly:
+    // beginRun, then safeRunLength samples of the recurrence, then endRun, falling back to stepSample
+    // whenever the safe run length is 0.
+
+    /**
+     * Gets the number of upcoming samples that are certain not to end the current stage.
+     * Each sample rounds the level by at most 2^-52 (the level stays within 0 to 1), so the
+     * distance to the stage's limit is shrunk by that much per sample, and one further step is
+     * held back to cover the rounding of the estimate itself.
+     * @param remaining The number of samples left to render.
+     * @return A run length from 0 to remaining.
+     */
+    public int safeRunLength(int remaining) {
+        double multiplier;
+        double offset;
+        double base;
+        double limit;
+        switch (this.currentStage) {
+            case ATTACK -> {
+                multiplier = this.attackMultiplier;
+                offset = this.attackOffset;
+                base = this.attackBase;
+                limit = 1.0;
+            }
+            case DECAY -> {
+                multiplier = this.decayMultiplier;
+                offset = this.decayOffset;
+                base = this.decayBase;
+                limit = this.sustainLevel;
+            }
+            case RELEASE -> {
+                multiplier = this.releaseMultiplier;
+                offset = this.releaseOffset;
+                base = this.releaseBase;
+                limit = 0.0;
+            }
+            default -> {
+                return remaining;
+            }
+        }
+        // Distance still to travel, positive while the stage has not yet reached its limit
+        double distance = this.currentStage == Stage.ATTACK ? limit - this.currentMultiplier : this.currentMultiplier - limit;
+        double margin = (remaining + 1) * ROUNDING_MARGIN;
+        if (!(distance > margin)) {
+            return 0;
+        }
+
+        double steps;
+        if (multiplier == 1.0) {
+            // Linear: the level moves by the same amount every sample
+            steps = (distance - margin) / Math.abs(offset) - 1.0;
+        } else {
+            // Curved: the gap to the target shrinks by the multiplier every sample, and the stage
+            // ends once it is no larger than the gap between the limit and the target
+            double limitGap = Math.abs(limit - base) + margin;
+            steps = Math.log(limitGap / Math.abs(this.gap)) / Math.log(multiplier) - 1.0;
+        }
+        if (!(steps > 0.0)) {
+            return 0;
+        }
+        return steps >= remaining ? remaining : (int) steps;
+    }
+
+    /**
+     * Gets the state a run starts from: the gap for a ramp stage, or the held level for IDLE and SUSTAIN.
+     * @return The gap before the first sample of the run.
+     */
+    public double beginRun() {
+        return switch (this.currentStage) {
+            case IDLE -> 0.0;
+            case SUSTAIN -> this.sustainLevel;
+            default -> this.gap;
+        };
+    }
+
+    /**
+     * Gets the per-sample multiplier of the gap during a run of the current stage.
+     * @return The multiplier; 1.0 for linear and constant stages.
+     */
+    public double getRunMultiplier() {
+        return switch (this.currentStage) {
+            case ATTACK -> this.attackMultiplier;
+            case DECAY -> this.decayMultiplier;
+            case RELEASE -> this.releaseMultiplier;
+            default -> 1.0;
+        };
+    }
+
+    /**
+     * Gets the per-sample offset added to the gap during a run of the current stage. For a linear
+     * stage this is the signed increment; adding a negated increment is exactly the same as subtracting it.
+     * @return The offset; 0.0 for curved and constant stages.
+     */
+    public double getRunOffset() {
+        return switch (this.currentStage) {
+            case ATTACK -> this.attackOffset;
+            case DECAY -> this.decayOffset;
+            case RELEASE -> this.releaseOffset;
+            default -> 0.0;
+        };
+    }
+
+    /**
+     * Gets the base the gap is added to for the output level during a run of the current stage.
+     * @return The curve's target; 0.0 for linear and constant stages, where the gap is the level.
+     */
+    public double getRunBase() {
+        return stageBase();
+    }
+
+    /**
+     * Stores the state reached at the end of a run.
+     * @param gap The gap after the last sample of the run.
+     */
+    public void endRun(double gap) {
+        this.gap = gap;
+        this.currentMultiplier = stageBase() + gap;
+    }
+
+    /**
+     * Advances the envelope by one sample, checking for the end of the current stage.
+     * For a linear stage the gap is the level, its multiplier of 1.0 is exact and its base of 0.0
+     * adds nothing, so the result is the same as a plain add of the increment.
+     * @return The level for the sample.
+     */
+    public double stepSample() {
+        switch (currentStage) {
+            case IDLE:
+                currentMultiplier = 0.0;
+                break;
+            case ATTACK:
+                gap = gap * attackMultiplier + attackOffset;
+                currentMultiplier = attackBase + gap;
+                if (currentMultiplier >= 1.0) {
+                    currentMultiplier = 1.0;
+                    setStage(Stage.DECAY);
+                }
+                break;
+            case DECAY:
+                gap = gap * decayMultiplier + decayOffset;
+                currentMultiplier = decayBase + gap;
+                if (currentMultiplier <= sustainLevel) {
+                    currentMultiplier = sustainLevel;
+                    setStage(Stage.SUSTAIN);
+                }
+                break;
+            case SUSTAIN:
+                currentMultiplier = sustainLevel;
+                break;
+            case RELEASE:
+                gap = gap * releaseMultiplier + releaseOffset;
+                currentMultiplier = releaseBase + gap;
+                if (currentMultiplier <= 0.0) {
+                    currentMultiplier = 0.0;
+                    setStage(Stage.IDLE);
+                }
+                break;
+        }
+        return currentMultiplier;
+    }
+
+    /**
+     * Advances the envelope by a number of samples without writing them anywhere, for callers that
+     * only need the level at particular samples, such as a filter envelope read at control points.
+     * The levels are exactly those processBlock would have produced.
+     * @param samples The number of samples to advance by.
+     * @return The level of the last sample, or the current level if samples is 0.
+     */
+    public double advance(int samples) {
+        int remaining = samples;
+        while (remaining > 0) {
+            int run = safeRunLength(remaining);
+            if (run == 0) {
+                stepSample();
+                remaining--;
+                continue;
+            }
+            double gap = beginRun();
+            double multiplier = getRunMultiplier();
+            double increment = getRunOffset();
+            if (multiplier != 1.0) {
+                for (int i = 0; i < run; i++) {
+                    gap *= multiplier;
+                }
+            } else if (increment != 0.0) {
+                for (int i = 0; i < run; i++) {
+                    gap += increment;
+                }
+            }
+            endRun(gap);
+            remaining -= run;
+        }
+        return this.currentMultiplier;
+    }
+
+    private double stageBase() {
+        return switch (this.currentStage) {
+            case ATTACK -> this.attackBase;
+            case DECAY -> this.decayBase;
+            case RELEASE -> this.releaseBase;
+            default -> 0.0;
+        };
+    }
+
+    private void generateRun(double[] outputBuffer, int offset, int length) {
+        double level = beginRun();
+        double multiplier = getRunMultiplier();
+        double increment = getRunOffset();
+        double base = getRunBase();
+        int end = offset + length;
+        if (multiplier != 1.0) {
+            for (int i = offset; i < end; i++) {
+                level *= multiplier;
+                outputBuffer[i] = base + level;
+            }
+        } else if (increment == 0.0) {
+            Arrays.fill(outputBuffer, offset, end, level);
+        } else {
+            for (int i = offset; i < end; i++) {
+                level += increment;
+                outputBuffer[i] = level;
+            }
+        }
+        endRun(level);
+    }
+
+    private void applyRun(double[] inputBuffer, double[] outputBuffer, int offset, int length) {
+        double level = beginRun();
+        double multiplier = getRunMultiplier();
+        double increment = getRunOffset();
+        double base = getRunBase();
+        int end = offset + length;
+        if (multiplier != 1.0) {
+            for (int i = offset; i < end; i++) {
+                level *= multiplier;
+                outputBuffer[i] = inputBuffer[i] * (base + level);
+            }
+        } else if (increment == 0.0) {
+            for (int i = offset; i < end; i++) {
+                outputBuffer[i] = inputBuffer[i] * level;
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                level += increment;
+                outputBuffer[i] = inputBuffer[i] * level;
+            }
+        }
+        endRun(level);
+    }
+
+    private void generateRun(float[] outputBuffer, int offset, int length) {
+        double level = beginRun();
+        double multiplier = getRunMultiplier();
+        double increment = getRunOffset();
+        double base = getRunBase();
+        int end = offset + length;
+        if (multiplier != 1.0) {
+            for (int i = offset; i < end; i++) {
+                level *= multiplier;
+                outputBuffer[i] = (float) (base + level);
+            }
+        } else if (increment == 0.0) {
+            Arrays.fill(outputBuffer, offset, end, (float) level);
+        } else {
+            for (int i = offset; i < end; i++) {
+                level += increment;
+                outputBuffer[i] = (float) level;
+            }
+        }
+        endRun(level);
+    }
+
+    private void applyRun(float[] inputBuffer, float[] outputBuffer, int offset, int length) {
+        double level = beginRun();
+        double multiplier = getRunMultiplier();
+        double increment = getRunOffset();
+        double base = getRunBase();
+        int end = offset + length;
+        if (multiplier != 1.0) {
+            for (int i = offset; i < end; i++) {
+                level *= multiplier;
+                outputBuffer[i] = inputBuffer[i] * (float) (base + level);
+            }
+        } else if (increment == 0.0) {
+            float gain = (float) level;
+            for (int i = offset; i < end; i++) {
+                outputBuffer[i] = inputBuffer[i] * gain;
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                level += increment;
+                outputBuffer[i] = inputBuffer[i] * (float) level;
             }
         }
+        endRun(level);
     }
 }
@@ -0,0 +1,179 @@
+package synth.components;
+
+import java.util.Arrays;
+
+/**
+ * A stereo-linked look-ahead peak limiter for the master bus. The signal is delayed by the
+ * look-ahead, so the gain can start falling before a peak arrives and reach the gain that peak
+ * needs exactly as it is played, instead of clipping it.
+ *
+ * For each stereo frame the gain that would bring its louder channel down to the ceiling is
+ * computed; the minimum of that over the look-ahead window is held, released slowly back towards
+ * unity, and then averaged over the same window, which turns each step down into a smooth ramp that
+ * still never exceeds the gain any delayed frame needs. The running minimum uses a monotonic queue,
+ * so it costs O(1) per frame however long the window is.
+ *
+ * All state is allocated up front; processing allocates nothing and does not depend on the block size.
+ */
+public class LookAheadLimiter {
+
+    // Settings
+    private final double ceiling;
+    private final double releaseCoefficient;
+    private final int window; // Frames: the look-ahead plus the frame being played
+
+    // Delay line, interleaved stereo, holding the last lookAhead frames
+    private final double[] delayBuffer;
+    private int delayPosition;
+
+    // Running minimum of the required gain: a queue of gains, rising from head to tail, with the
+    // frame each was computed for. Both arrays are rings of window entries.
+    private final double[] queueGains;
+    private final int[] queueFrames;
+    private int queueHead;
+    private int queueSize;
+    private int frame;
+
+    // Released gain, and its moving average over the window
+    private double releasedGain;
+    private final double[] averageBuffer;
+    private int averagePosition;
+
+    /**
+     * Constructs a limiter.
+     * @param lookAhead The look-ahead, and so the latency, in frames. Must be positive.
+     * @param ceiling The highest level a sample may leave the limiter at. Must be positive.
+     * @param releaseTime The time constant, in seconds, for the gain to recover after a peak. Must be positive.
+     * @param sampleRate The sample rate of the audio system. Must be a positive value.
+     */
+    public LookAheadLimiter(int lookAhead, double ceiling, double releaseTime, double sampleRate) {
+        if (lookAhead <= 0) {
+            throw new IllegalArgumentException("Look-ahead must be positive.");
+        }
+        if (ceiling <= 0) {
+            throw new IllegalArgumentException("Ceiling must be positive.");
+        }
+        if (releaseTime <= 0) {
+            throw new IllegalArgumentException("Release time must be positive.");
+        }
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive.");
+        }
+        this.ceiling = ceiling;
+        this.releaseCoefficient = 1.0 - Math.exp(-1.0 / (releaseTime * sampleRate));
+        this.window = lookAhead + 1;
+        this.delayBuffer = new double[lookAhead * 2];
+        this.queueGains = new double[this.window];
+        this.queueFrames = new int[this.window];
+        this.averageBuffer = new double[this.window];
+        reset();
+    }
+
+    /**
+     * Limits a block of interleaved stereo samples in place. The output is the input delayed by
+     * the look-ahead.
+     * @param stereoBuffer The interleaved stereo samples.
+     * @param frames The number of stereo frames to process.
+     */
+    public void process(double[] stereoBuffer, int frames) {
+        double[] delay = this.delayBuffer;
+        double[] gains = this.queueGains;
+        int[] queueFrames = this.queueFrames;
+        double[] average = this.averageBuffer;
+        int window = this.window;
+        int delayPosition = this.delayPosition;
+        int head = this.queueHead;
+        int size = this.queueSize;
+        int frame = this.frame;
+        double released = this.releasedGain;
+        int averagePosition = this.averagePosition;
+
+        // Re-sum the average once per block, so rounding in the running sum cannot build up
+        double sum = 0.0;
+        for (double gain : average) {
+            sum += gain;
+        }
+        double windowReciprocal = 1.0 / window;
+
+        for (int i = 0; i < frames; i++) {
+            double left = stereoBuffer[2 * i];
+            double right = stereoBuffer[2 * i + 1];
+
+            // Gain this frame needs
+            double peak = Math.max(Math.abs(left), Math.abs(right));
+            double required = peak > this.ceiling ? this.ceiling / peak : 1.0;
+
+            // Running minimum: drop the oldest gain if it has left the window, then any queued gains
+            // no lower than this one. Expiring first keeps the queue within its window entries.
+            if (size > 0 && frame - queueFrames[head] >= window) {
+                head = head + 1 == window ? 0 : head + 1;
+                size--;
+            }
+            int tail = head + size;
+            if (tail >= window) {
+                tail -= window;
+            }
+            while (size > 0) {
+                int last = tail == 0 ? window - 1 : tail - 1;
+                if (gains[last] < required) {
+                    break;
+                }
+                tail = last;
+                size--;
+            }
+            gains[tail] = required;
+            queueFrames[tail] = frame;
+            size++;
+            double held = gains[head];
+
+            // Fall instantly, recover exponentially; never above the held gain
+            released = held < released ? held : released + (held - released) * this.releaseCoefficient;
+
+            // Smooth the steps with a moving average over the window
+            sum += released - average[averagePosition];
+            average[averagePosition] = released;
+            averagePosition = averagePosition + 1 == window ? 0 : averagePosition + 1;
+
+            // Swap the frame into the delay line and play the one from lookAhead frames ago
+            double gain = sum * windowReciprocal;
+            stereoBuffer[2 * i] = delay[delayPosition] * gain;
+            stereoBuffer[2 * i + 1] = delay[delayPosition + 1] * gain;
+            delay[delayPosition] = left;
+            delay[delayPosition + 1] = right;
+            delayPosition += 2;
+            if (delayPosition == delay.length) {
+                delayPosition = 0;
+            }
+            frame++;
+        }
+
+        this.delayPosition = delayPosition;
+        this.queueHead = head;
+        this.queueSize = size;
+        this.frame = frame;
+        this.releasedGain = released;
+        this.averagePosition = averagePosition;
+    }
+
+    /**
+     * Clears the delay line and returns the gain to unity.
+     */
+    public void reset() {
+        Arrays.fill(this.delayBuffer, 0.0);
+        Arrays.fill(this.averageBuffer, 1.0);
+        this.delayPosition = 0;
+        this.averagePosition = 0;
+        this.queueHead = 0;
+        this.queueSize = 0;
+        this.frame = 0;
+        this.releasedGain = 1.0;
+    }
+
+    /**
+     * Gets the latency of the limiter.
+     * @return The look-ahead, in frames.
+     */
+    public int getLatency() {
+        return this.window - 1;
+    }
+}
@@ -1,12 +1,13 @@
 package synth.components.filters;
 
 import synth.core.AudioComponent;
+import synth.core.FloatAudioComponent;
 
 /**
  * Represents an abstract filter that can process an audio signal.
  * This class provides the basic structure for different filter types.
  */
-public abstract class Filter implements AudioComponent {
+public abstract class Filter implements AudioComponent, FloatAudioComponent {
     protected final double sampleRate;
 
     /**
@@ -28,4 +29,13 @@ public abstract class Filter implements AudioComponent {
      */
     @Override
     public abstract void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize);
+
+    /**
+     * Processes a block of audio in single precision.
+     * @param inputBuffer The buffer containing the audio signal to be filtered.
+     * @param outputBuffer The buffer where the filtered audio will be written.
+     * @param blockSize The number of samples to process.
+     */
+    @Override
+    public abstract void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize);
 }
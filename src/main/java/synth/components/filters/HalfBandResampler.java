@@ -0,0 +1,165 @@
+package synth.components.filters;
+
+import java.util.Arrays;
+
+import synth.utils.SampleKernels;
+
+/**
+ * Converts a signal to twice its sample rate and back, so a stage such as the resonant filter can
+ * run oversampled. Both directions use the same linear-phase half-band low-pass, split into its
+ * two polyphase branches: every other tap of a half-band filter is zero and the centre tap is 1/2,
+ * so one sample of each upsampled pair is a delayed copy of the input, and the other, like each
+ * decimated sample, only needs the non-zero taps at the original rate.
+ *
+ * The upsampler and decimator each keep their own history, so a block can be upsampled, processed
+ * and decimated in turn. All buffers are allocated up front; nothing is allocated per block.
+ *
+ * The filtered branches run as block convolutions in SampleKernels, which use SIMD where
+ * available. The decimator first splits its input into even and odd samples, so both of its
+ * branches are unit-stride.
+ */
+public final class HalfBandResampler {
+
+    // Filter Design: a 47-tap windowed sinc with its cutoff at a quarter of the oversampled rate.
+    // Passes up to 0.4 of the original sample rate within 0.01 dB and stops images and aliases
+    // from 0.6 of it by over 60 dB.
+    public static final int TAPS = 47;
+    private static final double KAISER_BETA = 7.0;
+    private static final int CENTRE = (TAPS - 1) / 2; // Odd, so the centre tap is in the odd branch
+    private static final int BRANCH_TAPS = (TAPS + 1) / 2;
+
+    // The non-zero taps at even positions, and twice them for upsampling (which must restore the
+    // energy lost to the inserted zeros)
+    private static final double[] BRANCH = designBranch();
+    private static final double[] UP_BRANCH = new double[BRANCH_TAPS];
+    static {
+        for (int k = 0; k < BRANCH_TAPS; k++) {
+            UP_BRANCH[k] = 2.0 * BRANCH[k];
+        }
+    }
+
+    // Delays, in samples at the original rate: the copied branch of the upsampler, and the whole
+    // round trip through both directions
+    private static final int UP_COPY_DELAY = (CENTRE - 1) / 2;
+    public static final int LATENCY = CENTRE;
+
+    // Histories: each buffer holds the last inputs of the previous block followed by the new block.
+    // The decimator splits its input into the even and odd samples, one per branch.
+    private static final int HISTORY = BRANCH_TAPS - 1;
+    private static final int DOWN_COPY_DELAY = (CENTRE + 1) / 2;
+    private final double[] upBuffer;
+    private final double[] evenBuffer;
+    private final double[] oddBuffer;
+    private final double[] branchBuffer;
+    private final int maxLength;
+
+    /**
+     * Constructs a resampler for blocks of up to the given length.
+     * @param maxLength The most samples at the original rate per block. Must be positive.
+     */
+    public HalfBandResampler(int maxLength) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Maximum block length must be positive.");
+        }
+        this.maxLength = maxLength;
+        this.upBuffer = new double[HISTORY + maxLength];
+        this.evenBuffer = new double[HISTORY + maxLength];
+        this.oddBuffer = new double[HISTORY + maxLength];
+        this.branchBuffer = new double[maxLength];
+    }
+
+    /**
+     * Upsamples a block to twice the sample rate.
+     * @param inputBuffer The block at the original rate.
+     * @param outputBuffer The buffer for the upsampled block, at least 2 * length long.
+     * @param length The number of samples at the original rate, at most the maximum block length.
+     */
+    public void upsample(double[] inputBuffer, double[] outputBuffer, int length) {
+        checkLength(length);
+        double[] buffer = this.upBuffer;
+        double[] branch = this.branchBuffer;
+        System.arraycopy(inputBuffer, 0, buffer, HISTORY, length);
+
+        // Even outputs: the filtered branch
+        Arrays.fill(branch, 0, length, 0.0);
+        SampleKernels.convolveInto(branch, buffer, HISTORY, UP_BRANCH, length);
+        // Odd outputs: the centre tap, 2 * 1/2, so just the delayed input
+        for (int n = 0; n < length; n++) {
+            outputBuffer[2 * n] = branch[n];
+            outputBuffer[2 * n + 1] = buffer[HISTORY + n - UP_COPY_DELAY];
+        }
+        System.arraycopy(buffer, length, buffer, 0, HISTORY);
+    }
+
+    /**
+     * Low-pass filters and decimates a block at twice the sample rate back to the original rate.
+     * Each output is aligned with an even input sample, so the round trip latency is whole.
+     * @param inputBuffer The block at twice the rate, 2 * length samples.
+     * @param outputBuffer The buffer for the decimated block.
+     * @param length The number of samples at the original rate, at most the maximum block length.
+     */
+    public void downsample(double[] inputBuffer, double[] outputBuffer, int length) {
+        checkLength(length);
+        double[] even = this.evenBuffer;
+        double[] odd = this.oddBuffer;
+        for (int n = 0; n < length; n++) {
+            even[HISTORY + n] = inputBuffer[2 * n];
+            odd[HISTORY + n] = inputBuffer[2 * n + 1];
+        }
+
+        // The centre tap on the odd branch, then the filtered even branch
+        for (int n = 0; n < length; n++) {
+            outputBuffer[n] = 0.5 * odd[HISTORY + n - DOWN_COPY_DELAY];
+        }
+        SampleKernels.convolveInto(outputBuffer, even, HISTORY, BRANCH, length);
+        System.arraycopy(even, length, even, 0, HISTORY);
+        System.arraycopy(odd, length, odd, 0, HISTORY);
+    }
+
+    /**
+     * Clears both histories, as if the input had been silent.
+     */
+    public void reset() {
+        Arrays.fill(this.upBuffer, 0.0);
+        Arrays.fill(this.evenBuffer, 0.0);
+        Arrays.fill(this.oddBuffer, 0.0);
+    }
+
+    private void checkLength(int length) {
+        if (length < 0 || length > this.maxLength) {
+            throw new IllegalArgumentException("Block length must be between 0 and " + this.maxLength + ".");
+        }
+    }
+
+    /**
+     * Designs the even-position taps of the half-band filter: a Kaiser-windowed sinc, scaled so the
+     * branch sums to exactly 1/2 and each branch passes DC at unity gain.
+     */
+    private static double[] designBranch() {
+        double[] branch = new double[BRANCH_TAPS];
+        double sum = 0.0;
+        for (int k = 0; k < BRANCH_TAPS; k++) {
+            int offset = 2 * k - CENTRE; // Odd, so the sinc is non-zero
+            double x = Math.PI * offset / 2.0;
+            double position = 2.0 * (2 * k) / (TAPS - 1) - 1.0;
+            double window = besselI0(KAISER_BETA * Math.sqrt(1.0 - position * position)) / besselI0(KAISER_BETA);
+            branch[k] = 0.5 * (Math.sin(x) / x) * window;
+            sum += branch[k];
+        }
+        for (int k = 0; k < BRANCH_TAPS; k++) {
+            branch[k] *= 0.5 / sum;
+        }
+        return branch;
+    }
+
+    // Modified Bessel function of the first kind, order 0, by its power series
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2.0 * k)) * (x / (2.0 * k));
+            sum += term;
+        }
+        return sum;
+    }
+}
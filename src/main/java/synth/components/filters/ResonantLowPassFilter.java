@@ -5,6 +5,12 @@ import synth.utils.LookupTables;
 /**
  * Implements a resonant low-pass filter using the Topology-Preserving Transform (TPT)
  * State-Variable Filter (SVF) design by Vadim Zavalishin.
+ *
+ * Once its input stops, the filter's state decays towards zero indefinitely and would eventually
+ * reach subnormal numbers, which are very slow on x86. So whenever the integrators are stored at
+ * the end of a block, by this class or by a render loop running the filter inline, any far below
+ * audibility are flushed to zero. In double precision the state cannot decay from the threshold to
+ * the subnormal range within a block of ordinary length.
  */
 public class ResonantLowPassFilter extends Filter{
 
@@ -12,13 +18,23 @@ public class ResonantLowPassFilter extends Filter{
     private double integrator1;
     private double integrator2;
 
+    // Single-precision state, used only when the filter is driven by the float engine
+    private float integrator1F;
+    private float integrator2F;
+
+    // Denormal protection: integrators smaller than these are stored as zero (-400 and -300 dB)
+    private static final double FLUSH_THRESHOLD = 1e-20;
+    private static final float FLUSH_THRESHOLD_F = 1e-15f;
+
     // Constant Pre-Computed Constants
     private final double cutoffScalar;
     private final double resonanceScalar;
     private final double nyquistLimit;
+    private final int maxCutoffIndex;
 
     // Cached coefficients
     private double a1, a2, a3;
+    private float a1F, a2F, a3F;
     private int prevCutoffIndex = -1;
     private int prevResonanceIndex = -1;
 
@@ -31,6 +47,7 @@ public class ResonantLowPassFilter extends Filter{
         this.cutoffScalar = LookupTables.TABLE_SIZE / this.sampleRate;
         this.resonanceScalar = (LookupTables.RESONANCE_STEPS - 1) / 19.0; // Resonance ranges from 1 to 20
         this.nyquistLimit = (sampleRate / 2.0) - 1.0;
+        this.maxCutoffIndex = (int) (this.nyquistLimit * this.cutoffScalar);
         setParameters(1000, 1);
     }
 
@@ -54,13 +71,14 @@ public class ResonantLowPassFilter extends Filter{
         int targetResonanceIndex = (int) ((resonanceQ - 1.0) * this.resonanceScalar);
 
 
-        // Compare to cached values and fetch new coefficients from the LUTs
+        // Compare to cached values and derive new coefficients from the LUTs
         if (targetCutoffIndex != this.prevCutoffIndex || targetResonanceIndex != this.prevResonanceIndex){
             this.prevCutoffIndex = targetCutoffIndex;
             this.prevResonanceIndex = targetResonanceIndex;
-            this.a1 = LookupTables.A1_TABLE[targetCutoffIndex][targetResonanceIndex];
-            this.a2 = LookupTables.A2_TABLE[targetCutoffIndex][targetResonanceIndex];
-            this.a3 = LookupTables.A3_TABLE[targetCutoffIndex][targetResonanceIndex];
+            double g = LookupTables.TAN_TABLE[targetCutoffIndex];
+            double a1 = LookupTables.filterA1(targetCutoffIndex, targetResonanceIndex);
+            double a2 = g * a1;
+            storeCoefficients(a1, a2, g * a2);
         }
     }
 
@@ -83,5 +101,225 @@ public class ResonantLowPassFilter extends Filter{
 
             outputBuffer[i] = v2;
         }
+        setIntegrators(this.integrator1, this.integrator2);
+    }
+
+    /**
+     * Processes a block of audio while the cutoff follows a per-sample control signal.
+     * Every controlPeriod samples the coefficients for the cutoff at the end of the period are
+     * derived and the filter ramps linearly to them across the period, so a fast sweep moves
+     * smoothly while the table lookups and division are paid once per period rather than per sample.
+     * A period of 1 derives fresh coefficients for every sample. Cutoffs outside the valid range
+     * are clamped rather than rejected, as a modulated cutoff may briefly overshoot.
+     * @param inputBuffer The buffer containing the audio signal to be filtered.
+     * @param cutoffBuffer The cutoff frequency in Hz for each sample.
+     * @param resonanceQ The resonance factor (Q). Must be a positive value.
+     * @param outputBuffer The buffer where the filtered audio will be written.
+     * @param blockSize The number of samples to process.
+     * @param controlPeriod The number of samples between coefficient updates. Must be positive.
+     */
+    public void processBlockModulated(double[] inputBuffer, double[] cutoffBuffer, double resonanceQ,
+                                      double[] outputBuffer, int blockSize, int controlPeriod) {
+        int resonanceIndex = (int) ((resonanceQ - 1.0) * this.resonanceScalar);
+        double a1 = this.a1;
+        double a2 = this.a2;
+        double a3 = this.a3;
+        double ic1 = this.integrator1;
+        double ic2 = this.integrator2;
+        double periodReciprocal = 1.0 / controlPeriod;
+
+        for (int start = 0; start < blockSize; start += controlPeriod) {
+            int end = Math.min(start + controlPeriod, blockSize);
+            double step = end - start == controlPeriod ? periodReciprocal : 1.0 / (end - start);
+
+            // Target coefficients for the cutoff at the end of this period
+            int cutoffIndex = clampCutoffIndex(cutoffBuffer[end - 1]);
+            double g = LookupTables.TAN_TABLE[cutoffIndex];
+            double target1 = LookupTables.filterA1(cutoffIndex, resonanceIndex);
+            double target2 = g * target1;
+            double target3 = g * target2;
+            double delta1 = (target1 - a1) * step;
+            double delta2 = (target2 - a2) * step;
+            double delta3 = (target3 - a3) * step;
+
+            for (int i = start; i < end; i++) {
+                a1 += delta1;
+                a2 += delta2;
+                a3 += delta3;
+
+                double v3 = inputBuffer[i] - ic2;
+                double v1 = a1 * ic1 + a2 * v3;
+                double v2 = ic2 + a2 * ic1 + a3 * v3;
+
+                ic1 = 2 * v1 - ic1;
+                ic2 = 2 * v2 - ic2;
+
+                outputBuffer[i] = v2;
+            }
+
+            // Land exactly on the target so rounding in the ramp never accumulates
+            a1 = target1;
+            a2 = target2;
+            a3 = target3;
+            this.prevCutoffIndex = cutoffIndex;
+        }
+        this.prevResonanceIndex = resonanceIndex;
+        setIntegrators(ic1, ic2);
+        storeCoefficients(a1, a2, a3);
+    }
+
+    /**
+     * Processes a block of audio in single precision while the cutoff follows a per-sample control signal.
+     * See processBlockModulated(double[], ...); the coefficients are derived in double precision
+     * and ramped in single precision.
+     * @param inputBuffer The buffer containing the audio signal to be filtered.
+     * @param cutoffBuffer The cutoff frequency in Hz for each sample.
+     * @param resonanceQ The resonance factor (Q). Must be a positive value.
+     * @param outputBuffer The buffer where the filtered audio will be written.
+     * @param blockSize The number of samples to process.
+     * @param controlPeriod The number of samples between coefficient updates. Must be positive.
+     */
+    public void processBlockModulated(float[] inputBuffer, float[] cutoffBuffer, double resonanceQ,
+                                      float[] outputBuffer, int blockSize, int controlPeriod) {
+        int resonanceIndex = (int) ((resonanceQ - 1.0) * this.resonanceScalar);
+        float a1 = this.a1F;
+        float a2 = this.a2F;
+        float a3 = this.a3F;
+        float ic1 = this.integrator1F;
+        float ic2 = this.integrator2F;
+        float periodReciprocal = 1.0f / controlPeriod;
+        double target1 = this.a1;
+        double target2 = this.a2;
+        double target3 = this.a3;
+
+        for (int start = 0; start < blockSize; start += controlPeriod) {
+            int end = Math.min(start + controlPeriod, blockSize);
+            float step = end - start == controlPeriod ? periodReciprocal : 1.0f / (end - start);
+
+            int cutoffIndex = clampCutoffIndex(cutoffBuffer[end - 1]);
+            double g = LookupTables.TAN_TABLE[cutoffIndex];
+            target1 = LookupTables.filterA1(cutoffIndex, resonanceIndex);
+            target2 = g * target1;
+            target3 = g * target2;
+            float delta1 = ((float) target1 - a1) * step;
+            float delta2 = ((float) target2 - a2) * step;
+            float delta3 = ((float) target3 - a3) * step;
+
+            for (int i = start; i < end; i++) {
+                a1 += delta1;
+                a2 += delta2;
+                a3 += delta3;
+
+                float v3 = inputBuffer[i] - ic2;
+                float v1 = a1 * ic1 + a2 * v3;
+                float v2 = ic2 + a2 * ic1 + a3 * v3;
+
+                ic1 = 2 * v1 - ic1;
+                ic2 = 2 * v2 - ic2;
+
+                outputBuffer[i] = v2;
+            }
+
+            a1 = (float) target1;
+            a2 = (float) target2;
+            a3 = (float) target3;
+            this.prevCutoffIndex = cutoffIndex;
+        }
+        this.prevResonanceIndex = resonanceIndex;
+        setIntegrators(ic1, ic2);
+        storeCoefficients(target1, target2, target3);
+    }
+
+    // --- Fused Rendering Primitives ---
+    // Render loops elsewhere can run the filter inline: read the coefficients and integrators, run
+    // the same recurrence as processBlock, then store the integrators back. retarget moves the
+    // coefficients to a new cutoff, as at the end of each period of processBlockModulated.
+
+    /**
+     * Sets the coefficients for a new cutoff, clamping it to the valid range rather than rejecting it.
+     * @param cutoffFrequency The cutoff frequency in Hz.
+     * @param resonanceQ The resonance factor (Q). Must be a positive value.
+     */
+    public void retarget(double cutoffFrequency, double resonanceQ) {
+        int cutoffIndex = clampCutoffIndex(cutoffFrequency);
+        int resonanceIndex = (int) ((resonanceQ - 1.0) * this.resonanceScalar);
+        double g = LookupTables.TAN_TABLE[cutoffIndex];
+        double a1 = LookupTables.filterA1(cutoffIndex, resonanceIndex);
+        double a2 = g * a1;
+        storeCoefficients(a1, a2, g * a2);
+        this.prevCutoffIndex = cutoffIndex;
+        this.prevResonanceIndex = resonanceIndex;
+    }
+
+    public double getA1() { return this.a1; }
+    public double getA2() { return this.a2; }
+    public double getA3() { return this.a3; }
+    public float getA1F() { return this.a1F; }
+    public float getA2F() { return this.a2F; }
+    public float getA3F() { return this.a3F; }
+
+    public double getIntegrator1() { return this.integrator1; }
+    public double getIntegrator2() { return this.integrator2; }
+    public float getIntegrator1F() { return this.integrator1F; }
+    public float getIntegrator2F() { return this.integrator2F; }
+
+    /**
+     * Stores the integrators at the end of a block, flushing any that have decayed to near zero.
+     * @param integrator1 The first integrator state.
+     * @param integrator2 The second integrator state.
+     */
+    public void setIntegrators(double integrator1, double integrator2) {
+        this.integrator1 = Math.abs(integrator1) < FLUSH_THRESHOLD ? 0.0 : integrator1;
+        this.integrator2 = Math.abs(integrator2) < FLUSH_THRESHOLD ? 0.0 : integrator2;
+    }
+
+    /**
+     * Stores the single-precision integrators at the end of a block, flushing any that have decayed to near zero.
+     * @param integrator1 The first integrator state.
+     * @param integrator2 The second integrator state.
+     */
+    public void setIntegrators(float integrator1, float integrator2) {
+        this.integrator1F = Math.abs(integrator1) < FLUSH_THRESHOLD_F ? 0.0f : integrator1;
+        this.integrator2F = Math.abs(integrator2) < FLUSH_THRESHOLD_F ? 0.0f : integrator2;
+    }
+
+    private int clampCutoffIndex(double cutoffFrequency) {
+        int index = (int) (cutoffFrequency * this.cutoffScalar);
+        return Math.max(0, Math.min(index, this.maxCutoffIndex));
+    }
+
+    private void storeCoefficients(double a1, double a2, double a3) {
+        this.a1 = a1;
+        this.a2 = a2;
+        this.a3 = a3;
+        this.a1F = (float) a1;
+        this.a2F = (float) a2;
+        this.a3F = (float) a3;
+    }
+
+    /**
+     * Processes a block of audio in single precision, using the float coefficients and state.
+     * @param inputBuffer The buffer containing the audio signal to be filtered.
+     * @param outputBuffer The buffer where the filtered audio will be written.
+     * @param blockSize The number of samples to process.
+     */
+    @Override
+    public void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize) {
+        float a1 = this.a1F;
+        float a2 = this.a2F;
+        float a3 = this.a3F;
+        float ic1 = this.integrator1F;
+        float ic2 = this.integrator2F;
+        for (int i = 0; i < blockSize; i++) {
+            float v3 = inputBuffer[i] - ic2;
+            float v1 = a1 * ic1 + a2 * v3;
+            float v2 = ic2 + a2 * ic1 + a3 * v3;
+
+            ic1 = 2 * v1 - ic1;
+            ic2 = 2 * v2 - ic2;
+
+            outputBuffer[i] = v2;
+        }
+        setIntegrators(ic1, ic2);
     }
 }
@@ -1,22 +1,33 @@
 package synth.components.oscillators;
 
 import synth.core.AudioComponent;
+import synth.core.FloatAudioComponent;
 import synth.utils.LookupTables;
 
 /**
  * Represents an oscillator, which generates a periodic waveform at a specified frequency.
  * This is an abstract class that provides the basic structure for different oscillator types.
  */
-public abstract class Oscillator implements AudioComponent {
+public abstract class Oscillator implements AudioComponent, FloatAudioComponent {
 
     // Instance Variables
-    protected double phase;
+    // The phase is a wrapping 32-bit fixed-point fraction of a cycle: the top bits index the
+    // wavetable and the lower bits are the fraction between entries. Integer overflow wraps it
+    // once per cycle, so it never loses precision however long the oscillator runs.
+    protected int phase;
     protected double frequency;
-    protected double phaseIncrement;
+    protected int phaseIncrement;
 
-    // Pre Computed Constant
+    // Pre Computed Constants
     protected final double sampleRateReciprocal;
-    protected static final int phaseMask = LookupTables.TABLE_SIZE - 1;
+    protected static final int phaseShift = Integer.SIZE - Integer.numberOfTrailingZeros(LookupTables.WAVETABLE_SIZE);
+    // The fraction between table entries is made by shifting the phase's lower bits into the
+    // mantissa of a number in [1, 2) and subtracting 1, which is several times faster in the render
+    // loops than converting the bits to floating point
+    private static final int FRACTION_SHIFT = Integer.SIZE - phaseShift;
+    private static final long ONE_BITS = Double.doubleToRawLongBits(1.0);
+    private static final int ONE_BITS_F = Float.floatToRawIntBits(1.0f);
+    private static final double PHASE_STEPS_PER_CYCLE = 4294967296.0; // 2^32
 
     /**
      * Constructs an Oscillator with a given sample rate.
@@ -26,8 +37,11 @@ public abstract class Oscillator implements AudioComponent {
         if (sampleRate <= 0) {
             throw new IllegalArgumentException("Sample rate must be positive.");
         }
+        if (Integer.bitCount(LookupTables.WAVETABLE_SIZE) != 1) {
+            throw new IllegalArgumentException("Wavetable size must be a power of two.");
+        }
         this.sampleRateReciprocal = 1.0/ sampleRate;
-        this.phase = 0.0;
+        this.phase = 0;
     }
 
     // Methods
@@ -47,9 +61,84 @@ public abstract class Oscillator implements AudioComponent {
             throw new IllegalArgumentException("Frequency cannot be negative.");
         }
         this.frequency = frequency;
-        this.phaseIncrement = (LookupTables.TABLE_SIZE * frequency) * this.sampleRateReciprocal; // Default Phase Increment Equation, override for non-linear oscillators
+        this.phaseIncrement = phaseIncrementFor(frequency); // Default Phase Increment Equation, override for non-linear oscillators
+    }
+
+    /**
+     * Converts a frequency to a fixed-point phase increment, rounded to the nearest 2^-32 of a cycle.
+     * Frequencies at or above the sample rate wrap, as they alias anyway.
+     * @param frequency The frequency in Hz.
+     * @return The phase increment per sample.
+     */
+    protected int phaseIncrementFor(double frequency){
+        return (int) Math.round((PHASE_STEPS_PER_CYCLE * frequency) * this.sampleRateReciprocal);
+    }
+
+    // --- Fused Rendering Primitives ---
+    // Render loops elsewhere can run the oscillator inline: read the phase, increment and wavetable,
+    // generate lookup(table, phase) while adding the increment, then store the phase back.
+
+    /**
+     * Reads a wavetable at a fixed-point phase, interpolating linearly between the entries either
+     * side of it. The top bits of the phase index the table and the lower bits are the fraction.
+     * The table must have its guard point (see LookupTables), so the index after the last is valid.
+     * @param table The wavetable.
+     * @param phase The fixed-point phase.
+     * @return The interpolated sample.
+     */
+    public static double lookup(double[] table, int phase){
+        int index = phase >>> phaseShift;
+        long fractionBits = ((phase << FRACTION_SHIFT) & 0xFFFFFFFFL) << 20; // Top of the 52-bit mantissa
+        double fraction = Double.longBitsToDouble(ONE_BITS | fractionBits) - 1.0;
+        double current = table[index];
+        return current + (table[index + 1] - current) * fraction;
+    }
+
+    /**
+     * Reads a single-precision wavetable at a fixed-point phase, interpolating linearly.
+     * @param table The wavetable.
+     * @param phase The fixed-point phase.
+     * @return The interpolated sample.
+     */
+    public static float lookup(float[] table, int phase){
+        int index = phase >>> phaseShift;
+        float fraction = Float.intBitsToFloat(ONE_BITS_F | ((phase << FRACTION_SHIFT) >>> 9)) - 1.0f; // 23-bit mantissa
+        float current = table[index];
+        return current + (table[index + 1] - current) * fraction;
+    }
+
+    public int getPhase(){
+        return this.phase;
+    }
+
+    public void setPhase(int phase){
+        this.phase = phase;
+    }
+
+    public int getPhaseIncrement(){
+        return this.phaseIncrement;
+    }
+
+    /**
+     * Gets the shift that turns a fixed-point phase into a wavetable index.
+     * @return 32 minus the number of index bits.
+     */
+    public static int getPhaseShift(){
+        return phaseShift;
     }
 
+    /**
+     * Gets the wavetable the oscillator reads from.
+     * @return The double-precision wavetable.
+     */
+    public abstract double[] getWaveTable();
+
+    /**
+     * Gets the single-precision copy of the wavetable the oscillator reads from.
+     * @return The float wavetable.
+     */
+    public abstract float[] getWaveTableF();
+
     /**
      * Fills the output buffer with a block of generated samples.
      * The input buffer is ignored as oscillators are sound generators.
@@ -60,4 +149,15 @@ public abstract class Oscillator implements AudioComponent {
      */
     @Override
     public abstract void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize);
+
+    /**
+     * Fills the output buffer with a block of generated samples in single precision.
+     * The phase is the same fixed-point accumulator as in double precision, so the pitch is identical.
+     *
+     * @param inputBuffer The input buffer (ignored in this case).
+     * @param outputBuffer The buffer to fill with the oscillator's waveform.
+     * @param blockSize The number of samples to generate.
+     */
+    @Override
+    public abstract void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize);
 }
@@ -7,16 +7,6 @@ public class SineOscillator extends Oscillator{
         super(sampleRate);
     }
 
-    @Override
-    // In the case of the sine oscillator, the phase increment is an angle in rads
-    public void setFrequency(double frequency){
-        if (frequency < 0) {
-            throw new IllegalArgumentException("Frequency cannot be negative.");
-        }
-        this.frequency = frequency;
-        this.phaseIncrement = (LookupTables.TABLE_SIZE * frequency) * this.sampleRateReciprocal;
-    }
-
     /**
      * Fills the output buffer with a block of generated samples.
      * The input buffer is ignored as oscillators are sound generators.
@@ -27,11 +17,33 @@ public class SineOscillator extends Oscillator{
      */
     @Override
     public void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize){
+        double[] table = LookupTables.sine();
+        int phase = this.phase;
+        for (int i = 0; i < blockSize; i++){
+            outputBuffer[i] = lookup(table, phase); // Interpolates between the entries either side of the phase
+            phase += this.phaseIncrement; // Wraps on overflow, once per cycle
+        }
+        this.phase = phase;
+    }
+
+    @Override
+    public void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize){
+        float[] table = LookupTables.sineF();
+        int phase = this.phase;
         for (int i = 0; i < blockSize; i++){
-            int index = (int)this.phase & phaseMask; // The phaseMask wraps the phase increment to prevent overflow
-            outputBuffer[i] = LookupTables.SINE[index];
-            advancePhase();
+            outputBuffer[i] = lookup(table, phase);
+            phase += this.phaseIncrement;
         }
+        this.phase = phase;
     }
 
+    @Override
+    public double[] getWaveTable(){
+        return LookupTables.sine();
+    }
+
+    @Override
+    public float[] getWaveTableF(){
+        return LookupTables.sineF();
+    }
 }
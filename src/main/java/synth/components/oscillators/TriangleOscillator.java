@@ -4,9 +4,35 @@ import synth.utils.LookupTables;
 
 public class TriangleOscillator extends Oscillator{
 
+    private final boolean bandLimited;
+    private int level; // Band-limited mipmap level for the current frequency
+
     public TriangleOscillator(double sampleRate){
+        this(sampleRate, true);
+    }
+
+    /**
+     * Constructs a triangle oscillator.
+     * @param sampleRate The sample rate of the audio system. Must be a positive value.
+     * @param bandLimited true to read the band-limited mipmaps, false to read the naive table,
+     *                    which stays within -1 to 1 and suits an LFO.
+     */
+    public TriangleOscillator(double sampleRate, boolean bandLimited){
         super(sampleRate);
+        this.bandLimited = bandLimited;
         this.phaseIncrement = 0;
+        this.level = LookupTables.mipmapLevel(this.phaseIncrement);
+    }
+
+    /**
+     * Sets the frequency and switches to the mipmap table whose harmonics all stay below the
+     * Nyquist frequency at that pitch.
+     * @param frequency The frequency in Hz.
+     */
+    @Override
+    public void setFrequency(double frequency){
+        super.setFrequency(frequency);
+        this.level = LookupTables.mipmapLevel(this.phaseIncrement);
     }
 
     /**
@@ -19,10 +45,33 @@ public class TriangleOscillator extends Oscillator{
      */
     @Override
     public void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize){
+        double[] table = getWaveTable();
+        int phase = this.phase;
         for (int i = 0; i < blockSize; i++){
-            int index = (int)this.phase & phaseMask; // The phaseMask wraps the phase increment to prevent overflow
-            outputBuffer[i] = LookupTables.TRIANGLE[index];
-            advancePhase();
+            outputBuffer[i] = lookup(table, phase); // Interpolates between the entries either side of the phase
+            phase += this.phaseIncrement; // Wraps on overflow, once per cycle
         }
+        this.phase = phase;
+    }
+
+    @Override
+    public void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize){
+        float[] table = getWaveTableF();
+        int phase = this.phase;
+        for (int i = 0; i < blockSize; i++){
+            outputBuffer[i] = lookup(table, phase);
+            phase += this.phaseIncrement;
+        }
+        this.phase = phase;
+    }
+
+    @Override
+    public double[] getWaveTable(){
+        return this.bandLimited ? LookupTables.triangle(this.level) : LookupTables.naiveTriangle();
+    }
+
+    @Override
+    public float[] getWaveTableF(){
+        return this.bandLimited ? LookupTables.triangleF(this.level) : LookupTables.naiveTriangleF();
     }
 }
@@ -0,0 +1,17 @@
+package synth.core;
+
+/**
+ * The single-precision counterpart of AudioComponent, used by the float engine.
+ * Components implementing both keep one set of parameters and state, and a given
+ * instance is only ever driven through one of the two.
+ */
+public interface FloatAudioComponent {
+    /**
+     * Processes a block of audio samples.
+     *
+     * @param inputBuffer An array containing the input signal. Can be null if the component generates its own signal (like an oscillator).
+     * @param outputBuffer The array to write the processed output signal to.
+     * @param blockSize The number of samples to process in this block.
+     */
+    void processBlock(float[] inputBuffer, float[] outputBuffer, int blockSize);
+}
@@ -0,0 +1,340 @@
+package synth.core;
+
+import synth.components.Envelope;
+import synth.components.filters.ResonantLowPassFilter;
+import synth.components.oscillators.Oscillator;
+import synth.utils.SampleKernels;
+
+/**
+ * Renders the active voices together in a structure-of-arrays layout, for the double precision engine.
+ * Voices are loaded LANES at a time into lanes: their filter integrators and coefficients, amp
+ * envelope runs and gains are held in parallel primitive arrays, one element per voice, and their
+ * samples in sample-major buffers (buffer[sample * LANES + lane]). A group is rendered in three passes:
+ * the oscillators, one lane at a time; the filters, amp envelopes and panning, across all lanes at
+ * once, so the per-voice recurrences run side by side; and the sum into the mix, in lane order.
+ *
+ * The middle pass is split into stretches between the control period boundaries and amp envelope
+ * run ends of all the lanes. It uses VectorLaneKernels when the SIMD sample kernels are enabled
+ * (see SampleKernels), holding a vector of lanes in registers for a whole stretch; otherwise it
+ * runs one lane at a time.
+ *
+ * The voices still own their state between segments: it is loaded into the lanes at the start of
+ * a segment and stored back at the end. Each lane does the same arithmetic as the fused voice
+ * renderer and is summed into the mix in the same voice order as the serial path, so the output
+ * is identical to rendering the voices one at a time.
+ */
+public class LaneVoiceRenderer {
+
+    // Voices rendered together, a whole number of SIMD vectors
+    public static final int LANES = 8;
+
+    private final Voice[] laneVoices = new Voice[LANES];
+
+    // Lane state, also read and written by VectorLaneKernels
+    // Filter: integrators, and coefficients with their per-sample ramp over the control period
+    final double[] integrators1 = new double[LANES];
+    final double[] integrators2 = new double[LANES];
+    final double[] coefficients1 = new double[LANES];
+    final double[] coefficients2 = new double[LANES];
+    final double[] coefficients3 = new double[LANES];
+    final double[] deltas1 = new double[LANES];
+    final double[] deltas2 = new double[LANES];
+    final double[] deltas3 = new double[LANES];
+
+    // Amp envelope: the current run of gap = gap * multiplier + offset, level = base + gap
+    final double[] gaps = new double[LANES];
+    final double[] multipliers = new double[LANES];
+    final double[] offsets = new double[LANES];
+    final double[] bases = new double[LANES];
+    private final int[] runEnds = new int[LANES];
+    private final boolean[] steppedRuns = new boolean[LANES];
+
+    // Gains: velocity and post-filter gain, and panning
+    final double[] outputMults = new double[LANES];
+    final double[] leftGains = new double[LANES];
+    final double[] rightGains = new double[LANES];
+
+    // Sample-major buffers: oscillator samples, and each voice's share of the mix
+    final double[] samples;
+    final double[] leftSamples;
+    final double[] rightSamples;
+
+    /**
+     * Constructs a LaneVoiceRenderer.
+     * @param blockSize The largest number of samples rendered per segment.
+     */
+    public LaneVoiceRenderer(int blockSize) {
+        this.samples = new double[LANES * blockSize];
+        this.leftSamples = new double[LANES * blockSize];
+        this.rightSamples = new double[LANES * blockSize];
+    }
+
+    /**
+     * Renders a segment for every active voice and sums it into the mix. Voices are taken from the
+     * end of the active list backwards, the order the serial path renders them in. Retiring finished
+     * voices is left to the caller.
+     * @param voices The voice bank.
+     * @param activeVoices The indices of the active voices.
+     * @param activeCount The number of active voices.
+     * @param mix The interleaved stereo mix buffer.
+     * @param offset The first sample of the segment within the mix buffer.
+     * @param length The number of samples to render.
+     * @param volume The gain applied to each voice as it is summed.
+     * @param silenceThreshold The level a releasing voice's mixed peak must stay at or below to be retired (see Voice.endIfSilent).
+     */
+    public void render(Voice[] voices, int[] activeVoices, int activeCount, double[] mix, int offset, int length,
+                       double volume, double silenceThreshold) {
+        for (int next = activeCount - 1; next >= 0; next -= LANES) {
+            int lanes = Math.min(LANES, next + 1);
+            for (int lane = 0; lane < LANES; lane++) {
+                if (lane < lanes) {
+                    load(lane, voices[activeVoices[next - lane]], length);
+                } else {
+                    clear(lane, length);
+                }
+            }
+            renderLanes(lanes, length, volume);
+            mixLanes(lanes, mix, offset * 2, length);
+            for (int lane = 0; lane < lanes; lane++) {
+                store(lane, length, silenceThreshold);
+            }
+        }
+    }
+
+    /**
+     * Loads a voice's state into a lane, renders its oscillator with the pre-filter gain for the
+     * whole segment, and sets its filter coefficients for a segment without a control period.
+     */
+    private void load(int lane, Voice voice, int length) {
+        this.laneVoices[lane] = voice;
+
+        // Oscillator and pre-filter gain
+        Oscillator oscillator = voice.getOscillator();
+        double[] table = oscillator.getWaveTable();
+        int phase = oscillator.getPhase();
+        int phaseIncrement = oscillator.getPhaseIncrement();
+        double preFilterMult = voice.getPreFilterMult();
+        for (int i = 0; i < length; i++) {
+            this.samples[i * LANES + lane] = Oscillator.lookup(table, phase) * preFilterMult;
+            phase += phaseIncrement;
+        }
+        oscillator.setPhase(phase);
+
+        // Filter
+        ResonantLowPassFilter filter = voice.getFilter();
+        if (voice.getFilterControlPeriod() == 0) {
+            voice.updateBlockRateCutoff(length);
+        }
+        this.integrators1[lane] = filter.getIntegrator1();
+        this.integrators2[lane] = filter.getIntegrator2();
+        this.coefficients1[lane] = filter.getA1();
+        this.coefficients2[lane] = filter.getA2();
+        this.coefficients3[lane] = filter.getA3();
+        this.deltas1[lane] = 0.0;
+        this.deltas2[lane] = 0.0;
+        this.deltas3[lane] = 0.0;
+
+        // Amp envelope runs start in renderLanes
+        this.runEnds[lane] = 0;
+        this.steppedRuns[lane] = true;
+
+        this.outputMults[lane] = voice.getOutputMult();
+        this.leftGains[lane] = voice.getLeftGain();
+        this.rightGains[lane] = voice.getRightGain();
+    }
+
+    /**
+     * Silences an unused lane of a partial group, so the middle pass can still run over whole vectors.
+     */
+    private void clear(int lane, int length) {
+        for (int i = 0; i < length; i++) {
+            this.samples[i * LANES + lane] = 0.0;
+        }
+        this.integrators1[lane] = 0.0;
+        this.integrators2[lane] = 0.0;
+        this.coefficients1[lane] = 0.0;
+        this.coefficients2[lane] = 0.0;
+        this.coefficients3[lane] = 0.0;
+        this.deltas1[lane] = 0.0;
+        this.deltas2[lane] = 0.0;
+        this.deltas3[lane] = 0.0;
+        this.gaps[lane] = 0.0;
+        this.multipliers[lane] = 0.0;
+        this.offsets[lane] = 0.0;
+        this.bases[lane] = 0.0;
+        this.outputMults[lane] = 0.0;
+        this.leftGains[lane] = 0.0;
+        this.rightGains[lane] = 0.0;
+    }
+
+    /**
+     * Stores a lane's filter integrators back into its voice, and lets a releasing voice check for
+     * silence. The lane's samples already include the mix gain, so their peak is the same value the
+     * serial path measures.
+     */
+    private void store(int lane, int length, double silenceThreshold) {
+        Voice voice = this.laneVoices[lane];
+        voice.getFilter().setIntegrators(this.integrators1[lane], this.integrators2[lane]);
+        if (voice.isReleasing()) {
+            double peak = 0.0;
+            for (int i = 0; i < length; i++) {
+                int index = i * LANES + lane;
+                peak = Math.max(peak, Math.max(Math.abs(this.leftSamples[index]), Math.abs(this.rightSamples[index])));
+            }
+            voice.endIfSilent(peak, silenceThreshold, length);
+        }
+        this.laneVoices[lane] = null;
+    }
+
+    /**
+     * Runs the filters, amp envelopes and panning of a group over the segment, one stretch at a
+     * time between the control period boundaries and amp envelope run ends of its lanes.
+     */
+    private void renderLanes(int lanes, int length, double volume) {
+        boolean vectorised = SampleKernels.isVectorised();
+        int start = 0;
+        while (start < length) {
+            int end = length;
+            for (int lane = 0; lane < lanes; lane++) {
+                end = Math.min(end, retargetLane(lane, start, length));
+                end = Math.min(end, beginRun(lane, start, length));
+            }
+
+            if (vectorised) {
+                VectorLaneKernels.renderLanes(this, LANES, start, end, volume);
+            } else {
+                for (int lane = 0; lane < lanes; lane++) {
+                    renderLane(lane, start, end, volume);
+                }
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                if (this.runEnds[lane] == end && !this.steppedRuns[lane]) {
+                    this.laneVoices[lane].getAmpEnvelope().endRun(this.gaps[lane]);
+                }
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Runs one lane's filter, amp envelope and panning from start to end.
+     * The same arithmetic as the fused voice renderer and VectorLaneKernels.
+     */
+    private void renderLane(int lane, int start, int end, double volume) {
+        double[] samples = this.samples;
+        double ic1 = this.integrators1[lane];
+        double ic2 = this.integrators2[lane];
+        double a1 = this.coefficients1[lane];
+        double a2 = this.coefficients2[lane];
+        double a3 = this.coefficients3[lane];
+        double delta1 = this.deltas1[lane];
+        double delta2 = this.deltas2[lane];
+        double delta3 = this.deltas3[lane];
+        double gap = this.gaps[lane];
+        double multiplier = this.multipliers[lane];
+        double offset = this.offsets[lane];
+        double base = this.bases[lane];
+        double outputMult = this.outputMults[lane];
+        double leftGain = this.leftGains[lane];
+        double rightGain = this.rightGains[lane];
+
+        for (int i = start; i < end; i++) {
+            int index = i * LANES + lane;
+
+            // TPT State-Variable Filter
+            a1 += delta1;
+            a2 += delta2;
+            a3 += delta3;
+            double v3 = samples[index] - ic2;
+            double v1 = a1 * ic1 + a2 * v3;
+            double v2 = ic2 + a2 * ic1 + a3 * v3;
+            ic1 = 2 * v1 - ic1;
+            ic2 = 2 * v2 - ic2;
+
+            // Amp envelope, velocity, post-filter gain, panning and the voice mix gain
+            gap = gap * multiplier + offset;
+            double monoSample = v2 * (base + gap) * outputMult;
+            this.leftSamples[index] = monoSample * leftGain * volume;
+            this.rightSamples[index] = monoSample * rightGain * volume;
+        }
+
+        this.integrators1[lane] = ic1;
+        this.integrators2[lane] = ic2;
+        this.coefficients1[lane] = a1;
+        this.coefficients2[lane] = a2;
+        this.coefficients3[lane] = a3;
+        this.gaps[lane] = gap;
+    }
+
+    /**
+     * Sums each lane's share into the mix, in lane order for every sample: the order the serial
+     * path adds the voices in.
+     */
+    private void mixLanes(int lanes, double[] mix, int mixOffset, int length) {
+        double[] leftSamples = this.leftSamples;
+        double[] rightSamples = this.rightSamples;
+        for (int i = 0; i < length; i++) {
+            double left = mix[mixOffset + i * 2];
+            double right = mix[mixOffset + i * 2 + 1];
+            for (int lane = 0; lane < lanes; lane++) {
+                left += leftSamples[i * LANES + lane];
+                right += rightSamples[i * LANES + lane];
+            }
+            mix[mixOffset + i * 2] = left;
+            mix[mixOffset + i * 2 + 1] = right;
+        }
+    }
+
+    /**
+     * Starts a lane's next amp envelope run if its current one ends at the given sample: either a
+     * run of the recurrence, or a single stepped sample at a fixed level when its stage may end on
+     * this sample, as the fused voice renderer does.
+     * @return The sample the lane's current run ends on.
+     */
+    private int beginRun(int lane, int start, int length) {
+        if (this.runEnds[lane] > start) {
+            return this.runEnds[lane];
+        }
+        Envelope ampEnvelope = this.laneVoices[lane].getAmpEnvelope();
+        int run = ampEnvelope.safeRunLength(length - start);
+        boolean stepped = run == 0;
+        this.steppedRuns[lane] = stepped;
+        this.gaps[lane] = stepped ? 0.0 : ampEnvelope.beginRun();
+        this.multipliers[lane] = stepped ? 0.0 : ampEnvelope.getRunMultiplier();
+        this.offsets[lane] = stepped ? 0.0 : ampEnvelope.getRunOffset();
+        this.bases[lane] = stepped ? ampEnvelope.stepSample() : ampEnvelope.getRunBase();
+        this.runEnds[lane] = stepped ? start + 1 : start + run;
+        return this.runEnds[lane];
+    }
+
+    /**
+     * Starts a lane's next filter control period if its current one ends at the given sample:
+     * lands its coefficients on the previous target and ramps them towards the cutoff at the end
+     * of the new period, as the fused voice renderer does.
+     * @return The sample the lane's current control period ends on.
+     */
+    private int retargetLane(int lane, int start, int length) {
+        Voice voice = this.laneVoices[lane];
+        int period = voice.getFilterControlPeriod();
+        if (period == 0) {
+            return length;
+        }
+        if (start % period != 0) {
+            return Math.min(start - start % period + period, length);
+        }
+        ResonantLowPassFilter filter = voice.getFilter();
+        // Land exactly on the previous target so rounding in the ramp never accumulates
+        this.coefficients1[lane] = filter.getA1();
+        this.coefficients2[lane] = filter.getA2();
+        this.coefficients3[lane] = filter.getA3();
+
+        int end = Math.min(start + period, length);
+        double step = end - start == period ? 1.0 / period : 1.0 / (end - start);
+        voice.retargetFilterCutoff(end - start);
+        this.deltas1[lane] = (filter.getA1() - this.coefficients1[lane]) * step;
+        this.deltas2[lane] = (filter.getA2() - this.coefficients2[lane]) * step;
+        this.deltas3[lane] = (filter.getA3() - this.coefficients3[lane]) * step;
+        return end;
+    }
+}
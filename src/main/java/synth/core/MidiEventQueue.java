@@ -0,0 +1,164 @@
+package synth.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, allocation-free single-producer/single-consumer ring of packed MIDI events.
+ * The MIDI thread enqueues events and the audio thread drains them at the start of each block,
+ * so neither thread ever waits on the other.
+ *
+ * Events are packed into a single long:
+ * bits 0-31 hold the velocity as float bits, bits 32-39 the pitch, bits 40-47 the event type and
+ * bits 48-51 the MIDI channel. Each event also carries the System.nanoTime() at which it occurred
+ * so the audio thread can place it inside the block. A patch change carries the patch snapshot
+ * to apply, in a parallel slot published with the event.
+ */
+public class MidiEventQueue {
+
+    // Event Types
+    public static final int NOTE_ON = 1;
+    public static final int NOTE_OFF = 2;
+    public static final int PATCH_CHANGE = 3;
+
+    // Ring Storage
+    private final long[] events;
+    private final long[] eventTimes;
+    private final Patch[] patches;
+    private final int indexMask;
+
+    // Sequence counters. Only the producer writes tail and only the consumer writes head.
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+
+    // Producer-local cache of the consumer position, avoids reading head on every offer
+    private long cachedHead = 0;
+
+    /**
+     * Constructs a MidiEventQueue.
+     * @param capacity The maximum number of pending events. Must be a positive power of two.
+     */
+    public MidiEventQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two.");
+        }
+        this.events = new long[capacity];
+        this.eventTimes = new long[capacity];
+        this.patches = new Patch[capacity];
+        this.indexMask = capacity - 1;
+    }
+
+    /**
+     * Gets the maximum number of pending events.
+     * @return The ring capacity.
+     */
+    public int capacity() {
+        return this.events.length;
+    }
+
+    /**
+     * Enqueues a packed event. Must only be called from the single producer thread.
+     * @param event The packed event.
+     * @param eventTimeNanos The System.nanoTime() at which the event occurred.
+     * @return true if the event was queued, false if the ring was full and the event was dropped.
+     */
+    public boolean offer(long event, long eventTimeNanos) {
+        return offer(event, eventTimeNanos, null);
+    }
+
+    /**
+     * Enqueues a packed event with a patch snapshot. Must only be called from the single producer thread.
+     * @param event The packed event.
+     * @param eventTimeNanos The System.nanoTime() at which the event occurred.
+     * @param patch The patch the event carries, or null.
+     * @return true if the event was queued, false if the ring was full and the event was dropped.
+     */
+    public boolean offer(long event, long eventTimeNanos, Patch patch) {
+        long currentTail = this.tail.get();
+        if (currentTail - this.cachedHead >= this.events.length) {
+            this.cachedHead = this.head.get();
+            if (currentTail - this.cachedHead >= this.events.length) {
+                return false;
+            }
+        }
+        int index = (int) currentTail & this.indexMask;
+        this.events[index] = event;
+        this.eventTimes[index] = eventTimeNanos;
+        this.patches[index] = patch;
+        this.tail.lazySet(currentTail + 1); // Ordered store publishes the slot before the new tail
+        return true;
+    }
+
+    /**
+     * Dequeues every pending event in arrival order. Must only be called from the single consumer thread.
+     * The ring lets go of each patch as it is drained.
+     * @param eventsOut The array to receive the packed events. Must hold at least capacity() entries.
+     * @param timesOut The array to receive the event times. Must hold at least capacity() entries.
+     * @param patchesOut The array to receive the patches carried by the events. Must hold at least capacity() entries.
+     * @return The number of events written.
+     */
+    public int drainTo(long[] eventsOut, long[] timesOut, Patch[] patchesOut) {
+        long currentHead = this.head.get();
+        int count = (int) (this.tail.get() - currentHead);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (currentHead + i) & this.indexMask;
+            eventsOut[i] = this.events[index];
+            timesOut[i] = this.eventTimes[index];
+            patchesOut[i] = this.patches[index];
+            this.patches[index] = null;
+        }
+        this.head.lazySet(currentHead + count);
+        return count;
+    }
+
+    // --- Packing Helpers ---
+
+    /**
+     * Packs a note event on MIDI channel 0 into a single long.
+     * @param type The event type (NOTE_ON or NOTE_OFF).
+     * @param pitchMIDI The MIDI pitch of the note.
+     * @param velocity The velocity of the note (0.0 to 1.0).
+     * @return The packed event.
+     */
+    public static long pack(int type, byte pitchMIDI, double velocity) {
+        return pack(type, 0, pitchMIDI, velocity);
+    }
+
+    /**
+     * Packs a note event into a single long.
+     * @param type The event type (NOTE_ON or NOTE_OFF).
+     * @param channel The MIDI channel (0-15).
+     * @param pitchMIDI The MIDI pitch of the note.
+     * @param velocity The velocity of the note (0.0 to 1.0).
+     * @return The packed event.
+     */
+    public static long pack(int type, int channel, byte pitchMIDI, double velocity) {
+        return ((long) (channel & 0xF) << 48)
+                | ((long) type << 40)
+                | ((long) (pitchMIDI & 0xFF) << 32)
+                | (Float.floatToRawIntBits((float) velocity) & 0xFFFFFFFFL);
+    }
+
+    public static int type(long event) {
+        return (int) (event >>> 40) & 0xFF;
+    }
+
+    public static int channel(long event) {
+        return (int) (event >>> 48) & 0xF;
+    }
+
+    public static byte pitch(long event) {
+        return (byte) (event >>> 32);
+    }
+
+    /**
+     * Packs a patch change marker, whose patch is carried alongside it.
+     * @return The packed event.
+     */
+    public static long packPatchChange() {
+        return (long) PATCH_CHANGE << 40;
+    }
+
+    public static double velocity(long event) {
+        return Float.intBitsToFloat((int) event);
+    }
+}
@@ -0,0 +1,290 @@
+package synth.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import synth.utils.SampleKernels;
+
+/**
+ * Renders voices across a fixed pool of worker threads.
+ * The audio thread publishes a segment to render, joins in as an extra worker, and waits on a
+ * spinning per-block barrier. Voices are claimed dynamically one at a time so uneven voice costs
+ * still balance, and each thread sums into its own mix buffer; the buffers are reduced into the
+ * output by the audio thread once every participating worker has finished.
+ *
+ * A worker that has not woken up by the time the audio thread has run out of voices is skipped
+ * for that job rather than waited for, so a parked worker never delays the block.
+ */
+public class ParallelVoiceRenderer {
+
+    // Spin iterations before an idle worker parks, keeps wake-up latency low between blocks
+    private static final int SPIN_LIMIT = 20_000;
+
+    private final Worker[] workers;
+    private final boolean useFloat;
+
+    // One per worker, plus one for the audio thread (last). Only the engine's precision is allocated.
+    private final double[][] mixBuffers;
+    private final double[][] voiceBuffers;
+    private final float[][] mixBuffersF;
+    private final float[][] voiceBuffersF;
+
+    // Job description, written by the audio thread before the generation is bumped
+    private Voice[] jobVoices;
+    private int[] jobActiveVoices;
+    private int jobActiveCount;
+    private int jobLength;
+    private double jobVolume;
+    private double jobSilenceThreshold;
+
+    private final AtomicInteger nextVoice = new AtomicInteger(0);
+    private final boolean[] participating;
+    private volatile int generation = 0;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a ParallelVoiceRenderer and starts its worker threads.
+     * @param workerThreads The number of worker threads in addition to the audio thread. Must be positive.
+     * @param blockSize The largest number of samples rendered per job.
+     */
+    public ParallelVoiceRenderer(int workerThreads, int blockSize) {
+        this(workerThreads, blockSize, Synthesiser.Precision.DOUBLE);
+    }
+
+    /**
+     * Constructs a ParallelVoiceRenderer for voices of the given precision and starts its worker threads.
+     * @param workerThreads The number of worker threads in addition to the audio thread. Must be positive.
+     * @param blockSize The largest number of samples rendered per job.
+     * @param precision The precision of the voices it will render.
+     */
+    public ParallelVoiceRenderer(int workerThreads, int blockSize, Synthesiser.Precision precision) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("Number of worker threads must be positive.");
+        }
+        this.workers = new Worker[workerThreads];
+        this.useFloat = precision == Synthesiser.Precision.FLOAT;
+        this.mixBuffers = this.useFloat ? null : new double[workerThreads + 1][blockSize * 2];
+        this.voiceBuffers = this.useFloat ? null : new double[workerThreads + 1][blockSize * 2];
+        this.mixBuffersF = this.useFloat ? new float[workerThreads + 1][blockSize * 2] : null;
+        this.voiceBuffersF = this.useFloat ? new float[workerThreads + 1][blockSize * 2] : null;
+        this.participating = new boolean[workerThreads];
+
+        for (int i = 0; i < workerThreads; i++) {
+            this.workers[i] = new Worker(i);
+            Thread thread = new Thread(this.workers[i], "voice-render-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            this.workers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Gets the number of worker threads, not counting the audio thread.
+     * @return The worker count.
+     */
+    public int getWorkerCount() {
+        return this.workers.length;
+    }
+
+    /**
+     * Renders every active voice for one segment and sums the result into the output buffer.
+     * Must only be called from the audio thread.
+     * @param voices The voice bank.
+     * @param activeVoices The indices of the voices to render.
+     * @param activeCount The number of valid entries in activeVoices.
+     * @param stereoOutputBuffer The interleaved stereo mix buffer.
+     * @param offset The first sample of the segment within the block.
+     * @param length The number of samples in the segment.
+     * @param volume The gain applied to each voice as it is summed.
+     * @param silenceThreshold The level a releasing voice's mixed peak must stay at or below to be retired (see Voice.endIfSilent).
+     */
+    public void render(Voice[] voices, int[] activeVoices, int activeCount,
+                       double[] stereoOutputBuffer, int offset, int length, double volume, double silenceThreshold) {
+        runJob(voices, activeVoices, activeCount, length, volume, silenceThreshold);
+
+        // Reduce the per-thread mix buffers into the output
+        int mixOffset = offset * 2;
+        for (int w = 0; w < this.mixBuffers.length; w++) {
+            if (w < this.workers.length && !this.participating[w]) {
+                continue;
+            }
+            SampleKernels.addInto(stereoOutputBuffer, mixOffset, this.mixBuffers[w], length * 2);
+        }
+    }
+
+    /**
+     * Renders every active voice for one segment in single precision and sums the result into the output buffer.
+     * Only valid for a renderer built with Precision.FLOAT. Must only be called from the audio thread.
+     * @param voices The voice bank.
+     * @param activeVoices The indices of the voices to render.
+     * @param activeCount The number of valid entries in activeVoices.
+     * @param stereoOutputBuffer The interleaved stereo mix buffer.
+     * @param offset The first sample of the segment within the block.
+     * @param length The number of samples in the segment.
+     * @param volume The gain applied to each voice as it is summed.
+     * @param silenceThreshold The level a releasing voice's mixed peak must stay at or below to be retired (see Voice.endIfSilent).
+     */
+    public void render(Voice[] voices, int[] activeVoices, int activeCount,
+                       float[] stereoOutputBuffer, int offset, int length, double volume, double silenceThreshold) {
+        runJob(voices, activeVoices, activeCount, length, volume, silenceThreshold);
+
+        int mixOffset = offset * 2;
+        for (int w = 0; w < this.mixBuffersF.length; w++) {
+            if (w < this.workers.length && !this.participating[w]) {
+                continue;
+            }
+            SampleKernels.addInto(stereoOutputBuffer, mixOffset, this.mixBuffersF[w], length * 2);
+        }
+    }
+
+    /**
+     * Publishes a job, renders the audio thread's share and waits for the participating workers.
+     */
+    private void runJob(Voice[] voices, int[] activeVoices, int activeCount, int length, double volume, double silenceThreshold) {
+        this.jobVoices = voices;
+        this.jobActiveVoices = activeVoices;
+        this.jobActiveCount = activeCount;
+        this.jobLength = length;
+        this.jobVolume = volume;
+        this.jobSilenceThreshold = silenceThreshold;
+        this.nextVoice.set(0);
+
+        // Volatile write publishes the job to the workers
+        int job = this.generation + 1;
+        this.generation = job;
+        for (Worker worker : this.workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker.thread);
+            }
+        }
+
+        // The audio thread renders too, using the last mix buffer
+        renderShare(this.workers.length);
+
+        // Barrier: skip workers that never claimed the job, wait for the ones that did
+        for (int w = 0; w < this.workers.length; w++) {
+            Worker worker = this.workers[w];
+            this.participating[w] = !worker.claimedJob.compareAndSet(job - 1, job);
+            if (this.participating[w]) {
+                while (worker.finishedJob != job) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims voices until none are left, summing them into this thread's mix buffer.
+     * @param slot The index of the calling thread's buffers.
+     */
+    private void renderShare(int slot) {
+        if (this.useFloat) {
+            renderShareFloat(slot);
+            return;
+        }
+        Voice[] voices = this.jobVoices;
+        int[] activeVoices = this.jobActiveVoices;
+        int activeCount = this.jobActiveCount;
+        int length = this.jobLength;
+        double vol = this.jobVolume;
+        double silenceThreshold = this.jobSilenceThreshold;
+        double[] mix = this.mixBuffers[slot];
+        double[] voiceBuffer = this.voiceBuffers[slot];
+
+        for (int j = 0; j < length * 2; j++) {
+            mix[j] = 0.0;
+        }
+
+        int i;
+        while ((i = this.nextVoice.getAndIncrement()) < activeCount) {
+            Voice voice = voices[activeVoices[i]];
+            voice.processBlock(null, voiceBuffer, length);
+            SampleKernels.mixInto(mix, 0, voiceBuffer, length * 2, vol);
+            if (voice.isReleasing()) {
+                voice.endIfSilent(SampleKernels.peak(voiceBuffer, length * 2) * vol, silenceThreshold, length);
+            }
+        }
+    }
+
+    private void renderShareFloat(int slot) {
+        Voice[] voices = this.jobVoices;
+        int[] activeVoices = this.jobActiveVoices;
+        int activeCount = this.jobActiveCount;
+        int length = this.jobLength;
+        float vol = (float) this.jobVolume;
+        double silenceThreshold = this.jobSilenceThreshold;
+        float[] mix = this.mixBuffersF[slot];
+        float[] voiceBuffer = this.voiceBuffersF[slot];
+
+        for (int j = 0; j < length * 2; j++) {
+            mix[j] = 0.0f;
+        }
+
+        int i;
+        while ((i = this.nextVoice.getAndIncrement()) < activeCount) {
+            Voice voice = voices[activeVoices[i]];
+            voice.processBlock(null, voiceBuffer, length);
+            SampleKernels.mixInto(mix, 0, voiceBuffer, length * 2, vol);
+            if (voice.isReleasing()) {
+                voice.endIfSilent(SampleKernels.peak(voiceBuffer, length * 2) * vol, silenceThreshold, length);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Does not block, so it is safe to call from the audio thread.
+     */
+    public void shutdown() {
+        this.running = false;
+        for (Worker worker : this.workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * A worker waits for a new job generation, claims it, renders its share and signals completion.
+     */
+    private class Worker implements Runnable {
+        private final int slot;
+        private Thread thread;
+        private volatile boolean parked = false;
+
+        // The last job this worker was accounted for, either claimed by the worker or skipped by the audio thread
+        private final AtomicInteger claimedJob = new AtomicInteger(0);
+        private volatile int finishedJob = 0;
+
+        private Worker(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+            int seenGeneration = 0;
+            while (running) {
+                int spins = 0;
+                while (generation == seenGeneration && running) {
+                    if (spins < SPIN_LIMIT) {
+                        spins++;
+                        Thread.onSpinWait();
+                    } else {
+                        // Announce the park, then re-check so a job published in between is not missed
+                        this.parked = true;
+                        if (generation == seenGeneration && running) {
+                            LockSupport.park(this);
+                        }
+                        this.parked = false;
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                seenGeneration = generation;
+                if (this.claimedJob.compareAndSet(seenGeneration - 1, seenGeneration)) {
+                    renderShare(this.slot);
+                    this.finishedJob = seenGeneration;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package synth.core;
+
+import synth.components.Envelope;
+
+/**
+ * An immutable, versioned snapshot of every synth-wide parameter.
+ * Control threads publish a new snapshot with a single atomic swap, and the audio thread
+ * picks it up with a single reference read, so a parameter group is never seen half-updated.
+ * Each "with" method returns a new snapshot with the next version number.
+ */
+public record Patch(
+        long version,
+        // Oscillator
+        Synthesiser.Waveform waveform,
+        // Filter
+        double filterCutoff,
+        double filterResonance,
+        double filterModRange,
+        int filterOversampling,
+        // Filter Envelope
+        double filterAttackTime,
+        double filterDecayTime,
+        double filterSustainLevel,
+        double filterReleaseTime,
+        Envelope.Curves filterCurves,
+        // Amp Envelope
+        double ampAttackTime,
+        double ampDecayTime,
+        double ampSustainLevel,
+        double ampReleaseTime,
+        Envelope.Curves ampCurves,
+        // Gain Staging
+        double preFilterGainDB,
+        double postFilterGainDB,
+        double masterVolumeScalar,
+        // LFO
+        Synthesiser.Waveform LFOWaveform,
+        double LFOFrequency,
+        // Panning
+        double panDepth) {
+
+    public Patch withWaveform(Synthesiser.Waveform waveform) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withFilter(double filterCutoff, double filterResonance, double filterModRange) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withFilterOversampling(int filterOversampling) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withFilterEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                attackTime, decayTime, sustainLevel, releaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withAmpEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                attackTime, decayTime, sustainLevel, releaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withFilterCurves(Envelope.Curves filterCurves) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withAmpCurves(Envelope.Curves ampCurves) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withGainStaging(double preFilterGainDB, double postFilterGainDB) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withMasterVolume(double masterVolumeScalar) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withLFO(Synthesiser.Waveform LFOWaveform, double LFOFrequency) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    public Patch withPanDepth(double panDepth) {
+        return new Patch(version + 1, waveform,
+                filterCutoff, filterResonance, filterModRange, filterOversampling,
+                filterAttackTime, filterDecayTime, filterSustainLevel, filterReleaseTime, filterCurves,
+                ampAttackTime, ampDecayTime, ampSustainLevel, ampReleaseTime, ampCurves,
+                preFilterGainDB, postFilterGainDB, masterVolumeScalar,
+                LFOWaveform, LFOFrequency, panDepth);
+    }
+
+    // --- Group Comparisons (used by the audio thread to apply only the changed groups) ---
+
+    public boolean sameFilter(Patch other) {
+        return Double.compare(filterCutoff, other.filterCutoff) == 0
+                && Double.compare(filterResonance, other.filterResonance) == 0
+                && Double.compare(filterModRange, other.filterModRange) == 0
+                && filterOversampling == other.filterOversampling;
+    }
+
+    public boolean sameFilterEnvelope(Patch other) {
+        return Double.compare(filterAttackTime, other.filterAttackTime) == 0
+                && Double.compare(filterDecayTime, other.filterDecayTime) == 0
+                && Double.compare(filterSustainLevel, other.filterSustainLevel) == 0
+                && Double.compare(filterReleaseTime, other.filterReleaseTime) == 0
+                && filterCurves.equals(other.filterCurves);
+    }
+
+    public boolean sameAmpEnvelope(Patch other) {
+        return Double.compare(ampAttackTime, other.ampAttackTime) == 0
+                && Double.compare(ampDecayTime, other.ampDecayTime) == 0
+                && Double.compare(ampSustainLevel, other.ampSustainLevel) == 0
+                && Double.compare(ampReleaseTime, other.ampReleaseTime) == 0
+                && ampCurves.equals(other.ampCurves);
+    }
+
+    public boolean sameGainStaging(Patch other) {
+        return Double.compare(preFilterGainDB, other.preFilterGainDB) == 0
+                && Double.compare(postFilterGainDB, other.postFilterGainDB) == 0;
+    }
+}
@@ -0,0 +1,154 @@
+package synth.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocation-free recorder of per-stage processing times for the audio thread.
+ * Timings are accumulated into a preallocated array indexed by Stage, and published once
+ * per block so another thread can read running totals without locks.
+ * Recording is switchable at runtime; when disabled the audio thread skips it entirely.
+ *
+ * By default only the block-level stages are timed, which leaves the voices on their normal render
+ * path. The per-voice component stages (OSCILLATOR to PANNING) are opt-in: timing each component
+ * separately forces the voices onto the modular, serial path, which is slower than what it measures.
+ * Blocks whose voices were rendered by the parallel workers cannot be broken down this way, so the
+ * per-voice stages keep their own block count, which readers should average them over.
+ */
+public class StageTimings {
+
+    /**
+     * The processing stages that can be timed.
+     */
+    public enum Stage {
+        LFO("LFO", false),
+        VOICE_MIX("Voice Processing & Mix", false),
+        LIMITER("Look-Ahead Limiter", false),
+        SOFT_CLIP("Soft Clipping", false),
+        HARD_CLIP("Hard Clipping", false),
+        OSCILLATOR("Oscillator", true),
+        FILTER_ENVELOPE("Filter Envelope", true),
+        PRE_FILTER_GAIN("Pre-Filter Gain", true),
+        FILTER_PARAMS("Filter Params", true),
+        FILTER("Filter", true),
+        AMP_ENVELOPE("Amp Envelope", true),
+        PANNING("Panning", true);
+
+        private final String label;
+        private final boolean voiceStage;
+
+        Stage(String label, boolean voiceStage) {
+            this.label = label;
+            this.voiceStage = voiceStage;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Checks if this is a per-voice component stage, averaged over getVoiceStageBlockCount() blocks.
+         * @return true for the stages recorded inside each voice.
+         */
+        public boolean isVoiceStage() {
+            return voiceStage;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private volatile boolean enabled = false;
+    private volatile boolean voiceStagesEnabled = false;
+
+    // Audio thread only: totals for the block currently being processed
+    private final long[] blockTotals = new long[STAGES.length];
+
+    // Published running totals, written by the audio thread and readable from any thread
+    private final AtomicLongArray totals = new AtomicLongArray(STAGES.length);
+    private final AtomicLong blockCount = new AtomicLong(0);
+    private final AtomicLong voiceStageBlockCount = new AtomicLong(0);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches timing on or off. Takes effect from the next processing block.
+     * @param enabled true to record stage timings.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isVoiceStagesEnabled() {
+        return voiceStagesEnabled;
+    }
+
+    /**
+     * Switches the per-voice component stages on or off. They are only recorded while timing is
+     * enabled, and while they are on the voices are rendered on the modular, serial path instead
+     * of the fused or lane renderers. Takes effect from the next processing block.
+     * @param enabled true to time each voice component separately.
+     */
+    public void setVoiceStagesEnabled(boolean enabled) {
+        this.voiceStagesEnabled = enabled;
+    }
+
+    /**
+     * Adds the time elapsed since startTime to a stage. Must only be called from the audio thread.
+     * @param stage The stage to charge.
+     * @param startTime The System.nanoTime() at which the stage started.
+     * @return The current System.nanoTime(), to be used as the start of the next stage.
+     */
+    public long lap(Stage stage, long startTime) {
+        long now = System.nanoTime();
+        this.blockTotals[stage.ordinal()] += now - startTime;
+        return now;
+    }
+
+    /**
+     * Publishes the current block's timings to the running totals. Must only be called from the audio thread.
+     * @param voiceStagesRecorded true if every voice in the block was timed per component. If not,
+     *                            any partial per-voice timings are discarded and the block does not
+     *                            count towards the voice stage block count.
+     */
+    public void endBlock(boolean voiceStagesRecorded) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (!voiceStagesRecorded && STAGES[i].isVoiceStage()) {
+                this.blockTotals[i] = 0;
+            }
+            if (this.blockTotals[i] != 0) {
+                // Single writer, so a plain read followed by an ordered store is enough
+                this.totals.lazySet(i, this.totals.get(i) + this.blockTotals[i]);
+                this.blockTotals[i] = 0;
+            }
+        }
+        this.blockCount.lazySet(this.blockCount.get() + 1);
+        if (voiceStagesRecorded) {
+            this.voiceStageBlockCount.lazySet(this.voiceStageBlockCount.get() + 1);
+        }
+    }
+
+    /**
+     * Copies the running totals into the destination array. Safe to call from any thread.
+     * Readers wanting per-interval figures should diff two snapshots rather than reset the totals.
+     * @param destination An array of at least Stage.values().length entries, indexed by Stage ordinal.
+     * @return The number of blocks included in the totals.
+     */
+    public long snapshot(long[] destination) {
+        long count = this.blockCount.get();
+        for (int i = 0; i < STAGES.length; i++) {
+            destination[i] = this.totals.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of blocks included in the per-voice stage totals: those recorded with voice
+     * stages enabled whose voices were not rendered in parallel. Safe to call from any thread.
+     * @return The number of blocks with per-voice stage timings.
+     */
+    public long getVoiceStageBlockCount() {
+        return this.voiceStageBlockCount.get();
+    }
+}
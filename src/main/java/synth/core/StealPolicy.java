@@ -0,0 +1,20 @@
+package synth.core;
+
+/**
+ * The rules for choosing which sounding voice to steal when a note starts and every voice is in use.
+ * Ties are always broken in favour of the oldest note.
+ */
+public enum StealPolicy {
+    /** Steal the voice that was started longest ago. */
+    OLDEST,
+    /** Steal the oldest voice that is already releasing, or the oldest voice if none are. */
+    RELEASED_FIRST,
+    /** Steal the voice with the lowest current amp envelope level. */
+    QUIETEST,
+    /** Steal the voice playing the lowest pitch. */
+    LOWEST_NOTE,
+    /** Steal the voice playing the highest pitch. */
+    HIGHEST_NOTE,
+    /** Retrigger the voice already playing the same pitch, even if free voices exist; otherwise steal the oldest. */
+    SAME_PITCH
+}
@@ -1,55 +1,92 @@
 package synth.core;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import synth.components.Envelope;
+import synth.components.LookAheadLimiter;
 import synth.components.oscillators.Oscillator;
 import synth.components.oscillators.SawOscillator;
 import synth.components.oscillators.SineOscillator;
 import synth.components.oscillators.SquareOscillator;
 import synth.components.oscillators.TriangleOscillator;
+import synth.utils.AudioConstants;
+import synth.utils.LookupTablePreloader;
+import synth.utils.SampleKernels;
 
 /**
  * The main synthesiser class that manages and processes multiple voices.
  * It acts as a facade for controlling all voice parameters and generating the final audio output.
  */
 public class Synthesiser{
-    // Control all the voices. Bundles them up in an arraylist ready to be shipped to the buffer.
-    private final Voice[] voices;
+    // Control all the voices. Bundles them up in an array ready to be shipped to the buffer.
+    // The bank is resized by publishing a new pool, which the audio thread adopts at the start of a block.
+    private volatile Voice[] voices;
+    private VoiceAllocator voiceAllocator; // Audio thread only
+    private final AtomicReference<VoicePool> requestedPool;
     private final double sampleRate;
 
+    private record VoicePool(Voice[] voices, VoiceAllocator allocator, int[] voiceNotes) { }
+
+    // Note index: the newest voice started for each channel and pitch, and the note each voice was
+    // started for (channel * 128 + pitch, or NONE). Keeps note-on and note-off independent of polyphony.
+    private static final int MIDI_CHANNELS = 16;
+    private static final int MIDI_NOTES = 128;
+    private final int[] noteVoices = new int[MIDI_CHANNELS * MIDI_NOTES];
+    private int[] voiceNotes; // Audio thread only
+
+    // Voice stealing: requested by control threads, adopted by the audio thread at the start of a block
+    private volatile StealPolicy stealPolicy = StealPolicy.OLDEST;
+    private StealPolicy appliedStealPolicy = StealPolicy.OLDEST;
+
+    // Filter modulation rate: requested by control threads, adopted by the audio thread at the start of a block
+    private volatile int filterControlPeriod = AudioConstants.FILTER_CONTROL_PERIOD;
+    private int appliedFilterControlPeriod = -1;
+
+    // Voice renderer (fused or modular): requested by control threads, adopted by the audio thread at the start of a block
+    private volatile boolean fusedRendering = true;
+    private boolean appliedFusedRendering = true;
+
+    // Structure-of-arrays rendering of all active voices together (double engine only)
+    private final LaneVoiceRenderer laneRenderer;
+    private volatile boolean laneRendering = false;
+
+    // Master bus: a look-ahead limiter and a safety soft clip ahead of the final hard clip. Requested by
+    // control threads, adopted by the audio thread at the start of a block.
+    private final LookAheadLimiter limiter;
+    private volatile boolean masterLimiting = true;
+    private boolean appliedMasterLimiting = true;
+
     // Master Configs (synth-wide settings)
     // Oscillator
     public enum Waveform {
         SINE, SAW, TRIANGLE, SQUARE
     }
-    private volatile Waveform waveform;
 
-    // Filter
-    private volatile double filterCutoff;
-    private volatile double filterResonance;
-    private volatile double filterModRange;
+    // Engine
+    /**
+     * The sample precision of the voice processing chain. FLOAT halves the memory traffic of the
+     * voice buffers and tables; the output is still delivered as double.
+     */
+    public enum Precision {
+        DOUBLE, FLOAT
+    }
+    private final Precision precision;
 
-    // Filter Envelope
-    private volatile double filterAttackTime;
-    private volatile double filterDecayTime;
-    private volatile double filterSustainLevel;
-    private volatile double filterReleaseTime;
+    // The current patch, published by control threads with a single atomic swap
+    private final AtomicReference<Patch> patch;
+    private final AtomicBoolean reapplyPatch = new AtomicBoolean(false);
 
-    // Amp Envelope
-    private volatile double ampAttackTime;
-    private volatile double ampDecayTime;
-    private volatile double ampSustainLevel;
-    private volatile double ampReleaseTime;
+    // Audio thread state: the patch last applied to the voices
+    private Patch appliedPatch;
 
     // Gain Staging
-    private volatile double preFilterGainDB;
-    private volatile double postFilterGainDB;
-    private final double voiceSumAttenuation;
-    private volatile double volumeAttenuation;
-    private volatile double masterVolumeScalar = 1.0;
+    private double voiceSumAttenuation;
+    private double volumeAttenuation;
+    private double silenceThreshold; // Scaled with the master volume, so voices are measured before it
 
     // LFO
     private Oscillator LFO;
@@ -57,31 +94,57 @@ public class Synthesiser{
     private final Oscillator sawLFO;
     private final Oscillator triangleLFO;
     private final Oscillator squareLFO;
-    private volatile Waveform LFOWaveForm;
-    private volatile double LFOFrequency;
     private volatile double LFOPosition;
 
-    // Panning
-    private volatile double panDepth;
+    // Note events from the MIDI thread, drained by the audio thread at the start of each block
+    private final MidiEventQueue eventQueue = new MidiEventQueue(AudioConstants.MIDI_EVENT_QUEUE_SIZE);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+
+    // Event scheduling: events that arrived during the previous block are placed at the
+    // matching sample offset inside the current block (a constant one-block latency, no jitter)
+    private final long[] pendingEvents;
+    private final long[] pendingEventTimes;
+    private final int[] pendingEventOffsets;
+    private final Patch[] pendingPatches;
+    private long previousBlockStartNanos;
 
-    // Granular dirty flags: setters set per-group flag, audio thread clears after syncing to voices
-    private final AtomicBoolean waveformDirty = new AtomicBoolean(false);
-    private final AtomicBoolean filterDirty = new AtomicBoolean(false);
-    private final AtomicBoolean filterEnvDirty = new AtomicBoolean(false);
-    private final AtomicBoolean ampEnvDirty = new AtomicBoolean(false);
-    private final AtomicBoolean gainDirty = new AtomicBoolean(false);
-    private final AtomicBoolean panDirty = new AtomicBoolean(false);
+    // Patch changes scheduled by the MIDI thread but not yet applied. While any are queued the
+    // block start leaves the patch alone, so each change reaches the voices on its own sample.
+    private final AtomicInteger scheduledChanges = new AtomicInteger(0);
 
     // Output Buffers
     int blockSize;
     private final double[] voiceOutputBuffer;
     private final double[] lfoOutputBuffer;
+    private final float[] voiceOutputBufferF;  // Float engine only
+    private final float[] mixBufferF;          // Float engine only
+
+    // Instrumentation
+    private final StageTimings stageTimings = new StageTimings();
+    private boolean voiceStagesSkipped; // Audio thread only: this block's voices were rendered in parallel, untimed
+
+    // Optional multi-core voice rendering: requested by control threads, adopted by the audio thread
+    private final AtomicReference<ParallelVoiceRenderer> requestedRenderer = new AtomicReference<>();
+    private volatile ParallelVoiceRenderer parallelRenderer;
 
     /**
      * Constructs a new Synthesiser with a specified number of voices.
-     * @param noVoices The number of voices for the synthesiser. Must be a positive number.
+     * @param noVoices The initial number of voices for the synthesiser. Must be a positive number.
+     *                 Can be changed later with setPolyphony.
      */
     public Synthesiser(int noVoices, double sampleRate, int blockSize) {
+        this(noVoices, sampleRate, blockSize, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructs a new Synthesiser with a specified number of voices, rendering in the given precision.
+     * @param noVoices The initial number of voices for the synthesiser. Must be a positive number.
+     * @param precision The sample precision of the voice processing chain.
+     */
+    public Synthesiser(int noVoices, double sampleRate, int blockSize, Precision precision) {
+        if (precision == null) {
+            throw new IllegalArgumentException("Precision cannot be null");
+        }
         if (noVoices <= 0) {
             throw new IllegalArgumentException("Number of voices must be positive.");
         }
@@ -89,30 +152,52 @@ public class Synthesiser{
             throw new IllegalArgumentException("Sample rate must be greater than 40 Hz.");
         }
         this.sampleRate = sampleRate;
+        this.precision = precision;
+        // Build the waveform tables in the background rather than blocking the constructing thread.
+        // The app starts this before its UI, so they are normally ready before the first block.
+        LookupTablePreloader.start(precision == Precision.FLOAT);
+        this.limiter = new LookAheadLimiter(AudioConstants.LIMITER_LOOK_AHEAD, AudioConstants.LIMITER_CEILING,
+                AudioConstants.LIMITER_RELEASE_SECONDS, sampleRate);
         this.voiceSumAttenuation = 1.0 / Math.sqrt(noVoices);
         this.volumeAttenuation = this.voiceSumAttenuation;
         this.voices = new Voice[noVoices];
 
         // Populate voice bank
         for (int i = 0; i < noVoices; i++){
-            voices[i] = new Voice(Waveform.SINE, 0, sampleRate, blockSize);
+            voices[i] = new Voice(Waveform.SINE, 0, sampleRate, blockSize, precision);
         }
-
-        // Initialise the filter parameters to 1 so voice.setFilterParameters doesn't throw an error on construction.
-        this.filterCutoff = 1;
-        this.filterResonance = 1;
-        this.filterModRange = 1;
+        this.voiceAllocator = new VoiceAllocator(noVoices);
+        this.voiceNotes = new int[noVoices];
+        Arrays.fill(this.voiceNotes, VoiceAllocator.NONE);
+        Arrays.fill(this.noteVoices, VoiceAllocator.NONE);
+        this.requestedPool = new AtomicReference<>(new VoicePool(this.voices, this.voiceAllocator, this.voiceNotes));
+
+        // Placeholder patch, replaced by the default patch below before any voice reads it.
+        this.patch = new AtomicReference<>(new Patch(0, Waveform.SINE,
+                1000, 1, 0, 1,
+                0, 0, 0, 0, Envelope.Curves.LINEAR,
+                0, 0, 0, 0, Envelope.Curves.LINEAR,
+                0, 0, 1.0,
+                Waveform.SINE, 0, 0));
 
         // Construct Buffers
         this.blockSize = blockSize;
         this.voiceOutputBuffer = new double[this.blockSize * 2];
         this.lfoOutputBuffer = new double[this.blockSize];
-
-        // Construct LFO Oscillators
+        this.voiceOutputBufferF = precision == Precision.FLOAT ? new float[this.blockSize * 2] : null;
+        this.mixBufferF = precision == Precision.FLOAT ? new float[this.blockSize * 2] : null;
+        this.laneRenderer = precision == Precision.DOUBLE ? new LaneVoiceRenderer(this.blockSize) : null;
+        this.pendingEvents = new long[this.eventQueue.capacity()];
+        this.pendingEventTimes = new long[this.eventQueue.capacity()];
+        this.pendingEventOffsets = new int[this.eventQueue.capacity()];
+        this.pendingPatches = new Patch[this.eventQueue.capacity()];
+
+        // Construct LFO Oscillators. They read naive tables, which stay within -1 to 1, so the pan
+        // position they drive does too.
         this.sineLFO = new SineOscillator(sampleRate);
-        this.sawLFO = new SawOscillator(sampleRate);
-        this.triangleLFO = new TriangleOscillator(sampleRate);
-        this.squareLFO = new SquareOscillator(sampleRate);
+        this.sawLFO = new SawOscillator(sampleRate, false);
+        this.triangleLFO = new TriangleOscillator(sampleRate, false);
+        this.squareLFO = new SquareOscillator(sampleRate, false);
         this.LFO = this.sineLFO;
 
         // Default Synth Patch
@@ -139,6 +224,9 @@ public class Synthesiser{
 
 
     //  --- Setters ---
+    // Each setter publishes a new patch snapshot. Setters that are part of a group (filter,
+    // envelopes, gain staging) have a group variant that updates the whole group in one swap.
+
     /**
      * Updates the waveform for the Low-Frequency Oscillator (LFO).
      * @param LFOWaveForm The new waveform for the LFO.
@@ -147,9 +235,8 @@ public class Synthesiser{
         if (LFOWaveForm == null) {
             throw new IllegalArgumentException("LFOWaveForm cannot be null");
         }
-        if(this.LFOWaveForm != LFOWaveForm){
-            this.LFOWaveForm = LFOWaveForm;
-        }
+        this.patch.updateAndGet(p -> p.LFOWaveform() == LFOWaveForm ? p
+                : p.withLFO(LFOWaveForm, p.LFOFrequency()));
     }
 
     /**
@@ -161,210 +248,584 @@ public class Synthesiser{
         if (waveform == null) {
             throw new IllegalArgumentException("waveform cannot be null");
         }
-        if (this.waveform != waveform){
-            this.waveform = waveform;
-            this.waveformDirty.set(true);
-        }
+        this.patch.updateAndGet(p -> p.waveform() == waveform ? p : p.withWaveform(waveform));
     }
 
+    /**
+     * Applies every parameter of the current patch to a voice.
+     * @param voice The voice to configure.
+     */
     public void setVoiceParams(Voice voice){
-        voice.setOscillatorWaveform(this.waveform);
-        voice.setAmpEnvelope(this.ampAttackTime, this.ampDecayTime, this.ampSustainLevel, this.ampReleaseTime);
-        voice.setFilterEnvelope(this.filterAttackTime, this.filterDecayTime, this.filterSustainLevel, this.filterReleaseTime);
-        voice.setFilterParameters(this.filterCutoff, this.filterResonance, this.filterModRange);
-        voice.setFilterGainStaging(this.preFilterGainDB, this.postFilterGainDB);
-        voice.setPanDepth(this.panDepth);
+        setVoiceParams(voice, this.patch.get());
+    }
+
+    private void setVoiceParams(Voice voice, Patch p){
+        voice.setOscillatorWaveform(p.waveform());
+        voice.setAmpEnvelope(p.ampAttackTime(), p.ampDecayTime(), p.ampSustainLevel(), p.ampReleaseTime());
+        voice.setAmpEnvelopeCurves(p.ampCurves());
+        voice.setFilterEnvelope(p.filterAttackTime(), p.filterDecayTime(), p.filterSustainLevel(), p.filterReleaseTime());
+        voice.setFilterEnvelopeCurves(p.filterCurves());
+        voice.setFilterOversampling(p.filterOversampling());
+        voice.setFilterParameters(p.filterCutoff(), p.filterResonance(), p.filterModRange());
+        voice.setFilterGainStaging(p.preFilterGainDB(), p.postFilterGainDB());
+        voice.setPanDepth(p.panDepth());
+    }
+
+    /**
+     * Sets the whole filter group in a single update, so the audio thread never sees
+     * a new cutoff paired with a stale resonance or modulation range.
+     * @param cutoff The base cutoff frequency in Hz.
+     * @param resonance The resonance (Q) factor.
+     * @param modRange The filter envelope modulation range in Hz.
+     */
+    public void setFilter(double cutoff, double resonance, double modRange) {
+        double clampedCutoff = clampCutoff(cutoff);
+        double clampedResonance = clampResonance(resonance);
+        double clampedModRange = clampModRange(modRange, clampedCutoff);
+        this.patch.updateAndGet(p -> p.withFilter(clampedCutoff, clampedResonance, clampedModRange));
     }
 
     public void setFilterCutoff(double cutoff) {
-        double nyquistLimit = (this.sampleRate / 2.0) - 1.0;
-        double maxCutoff = Math.nextDown(nyquistLimit);
-        double clamped = Math.max(20.0, Math.min(maxCutoff, cutoff));
-        if (Double.compare(this.filterCutoff, clamped) != 0) {
-            this.filterCutoff = clamped;
-            this.filterDirty.set(true);
-        }
+        double clamped = clampCutoff(cutoff);
+        this.patch.updateAndGet(p -> Double.compare(p.filterCutoff(), clamped) == 0 ? p
+                : p.withFilter(clamped, p.filterResonance(), p.filterModRange()));
     }
 
     public void setFilterResonance(double resonance) {
-        double clamped = Math.max(1.0, Math.min(20.0, resonance));
-        if (Double.compare(this.filterResonance, clamped) != 0) {
-            this.filterResonance = clamped;
-            this.filterDirty.set(true);
-        }
+        double clamped = clampResonance(resonance);
+        this.patch.updateAndGet(p -> Double.compare(p.filterResonance(), clamped) == 0 ? p
+                : p.withFilter(p.filterCutoff(), clamped, p.filterModRange()));
     }
 
     public void setFilterModRange(double modRange) {
-        double nyquistLimit = (this.sampleRate / 2.0) - 1.0;
-        double maxModRange = Math.max(0.0, Math.nextDown(nyquistLimit) - this.filterCutoff);
-        double clamped = Math.max(0.0, Math.min(modRange, maxModRange));
-        if (Double.compare(this.filterModRange, clamped) != 0) {
-            this.filterModRange = clamped;
-            this.filterDirty.set(true);
+        this.patch.updateAndGet(p -> {
+            double clamped = clampModRange(modRange, p.filterCutoff());
+            return Double.compare(p.filterModRange(), clamped) == 0 ? p
+                    : p.withFilter(p.filterCutoff(), p.filterResonance(), clamped);
+        });
+    }
+
+    /**
+     * Sets how many times the sample rate each voice's filter runs at, trading CPU for a filter
+     * that keeps its shape at high cutoffs and resonance (see Voice.setFilterOversampling).
+     * Oversampled voices are rendered one at a time, never in lanes. Only available in the double
+     * precision engine.
+     * @param factor 1 (off), 2 or 4.
+     * @throws IllegalArgumentException if the factor is not 1, 2 or 4, or is above 1 in a float engine.
+     */
+    public void setFilterOversampling(int factor) {
+        if (factor != 1 && factor != 2 && factor != 4) {
+            throw new IllegalArgumentException("Filter oversampling must be 1, 2 or 4.");
         }
+        if (factor != 1 && this.precision == Precision.FLOAT) {
+            throw new IllegalArgumentException("Filter oversampling is only available in double precision.");
+        }
+        this.patch.updateAndGet(p -> p.filterOversampling() == factor ? p : p.withFilterOversampling(factor));
+    }
+
+    public int getFilterOversampling() {
+        return this.patch.get().filterOversampling();
+    }
+
+    /**
+     * Sets the whole filter envelope in a single update.
+     * @param attackTime The attack time in seconds.
+     * @param decayTime The decay time in seconds.
+     * @param sustainLevel The sustain level (0.0 to 1.0).
+     * @param releaseTime The release time in seconds.
+     */
+    public void setFilterEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime) {
+        double a = clampTime(attackTime), d = clampTime(decayTime), sl = clampLevel(sustainLevel), r = clampTime(releaseTime);
+        this.patch.updateAndGet(p -> p.withFilterEnvelope(a, d, sl, r));
     }
 
     public void setFilterAttackTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.filterAttackTime, clamped) != 0) {
-            this.filterAttackTime = clamped;
-            this.filterEnvDirty.set(true);
-        }
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.filterAttackTime(), clamped) == 0 ? p
+                : p.withFilterEnvelope(clamped, p.filterDecayTime(), p.filterSustainLevel(), p.filterReleaseTime()));
     }
 
     public void setFilterDecayTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.filterDecayTime, clamped) != 0) {
-            this.filterDecayTime = clamped;
-            this.filterEnvDirty.set(true);
-        }
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.filterDecayTime(), clamped) == 0 ? p
+                : p.withFilterEnvelope(p.filterAttackTime(), clamped, p.filterSustainLevel(), p.filterReleaseTime()));
     }
 
     public void setFilterSustainLevel(double level) {
-        double clamped = Math.max(0.0, Math.min(1.0, level));
-        if (Double.compare(this.filterSustainLevel, clamped) != 0) {
-            this.filterSustainLevel = clamped;
-            this.filterEnvDirty.set(true);
-        }
+        double clamped = clampLevel(level);
+        this.patch.updateAndGet(p -> Double.compare(p.filterSustainLevel(), clamped) == 0 ? p
+                : p.withFilterEnvelope(p.filterAttackTime(), p.filterDecayTime(), clamped, p.filterReleaseTime()));
     }
 
     public void setFilterReleaseTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.filterReleaseTime, clamped) != 0) {
-            this.filterReleaseTime = clamped;
-            this.filterEnvDirty.set(true);
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.filterReleaseTime(), clamped) == 0 ? p
+                : p.withFilterEnvelope(p.filterAttackTime(), p.filterDecayTime(), p.filterSustainLevel(), clamped));
+    }
+
+    /**
+     * Sets the shape of each filter envelope stage.
+     * @param curves The attack, decay and release curves.
+     */
+    public void setFilterEnvelopeCurves(Envelope.Curves curves) {
+        if (curves == null) {
+            throw new IllegalArgumentException("Envelope curves cannot be null");
         }
+        this.patch.updateAndGet(p -> p.filterCurves().equals(curves) ? p : p.withFilterCurves(curves));
+    }
+
+    /**
+     * Sets the whole amplitude envelope in a single update.
+     * @param attackTime The attack time in seconds.
+     * @param decayTime The decay time in seconds.
+     * @param sustainLevel The sustain level (0.0 to 1.0).
+     * @param releaseTime The release time in seconds.
+     */
+    public void setAmpEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime) {
+        double a = clampTime(attackTime), d = clampTime(decayTime), sl = clampLevel(sustainLevel), r = clampTime(releaseTime);
+        this.patch.updateAndGet(p -> p.withAmpEnvelope(a, d, sl, r));
     }
 
     public void setAmpAttackTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.ampAttackTime, clamped) != 0) {
-            this.ampAttackTime = clamped;
-            this.ampEnvDirty.set(true);
-        }
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.ampAttackTime(), clamped) == 0 ? p
+                : p.withAmpEnvelope(clamped, p.ampDecayTime(), p.ampSustainLevel(), p.ampReleaseTime()));
     }
 
     public void setAmpDecayTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.ampDecayTime, clamped) != 0) {
-            this.ampDecayTime = clamped;
-            this.ampEnvDirty.set(true);
-        }
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.ampDecayTime(), clamped) == 0 ? p
+                : p.withAmpEnvelope(p.ampAttackTime(), clamped, p.ampSustainLevel(), p.ampReleaseTime()));
     }
 
     public void setAmpSustainLevel(double level) {
-        double clamped = Math.max(0.0, Math.min(1.0, level));
-        if (Double.compare(this.ampSustainLevel, clamped) != 0) {
-            this.ampSustainLevel = clamped;
-            this.ampEnvDirty.set(true);
-        }
+        double clamped = clampLevel(level);
+        this.patch.updateAndGet(p -> Double.compare(p.ampSustainLevel(), clamped) == 0 ? p
+                : p.withAmpEnvelope(p.ampAttackTime(), p.ampDecayTime(), clamped, p.ampReleaseTime()));
     }
 
     public void setAmpReleaseTime(double seconds) {
-        double clamped = Math.max(0.0, seconds);
-        if (Double.compare(this.ampReleaseTime, clamped) != 0) {
-            this.ampReleaseTime = clamped;
-            this.ampEnvDirty.set(true);
+        double clamped = clampTime(seconds);
+        this.patch.updateAndGet(p -> Double.compare(p.ampReleaseTime(), clamped) == 0 ? p
+                : p.withAmpEnvelope(p.ampAttackTime(), p.ampDecayTime(), p.ampSustainLevel(), clamped));
+    }
+
+    /**
+     * Sets the shape of each amplitude envelope stage.
+     * @param curves The attack, decay and release curves.
+     */
+    public void setAmpEnvelopeCurves(Envelope.Curves curves) {
+        if (curves == null) {
+            throw new IllegalArgumentException("Envelope curves cannot be null");
         }
+        this.patch.updateAndGet(p -> p.ampCurves().equals(curves) ? p : p.withAmpCurves(curves));
+    }
+
+    /**
+     * Sets the pre- and post-filter gain in a single update.
+     * @param preFilterGainDB Gain before the filter in decibels.
+     * @param postFilterGainDB Gain after the filter in decibels.
+     */
+    public void setGainStaging(double preFilterGainDB, double postFilterGainDB) {
+        this.patch.updateAndGet(p -> p.withGainStaging(preFilterGainDB, postFilterGainDB));
     }
 
     public void setPreFilterGainDB(double db) {
-        if (Double.compare(this.preFilterGainDB, db) != 0) {
-            this.preFilterGainDB = db;
-            this.gainDirty.set(true);
-        }
+        this.patch.updateAndGet(p -> Double.compare(p.preFilterGainDB(), db) == 0 ? p
+                : p.withGainStaging(db, p.postFilterGainDB()));
     }
 
     public void setPostFilterGainDB(double db) {
-        if (Double.compare(this.postFilterGainDB, db) != 0) {
-            this.postFilterGainDB = db;
-            this.gainDirty.set(true);
-        }
+        this.patch.updateAndGet(p -> Double.compare(p.postFilterGainDB(), db) == 0 ? p
+                : p.withGainStaging(p.preFilterGainDB(), db));
     }
 
     public void setLFOFrequency(double frequency) {
-        this.LFOFrequency = Math.max(0.0, frequency);
+        double clamped = Math.max(0.0, frequency);
+        this.patch.updateAndGet(p -> Double.compare(p.LFOFrequency(), clamped) == 0 ? p
+                : p.withLFO(p.LFOWaveform(), clamped));
     }
 
     public void setPanDepth(double depth) {
-        double clamped = Math.max(0.0, Math.min(1.0, depth));
-        if (Double.compare(this.panDepth, clamped) != 0) {
-            this.panDepth = clamped;
-            this.panDirty.set(true);
+        double clamped = clampLevel(depth);
+        this.patch.updateAndGet(p -> Double.compare(p.panDepth(), clamped) == 0 ? p : p.withPanDepth(clamped));
+    }
+
+    /**
+     * Changes the number of voices without interrupting the audio thread. The new voice bank is
+     * built here and adopted by the audio thread at the start of the next block. Existing voices
+     * keep sounding; when shrinking, voices beyond the new size are cut off.
+     * @param noVoices The number of voices. Must be a positive number.
+     */
+    public synchronized void setPolyphony(int noVoices) {
+        if (noVoices <= 0) {
+            throw new IllegalArgumentException("Number of voices must be positive.");
+        }
+        Voice[] current = this.requestedPool.get().voices();
+        if (current.length == noVoices) {
+            return;
+        }
+        Voice[] resized = Arrays.copyOf(current, noVoices);
+        for (int i = current.length; i < noVoices; i++) {
+            resized[i] = new Voice(Waveform.SINE, 0, this.sampleRate, this.blockSize, this.precision);
+        }
+        this.requestedPool.set(new VoicePool(resized, new VoiceAllocator(noVoices), new int[noVoices]));
+    }
+
+    /**
+     * Gets the number of voices.
+     * @return The most recently requested polyphony.
+     */
+    public int getPolyphony() {
+        return this.requestedPool.get().voices().length;
+    }
+
+    /**
+     * Adopts the most recently requested voice bank, carrying over the age order of the voices
+     * that are still in it. Must only be called from the audio thread.
+     */
+    private void syncVoicePool() {
+        VoicePool requested = this.requestedPool.get();
+        if (requested.allocator() == this.voiceAllocator) {
+            return;
+        }
+        requested.allocator().adopt(this.voiceAllocator);
+
+        // Carry over the notes of the surviving voices and rebuild the note index around them
+        int[] resizedNotes = requested.voiceNotes();
+        Arrays.fill(resizedNotes, VoiceAllocator.NONE);
+        Arrays.fill(this.noteVoices, VoiceAllocator.NONE);
+        for (int index = requested.allocator().oldest(); index != VoiceAllocator.NONE; index = requested.allocator().newer(index)) {
+            int note = this.voiceNotes[index];
+            resizedNotes[index] = note;
+            if (note != VoiceAllocator.NONE) {
+                this.noteVoices[note] = index; // Walking oldest to newest leaves the newest voice per note
+            }
+        }
+
+        this.voiceAllocator = requested.allocator();
+        this.voiceNotes = resizedNotes;
+        this.voices = requested.voices();
+        this.voiceSumAttenuation = 1.0 / Math.sqrt(requested.voices().length);
+        this.volumeAttenuation = this.voiceSumAttenuation * this.appliedPatch.masterVolumeScalar();
+    }
+
+    /**
+     * Sets the rule used to choose which voice to steal when every voice is in use.
+     * Takes effect from the start of the next block.
+     * @param policy The steal policy.
+     */
+    public void setStealPolicy(StealPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Steal policy cannot be null");
+        }
+        this.stealPolicy = policy;
+    }
+
+    public StealPolicy getStealPolicy() {
+        return this.stealPolicy;
+    }
+
+    /**
+     * Adopts the most recently requested steal policy, re-keying every allocated voice when it changes.
+     * Must only be called from the audio thread.
+     */
+    private void syncStealPolicy() {
+        StealPolicy requested = this.stealPolicy;
+        if (requested == this.appliedStealPolicy) {
+            return;
+        }
+        this.appliedStealPolicy = requested;
+        for (int index = this.voiceAllocator.oldest(); index != VoiceAllocator.NONE; index = this.voiceAllocator.newer(index)) {
+            this.voiceAllocator.writeStealPriority(index, stealPriority(this.voices[index]));
+        }
+        // Oldest-first stealing is served straight from the age list, without the heap
+        this.voiceAllocator.setPrioritised(requested != StealPolicy.OLDEST && requested != StealPolicy.SAME_PITCH);
+    }
+
+    /**
+     * Computes a voice's steal priority under the applied policy. Lower priorities are stolen first.
+     * @param voice The voice.
+     * @return The steal priority.
+     */
+    private long stealPriority(Voice voice) {
+        return switch (this.appliedStealPolicy) {
+            case RELEASED_FIRST -> voice.isActiveNoRelease() ? 1 : 0;
+            // Levels are non-negative, so their raw bits sort in the same order as the values.
+            // A note still in its attack is ranked by the level it is heading for, so a chord
+            // does not steal its own freshly started notes.
+            case QUIETEST -> Double.doubleToLongBits(voice.getAmpStage() == Envelope.Stage.ATTACK
+                    ? voice.getVelocity() : voice.getAmpLevel());
+            case LOWEST_NOTE -> voice.getPitchMIDI();
+            case HIGHEST_NOTE -> -voice.getPitchMIDI();
+            case OLDEST, SAME_PITCH -> 0;
+        };
+    }
+
+    /**
+     * Sets how often the filter envelope updates each voice's filter cutoff. Shorter periods follow
+     * fast filter envelopes more smoothly at a small, bounded cost per voice, without shrinking the block size.
+     * Takes effect from the start of the next block.
+     * @param samples The number of samples between coefficient updates (interpolated in between),
+     *                1 for every sample, or 0 for once per block.
+     */
+    public void setFilterControlPeriod(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("Filter control period cannot be negative.");
+        }
+        this.filterControlPeriod = samples;
+    }
+
+    public int getFilterControlPeriod() {
+        return this.filterControlPeriod;
+    }
+
+    /**
+     * Chooses how voices are rendered. The fused renderer computes each voice in a single pass per
+     * sample; the modular renderer runs the oscillator, filter, envelopes and panning over the whole
+     * block in turn. Both produce the same output; the modular renderer is kept for debugging and
+     * comparison, and is always used while stage timings are recorded.
+     * Takes effect from the start of the next block.
+     * @param fused true for the fused renderer (the default).
+     */
+    public void setFusedRendering(boolean fused) {
+        this.fusedRendering = fused;
+    }
+
+    public boolean isFusedRendering() {
+        return this.fusedRendering;
+    }
+
+    /**
+     * Renders the active voices in groups in a structure-of-arrays layout instead of one at a time
+     * (see LaneVoiceRenderer), so the per-voice filter and envelope recurrences of a group run side
+     * by side in SIMD lanes. Produces the same output as rendering the voices one at a time, and is
+     * only faster while the SIMD sample kernels are enabled. Only available in the double precision
+     * engine; not used while stage timings are recorded or while the parallel renderer takes the block.
+     * Takes effect from the next segment.
+     * @param enabled true to render the voices in lanes.
+     * @throws IllegalArgumentException if enabled is true and the engine uses float precision.
+     */
+    public void setLaneRendering(boolean enabled) {
+        if (enabled && this.laneRenderer == null) {
+            throw new IllegalArgumentException("Lane rendering is only available in double precision.");
+        }
+        this.laneRendering = enabled;
+    }
+
+    public boolean isLaneRendering() {
+        return this.laneRendering;
+    }
+
+    /**
+     * Chooses how the mix is kept within range. With master limiting on (the default) the mix is
+     * passed through a look-ahead limiter with a -1 dBFS ceiling, which adds LIMITER_LOOK_AHEAD
+     * frames of latency, and then soft clipped above SOFT_CLIP_KNEE, which sits just above the
+     * ceiling so the limited mix passes through it untouched; with it off the mix is only hard
+     * clipped at full scale. Either way a final hard clip guards the output.
+     * Takes effect from the start of the next block.
+     * @param enabled true to limit and soft clip the mix.
+     */
+    public void setMasterLimiting(boolean enabled) {
+        this.masterLimiting = enabled;
+    }
+
+    public boolean isMasterLimiting() {
+        return this.masterLimiting;
+    }
+
+    /**
+     * Adopts the most recently requested master bus processing, starting the limiter from silence
+     * when it is switched back on. Must only be called from the audio thread.
+     */
+    private void syncMasterLimiting() {
+        boolean requested = this.masterLimiting;
+        if (requested == this.appliedMasterLimiting) {
+            return;
+        }
+        this.appliedMasterLimiting = requested;
+        if (requested) {
+            this.limiter.reset();
+        }
+    }
+
+    /**
+     * Adopts the most recently requested voice renderer on every voice.
+     * Must only be called from the audio thread, after syncVoicePool.
+     */
+    private void syncFusedRendering() {
+        boolean requested = this.fusedRendering;
+        if (requested == this.appliedFusedRendering) {
+            return;
+        }
+        this.appliedFusedRendering = requested;
+        for (Voice voice : this.voices) {
+            voice.setFusedRendering(requested);
+        }
+    }
+
+    /**
+     * Adopts the most recently requested filter control period on every voice.
+     * Must only be called from the audio thread, after syncVoicePool.
+     */
+    private void syncFilterControlPeriod() {
+        int requested = this.filterControlPeriod;
+        if (requested == this.appliedFilterControlPeriod) {
+            return;
+        }
+        this.appliedFilterControlPeriod = requested;
+        for (Voice voice : this.voices) {
+            voice.setFilterControlPeriod(requested);
+        }
+    }
+
+    /**
+     * Enables parallel voice rendering across a fixed pool of worker threads, or disables it.
+     * Blocks with fewer than AudioConstants.PARALLEL_VOICE_THRESHOLD active voices are still rendered
+     * on the audio thread alone. While rendering in parallel only the overall voice stage is timed.
+     * @param workerThreads The number of worker threads in addition to the audio thread, or 0 to disable.
+     */
+    public void setRenderThreads(int workerThreads) {
+        if (workerThreads < 0) {
+            throw new IllegalArgumentException("Number of worker threads cannot be negative.");
+        }
+        ParallelVoiceRenderer renderer = workerThreads == 0 ? null : new ParallelVoiceRenderer(workerThreads, this.blockSize, this.precision);
+        ParallelVoiceRenderer replaced = this.requestedRenderer.getAndSet(renderer);
+        // A request the audio thread never adopted is shut down here; an adopted one is shut down on swap
+        if (replaced != null && replaced != this.parallelRenderer) {
+            replaced.shutdown();
+        }
+    }
+
+    /**
+     * Gets the number of worker threads used for parallel voice rendering.
+     * @return The requested worker count, or 0 if parallel rendering is disabled.
+     */
+    public int getRenderThreads() {
+        ParallelVoiceRenderer renderer = this.requestedRenderer.get();
+        return renderer == null ? 0 : renderer.getWorkerCount();
+    }
+
+    /**
+     * Swaps in the most recently requested parallel renderer. Must only be called from the audio thread.
+     */
+    private void syncRenderer() {
+        ParallelVoiceRenderer requested = this.requestedRenderer.get();
+        ParallelVoiceRenderer current = this.parallelRenderer;
+        if (requested != current) {
+            this.parallelRenderer = requested;
+            if (current != null) {
+                current.shutdown();
+            }
         }
     }
 
     public void setMasterVolume(double volumeScalar){
-        this.masterVolumeScalar = volumeScalar;
-        this.volumeAttenuation = this.voiceSumAttenuation * volumeScalar;
+        this.patch.updateAndGet(p -> Double.compare(p.masterVolumeScalar(), volumeScalar) == 0 ? p
+                : p.withMasterVolume(volumeScalar));
     }
 
     /**
      * Applies all current patch settings to all voices. Hook for potential future patch loading system.
+     * The voices are only touched by the audio thread, so this requests that the audio thread
+     * re-applies every parameter group at the start of the next processing block.
      */
     public void applyPatch(){
-        synchronized (voices) {
-            setOscillatorWaveform(this.waveform);
-            setLFOWaveform(this.LFOWaveForm);
-            for(int i = 0; i < voices.length; i++){
-                setVoiceParams(voices[i]);
-            }
-            setLFOFrequency(this.LFOFrequency);
-        }
+        this.reapplyPatch.set(true);
+    }
+
+    // --- Parameter Clamping ---
+    private double clampCutoff(double cutoff) {
+        double maxCutoff = Math.nextDown((this.sampleRate / 2.0) - 1.0);
+        return Math.max(20.0, Math.min(maxCutoff, cutoff));
+    }
+
+    private double clampModRange(double modRange, double cutoff) {
+        double maxModRange = Math.max(0.0, Math.nextDown((this.sampleRate / 2.0) - 1.0) - cutoff);
+        return Math.max(0.0, Math.min(modRange, maxModRange));
+    }
+
+    private static double clampResonance(double resonance) {
+        return Math.max(1.0, Math.min(20.0, resonance));
+    }
+
+    private static double clampTime(double seconds) {
+        return Math.max(0.0, seconds);
+    }
+
+    private static double clampLevel(double level) {
+        return Math.max(0.0, Math.min(1.0, level));
     }
 
     //  --- Getters ---
-    public Waveform getWaveform() { return waveform; }
-    public double getAmpAttackTime() { return ampAttackTime; }
-    public double getAmpDecayTime() { return ampDecayTime; }
-    public double getAmpSustainLevel() { return ampSustainLevel; }
-    public double getAmpReleaseTime() { return ampReleaseTime; }
-    public double getFilterCutoff() { return filterCutoff; }
-    public double getFilterResonance() { return filterResonance; }
-    public double getFilterModRange() { return filterModRange; }
-    public double getFilterAttackTime() { return filterAttackTime; }
-    public double getFilterDecayTime() { return filterDecayTime; }
-    public double getFilterSustainLevel() { return filterSustainLevel; }
-    public double getFilterReleaseTime() { return filterReleaseTime; }
-    public double getPreFilterGainDB() { return preFilterGainDB; }
-    public double getPostFilterGainDB() { return postFilterGainDB; }
-    public Waveform getLFOWaveform() { return LFOWaveForm; }
-    public double getLFOFrequency() { return LFOFrequency; }
-    public double getPanDepth() { return panDepth; }
-    public double getMasterVolumeScalar() { return masterVolumeScalar; }
+    /**
+     * Gets the current patch snapshot. The returned object is immutable.
+     * @return The most recently published patch.
+     */
+    public Patch getPatch() { return patch.get(); }
+    public Waveform getWaveform() { return patch.get().waveform(); }
+    public double getAmpAttackTime() { return patch.get().ampAttackTime(); }
+    public double getAmpDecayTime() { return patch.get().ampDecayTime(); }
+    public double getAmpSustainLevel() { return patch.get().ampSustainLevel(); }
+    public double getAmpReleaseTime() { return patch.get().ampReleaseTime(); }
+    public Envelope.Curves getAmpEnvelopeCurves() { return patch.get().ampCurves(); }
+    public double getFilterCutoff() { return patch.get().filterCutoff(); }
+    public double getFilterResonance() { return patch.get().filterResonance(); }
+    public double getFilterModRange() { return patch.get().filterModRange(); }
+    public double getFilterAttackTime() { return patch.get().filterAttackTime(); }
+    public double getFilterDecayTime() { return patch.get().filterDecayTime(); }
+    public double getFilterSustainLevel() { return patch.get().filterSustainLevel(); }
+    public double getFilterReleaseTime() { return patch.get().filterReleaseTime(); }
+    public Envelope.Curves getFilterEnvelopeCurves() { return patch.get().filterCurves(); }
+    public double getPreFilterGainDB() { return patch.get().preFilterGainDB(); }
+    public double getPostFilterGainDB() { return patch.get().postFilterGainDB(); }
+    public Waveform getLFOWaveform() { return patch.get().LFOWaveform(); }
+    public double getLFOFrequency() { return patch.get().LFOFrequency(); }
+    public double getPanDepth() { return patch.get().panDepth(); }
+    public double getMasterVolumeScalar() { return patch.get().masterVolumeScalar(); }
 
     /**
      * Fills the provided array with active notes.
+     * Voices are owned by the audio thread, so when called from another thread this is a
+     * best-effort snapshot intended for display purposes.
      * @param activeNotes The array to fill.
      * @return The number of active notes written to the array.
      */
     public int getActiveNotes(byte[] activeNotes) {
+        Voice[] bank = this.voices;
         int count = 0;
-        synchronized (voices) {
-            for (int i = 0; i < voices.length; i++) {
-                if (count >= activeNotes.length) {
-                    break;
-                }
-                if (voices[i].isActiveNoRelease()) {
-                    activeNotes[count++] = voices[i].getPitchMIDI();
-                }
+        for (int i = 0; i < bank.length; i++) {
+            if (count >= activeNotes.length) {
+                break;
+            }
+            if (bank[i].isActiveNoRelease()) {
+                activeNotes[count++] = bank[i].getPitchMIDI();
             }
         }
         return count;
     }
 
+    /**
+     * Gets the number of note events dropped because the event queue was full.
+     * @return The dropped event count since construction.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
     /**
      * Gets the current stereo pan position based on the LFO.
      * @return The pan position, ranging from -1.0 (left) to 1.0 (right).
      */
     public double getPanPosition(){
-        return (this.LFOPosition * this.panDepth);
+        return (this.LFOPosition * this.patch.get().panDepth());
     }
 
     // --- Synth Control/Processing Methods ---
 
     /**
      * Loads a new patch with the specified parameters, reconfiguring the entire synthesiser.
+     * The envelope curves and master volume are carried over from the current patch.
      * @param waveform The oscillator waveform for all voices.
      * @param filterCutoff The base cutoff frequency for the filter.
      * @param filterResonance The resonance (Q) of the filter.
@@ -401,228 +862,545 @@ public class Synthesiser{
                           double LFOFrequency,
                           double panDepth) {
 
-        // Store the master settings for the synth
-        setOscillatorWaveform(waveform);
-        setLFOWaveform(LFOWaveForm);
-        setFilterCutoff(filterCutoff);
-        setFilterResonance(filterResonance);
-        setFilterModRange(filterModRange);
-        setFilterAttackTime(filterAttackTime);
-        setFilterDecayTime(filterDecayTime);
-        setFilterSustainLevel(filterSustainLevel);
-        setFilterReleaseTime(filterReleaseTime);
-        setAmpAttackTime(ampAttackTime);
-        setAmpDecayTime(ampDecayTime);
-        setAmpSustainLevel(ampSustainLevel);
-        setAmpReleaseTime(ampReleaseTime);
-        setPreFilterGainDB(preFilterGainDB);
-        setPostFilterGainDB(postFilterGainDB);
-        setLFOFrequency(LFOFrequency);
-        setPanDepth(panDepth);
+        if (waveform == null || LFOWaveForm == null) {
+            throw new IllegalArgumentException("Waveforms cannot be null");
+        }
+
+        // Build the complete patch and publish it in a single swap
+        double clampedCutoff = clampCutoff(filterCutoff);
+        double masterVolume = this.patch.get().masterVolumeScalar();
+        this.patch.updateAndGet(p -> new Patch(p.version() + 1, waveform,
+                clampedCutoff, clampResonance(filterResonance), clampModRange(filterModRange, clampedCutoff), p.filterOversampling(),
+                clampTime(filterAttackTime), clampTime(filterDecayTime), clampLevel(filterSustainLevel), clampTime(filterReleaseTime), p.filterCurves(),
+                clampTime(ampAttackTime), clampTime(ampDecayTime), clampLevel(ampSustainLevel), clampTime(ampReleaseTime), p.ampCurves(),
+                preFilterGainDB, postFilterGainDB, masterVolume,
+                LFOWaveForm, Math.max(0.0, LFOFrequency), clampLevel(panDepth)));
     }
 
     /**
-     * Triggers a note-on event for a given MIDI pitch and velocity.
-     * It finds an available voice and assigns it to play the note.
+     * Triggers a note-on event for a given MIDI pitch and velocity, timestamped now.
      * @param pitchMIDI The MIDI pitch of the note.
      * @param velocity The velocity of the note (0.0 to 1.0).
      */
     public void noteOn(byte pitchMIDI, double velocity) {
+        noteOn(pitchMIDI, velocity, System.nanoTime());
+    }
+
+    /**
+     * Triggers a note-on event for a given MIDI pitch and velocity.
+     * The event is queued and started by the audio thread at the matching sample of the next block.
+     * Must only be called from a single producer thread (the MIDI thread).
+     * @param pitchMIDI The MIDI pitch of the note.
+     * @param velocity The velocity of the note (0.0 to 1.0).
+     * @param eventTimeNanos The System.nanoTime() at which the note occurred.
+     */
+    public void noteOn(byte pitchMIDI, double velocity, long eventTimeNanos) {
+        noteOn(0, pitchMIDI, velocity, eventTimeNanos);
+    }
+
+    /**
+     * Triggers a note-on event for a given MIDI channel, pitch and velocity.
+     * The event is queued and started by the audio thread at the matching sample of the next block.
+     * Must only be called from a single producer thread (the MIDI thread).
+     * @param channel The MIDI channel (0-15).
+     * @param pitchMIDI The MIDI pitch of the note.
+     * @param velocity The velocity of the note (0.0 to 1.0).
+     * @param eventTimeNanos The System.nanoTime() at which the note occurred.
+     */
+    public void noteOn(int channel, byte pitchMIDI, double velocity, long eventTimeNanos) {
         if (velocity < 0.0 || velocity > 1.0) {
             throw new IllegalArgumentException("Velocity must be between 0.0 and 1.0.");
         }
-        // Check if note is already being played and switch it off if it is
-        noteOff(pitchMIDI);
+        if (pitchMIDI < 0) {
+            throw new IllegalArgumentException("MIDI pitch cannot be negative.");
+        }
+        if (channel < 0 || channel >= MIDI_CHANNELS) {
+            throw new IllegalArgumentException("MIDI channel must be between 0 and 15.");
+        }
+        enqueue(MidiEventQueue.pack(MidiEventQueue.NOTE_ON, channel, pitchMIDI, velocity), eventTimeNanos);
+    }
 
-        synchronized (voices) {
-            Voice targetVoice = null;
+    /**
+     * Triggers a note-off event for a given MIDI pitch, timestamped now.
+     * @param pitchMIDI The MIDI pitch of the note to release.
+     */
+    public void noteOff(byte pitchMIDI){
+        noteOff(pitchMIDI, System.nanoTime());
+    }
 
-            // Find an inactive voice
-            for (Voice voice : voices) {
-                if (!voice.isActive()) {
-                    targetVoice = voice;
-                    break;
-                }
+    /**
+     * Triggers a note-off event for a given MIDI pitch.
+     * The event is queued and applied by the audio thread at the matching sample of the next block.
+     * Must only be called from a single producer thread (the MIDI thread).
+     * @param pitchMIDI The MIDI pitch of the note to release.
+     * @param eventTimeNanos The System.nanoTime() at which the note was released.
+     */
+    public void noteOff(byte pitchMIDI, long eventTimeNanos){
+        noteOff(0, pitchMIDI, eventTimeNanos);
+    }
+
+    /**
+     * Triggers a note-off event for a given MIDI channel and pitch.
+     * The event is queued and applied by the audio thread at the matching sample of the next block.
+     * Must only be called from a single producer thread (the MIDI thread).
+     * @param channel The MIDI channel (0-15).
+     * @param pitchMIDI The MIDI pitch of the note to release.
+     * @param eventTimeNanos The System.nanoTime() at which the note was released.
+     */
+    public void noteOff(int channel, byte pitchMIDI, long eventTimeNanos){
+        if (pitchMIDI < 0) {
+            throw new IllegalArgumentException("MIDI pitch cannot be negative.");
+        }
+        if (channel < 0 || channel >= MIDI_CHANNELS) {
+            throw new IllegalArgumentException("MIDI channel must be between 0 and 15.");
+        }
+        enqueue(MidiEventQueue.pack(MidiEventQueue.NOTE_OFF, channel, pitchMIDI, 0.0), eventTimeNanos);
+    }
+
+    /**
+     * Schedules a parameter change, such as a MIDI control change. The change runs straight away
+     * on the calling thread and publishes a new patch through the setters; the audio thread
+     * applies that patch to the voices from the matching sample of the next block onwards.
+     * A change that leaves the patch as it was queues nothing.
+     * Must only be called from a single producer thread (the MIDI thread).
+     * @param change The change to make, through this synthesiser's setters.
+     * @param eventTimeNanos The System.nanoTime() at which the change occurred.
+     */
+    public void scheduleChange(Runnable change, long eventTimeNanos) {
+        long previousVersion = this.patch.get().version();
+        // Counted before the patch is published, so the block start cannot apply it early
+        this.scheduledChanges.incrementAndGet();
+        try {
+            change.run();
+        } finally {
+            Patch current = this.patch.get();
+            if (current.version() == previousVersion) {
+                this.scheduledChanges.decrementAndGet();
+            } else if (!eventQueue.offer(MidiEventQueue.packPatchChange(), eventTimeNanos, current)) {
+                this.scheduledChanges.decrementAndGet();
+                droppedEvents.incrementAndGet();
             }
+        }
+    }
 
-            // If all voices are active, find the oldest one to steal
-            if (targetVoice == null) {
-                targetVoice = voices[0];
-                for (int i = 1; i < voices.length; i++) {
-                    if (voices[i].getNoteOnTime() < targetVoice.getNoteOnTime()) {
-                        targetVoice = voices[i];
-                    }
-                }
+    private void enqueue(long event, long eventTimeNanos) {
+        if (!eventQueue.offer(event, eventTimeNanos)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drains all pending events from the queue and maps each event time onto a sample offset
+     * inside the current block. The previous block's wall-clock window is stretched over this
+     * block, so irregular block start times (e.g. when the output line is refilled in bursts)
+     * still keep events in order and evenly spaced. Must only be called from the audio thread.
+     * @param blockStartNanos The System.nanoTime() at the start of the current block.
+     * @return The number of scheduled events.
+     */
+    private int scheduleEvents(long blockStartNanos) {
+        int count = eventQueue.drainTo(this.pendingEvents, this.pendingEventTimes, this.pendingPatches);
+        long window = blockStartNanos - this.previousBlockStartNanos;
+        boolean firstBlock = this.previousBlockStartNanos == 0;
+        int previousOffset = 0;
+
+        for (int i = 0; i < count; i++) {
+            int offset = 0;
+            if (!firstBlock && window > 0) {
+                long elapsed = this.pendingEventTimes[i] - this.previousBlockStartNanos;
+                offset = (int) Math.max(0, Math.min(this.blockSize - 1, (elapsed * this.blockSize) / window));
             }
+            // Keep arrival order: an event may never be placed before the one queued ahead of it
+            offset = Math.max(offset, previousOffset);
+            this.pendingEventOffsets[i] = offset;
+            previousOffset = offset;
+        }
+        this.previousBlockStartNanos = blockStartNanos;
+        return count;
+    }
 
-            // Apply Settings to Target Voice
-            targetVoice.setOscillatorPitch(pitchMIDI);
-            targetVoice.setVelocity(velocity);
-            setVoiceParams(targetVoice);
-            targetVoice.setPanPosition(getPanPosition());
-            targetVoice.setNoteOnTime(System.nanoTime());
-            targetVoice.noteOn();
+    /**
+     * Applies a single scheduled event. Must only be called from the audio thread.
+     * @param index The index of the event among the pending events.
+     */
+    private void applyEvent(int index) {
+        long event = this.pendingEvents[index];
+        switch (MidiEventQueue.type(event)) {
+            case MidiEventQueue.NOTE_ON -> startNote(MidiEventQueue.channel(event), MidiEventQueue.pitch(event), MidiEventQueue.velocity(event));
+            case MidiEventQueue.NOTE_OFF -> releaseNote(MidiEventQueue.channel(event), MidiEventQueue.pitch(event));
+            case MidiEventQueue.PATCH_CHANGE -> {
+                syncPatchToVoices(this.pendingPatches[index]);
+                this.pendingPatches[index] = null;
+                this.scheduledChanges.decrementAndGet();
+            }
+            default -> { } // Unknown event types are ignored
         }
     }
 
     /**
-     * Triggers a note-off event for a given MIDI pitch.
+     * Assigns a voice to play the note: a free voice if there is one, otherwise one chosen by the steal policy.
+     * Must only be called from the audio thread.
+     * @param channel The MIDI channel of the note.
+     * @param pitchMIDI The MIDI pitch of the note.
+     * @param velocity The velocity of the note (0.0 to 1.0).
+     */
+    private void startNote(int channel, byte pitchMIDI, double velocity) {
+        // Check if note is already being played and switch it off if it is
+        int note = channel * MIDI_NOTES + pitchMIDI;
+        releaseNote(channel, pitchMIDI);
+
+        int index = this.noteVoices[note];
+        if (this.appliedStealPolicy == StealPolicy.SAME_PITCH && index != VoiceAllocator.NONE) {
+            this.voiceAllocator.reallocate(index, 0);
+        } else {
+            index = this.voiceAllocator.allocate(0);
+            // A stolen voice no longer plays its old note
+            forgetNote(index);
+        }
+        this.voiceNotes[index] = note;
+        this.noteVoices[note] = index;
+        Voice targetVoice = this.voices[index];
+
+        // Apply Settings to Target Voice. The patch goes first: it may switch the oscillator, and
+        // the pitch must be set on the one that will play.
+        setVoiceParams(targetVoice, this.appliedPatch);
+        targetVoice.setOscillatorPitch(pitchMIDI);
+        targetVoice.setVelocity(velocity);
+        targetVoice.setFilterControlPeriod(this.appliedFilterControlPeriod); // Voices added by setPolyphony start at the default
+        targetVoice.setFusedRendering(this.appliedFusedRendering);
+        targetVoice.setPanPosition(getPanPosition());
+        targetVoice.setNoteOnTime(System.nanoTime());
+        targetVoice.noteOn();
+        this.voiceAllocator.setStealPriority(index, stealPriority(targetVoice));
+    }
+
+    /**
+     * Releases the voice holding the given note, found through the note index.
+     * Any older voice started for the same note was already released when this one started.
+     * Must only be called from the audio thread.
+     * @param channel The MIDI channel of the note to release.
      * @param pitchMIDI The MIDI pitch of the note to release.
      */
-    public void noteOff(byte pitchMIDI){
-        synchronized (voices){
-            for (int i = 0; i < voices.length; i++){
-                Voice voice = voices[i];
-                if(voice.isActive() && (voice.getPitchMIDI() == pitchMIDI)){
-                    voice.noteOff();
-                }
+    private void releaseNote(int channel, byte pitchMIDI){
+        int index = this.noteVoices[channel * MIDI_NOTES + pitchMIDI];
+        if (index == VoiceAllocator.NONE) {
+            return;
+        }
+        Voice voice = this.voices[index];
+        if (voice.isActiveNoRelease()) {
+            voice.noteOff();
+            // A zero release time goes straight to idle, so the voice can be reused at once
+            if (!voice.isActive()) {
+                freeVoice(index);
+            } else {
+                this.voiceAllocator.setStealPriority(index, stealPriority(voice));
             }
         }
     }
 
     /**
-     * Syncs LFO oscillator selection and frequency from volatile fields.
+     * Returns a voice to the allocator and removes it from the note index.
+     * @param index The voice slot.
+     */
+    private void freeVoice(int index) {
+        this.voiceAllocator.free(index);
+        forgetNote(index);
+    }
+
+    private void forgetNote(int index) {
+        int note = this.voiceNotes[index];
+        if (note != VoiceAllocator.NONE) {
+            if (this.noteVoices[note] == index) {
+                this.noteVoices[note] = VoiceAllocator.NONE;
+            }
+            this.voiceNotes[index] = VoiceAllocator.NONE;
+        }
+    }
+
+    /**
+     * Retires every active voice whose envelope has finished, removing it from the active list.
+     * Must only be called from the audio thread.
+     */
+    private void retireIdleVoices() {
+        int[] activeVoices = this.voiceAllocator.allocatedSlots();
+        // Backwards, so the swap-remove only ever moves an already visited entry
+        for (int i = this.voiceAllocator.allocatedCount() - 1; i >= 0; i--) {
+            int index = activeVoices[i];
+            if (!this.voices[index].isActive()) {
+                freeVoice(index);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the steal priorities of the active voices from their new levels under the
+     * quietest-voice policy. Must only be called from the audio thread.
+     */
+    private void refreshStealPriorities() {
+        if (this.appliedStealPolicy != StealPolicy.QUIETEST) {
+            return;
+        }
+        int[] activeVoices = this.voiceAllocator.allocatedSlots();
+        for (int i = 0; i < this.voiceAllocator.allocatedCount(); i++) {
+            int index = activeVoices[i];
+            this.voiceAllocator.writeStealPriority(index, stealPriority(this.voices[index]));
+        }
+        this.voiceAllocator.reorder();
+    }
+
+    /**
+     * Syncs LFO oscillator selection and frequency from the applied patch.
      * Must only be called from the audio thread.
      */
     private void syncLfo() {
-        switch (this.LFOWaveForm) {
+        switch (this.appliedPatch.LFOWaveform()) {
             case SINE -> this.LFO = this.sineLFO;
             case SAW -> this.LFO = this.sawLFO;
             case TRIANGLE -> this.LFO = this.triangleLFO;
             case SQUARE -> this.LFO = this.squareLFO;
         }
-        this.LFO.setFrequency(this.LFOFrequency);
+        this.LFO.setFrequency(this.appliedPatch.LFOFrequency());
     }
 
     /**
-     * Atomically reads and clears dirty flags, then applies changed parameter
-     * groups to all voices. Must be called while holding the voices lock.
+     * Applies only the parameter groups of the given patch that differ from the previously applied
+     * patch to the sounding voices. A voice picks up the whole applied patch when it starts a note,
+     * so idle voices are left alone. A patch whose version is not newer than the applied one has
+     * nothing to add and is skipped. Must only be called from the audio thread.
+     * @param current The patch to apply.
      */
-    private void syncDirtyParamsToVoices() {
-        boolean wf = this.waveformDirty.getAndSet(false);
-        boolean fi = this.filterDirty.getAndSet(false);
-        boolean fe = this.filterEnvDirty.getAndSet(false);
-        boolean ae = this.ampEnvDirty.getAndSet(false);
-        boolean ga = this.gainDirty.getAndSet(false);
-        boolean pa = this.panDirty.getAndSet(false);
+    private void syncPatchToVoices(Patch current) {
+        boolean reapply = this.reapplyPatch.get() && this.reapplyPatch.getAndSet(false);
+        Patch previous = this.appliedPatch;
+        if (previous != null && current.version() <= previous.version()) {
+            if (!reapply) {
+                return;
+            }
+            current = previous;
+        }
+
+        boolean all = reapply || previous == null;
+        boolean wf = all || current.waveform() != previous.waveform();
+        boolean fi = all || !current.sameFilter(previous);
+        boolean fe = all || !current.sameFilterEnvelope(previous);
+        boolean ae = all || !current.sameAmpEnvelope(previous);
+        boolean ga = all || !current.sameGainStaging(previous);
+        boolean pa = all || Double.compare(current.panDepth(), previous.panDepth()) != 0;
 
         if (wf || fi || fe || ae || ga || pa) {
-            Waveform wfSnap = wf ? this.waveform : null;
-            double fcSnap = this.filterCutoff, frSnap = this.filterResonance, fmrSnap = this.filterModRange;
-            double faSnap = this.filterAttackTime, fdSnap = this.filterDecayTime, fsSnap = this.filterSustainLevel, frTSnap = this.filterReleaseTime;
-            double aaSnap = this.ampAttackTime, adSnap = this.ampDecayTime, asSnap = this.ampSustainLevel, arSnap = this.ampReleaseTime;
-            double pfgSnap = this.preFilterGainDB, pfgPostSnap = this.postFilterGainDB;
-            double pdSnap = this.panDepth;
-
-            for (int i = 0; i < voices.length; i++) {
-                if (wf) voices[i].setOscillatorWaveform(wfSnap);
-                if (fi) voices[i].setFilterParameters(fcSnap, frSnap, fmrSnap);
-                if (fe) voices[i].setFilterEnvelope(faSnap, fdSnap, fsSnap, frTSnap);
-                if (ae) voices[i].setAmpEnvelope(aaSnap, adSnap, asSnap, arSnap);
-                if (ga) voices[i].setFilterGainStaging(pfgSnap, pfgPostSnap);
-                if (pa) voices[i].setPanDepth(pdSnap);
+            int[] activeVoices = this.voiceAllocator.allocatedSlots();
+            for (int i = 0; i < this.voiceAllocator.allocatedCount(); i++) {
+                Voice voice = this.voices[activeVoices[i]];
+                if (wf) voice.setOscillatorWaveform(current.waveform());
+                if (fi) voice.setFilterOversampling(current.filterOversampling());
+                if (fi) voice.setFilterParameters(current.filterCutoff(), current.filterResonance(), current.filterModRange());
+                if (fe) {
+                    voice.setFilterEnvelope(current.filterAttackTime(), current.filterDecayTime(), current.filterSustainLevel(), current.filterReleaseTime());
+                    voice.setFilterEnvelopeCurves(current.filterCurves());
+                }
+                if (ae) {
+                    voice.setAmpEnvelope(current.ampAttackTime(), current.ampDecayTime(), current.ampSustainLevel(), current.ampReleaseTime());
+                    voice.setAmpEnvelopeCurves(current.ampCurves());
+                }
+                if (ga) voice.setFilterGainStaging(current.preFilterGainDB(), current.postFilterGainDB());
+                if (pa) voice.setPanDepth(current.panDepth());
             }
         }
+        this.volumeAttenuation = this.voiceSumAttenuation * current.masterVolumeScalar();
+        this.silenceThreshold = AudioConstants.SILENCE_THRESHOLD * current.masterVolumeScalar();
+        this.appliedPatch = current;
+    }
+
+    /**
+     * Gets the stage timing recorder. Enable it to record per-stage timings for every block;
+     * the totals can be read from any thread without locks.
+     * @return The stage timings of this synthesiser.
+     */
+    public StageTimings getStageTimings() {
+        return stageTimings;
+    }
+
+    public Precision getPrecision() {
+        return this.precision;
     }
 
     /**
      * Processes one block of audio samples for all active voices.
+     * Rendering is split at the sample offsets of any scheduled events, so notes and
+     * control changes start on their exact sample without shrinking the block size.
+     * Per-stage timings are recorded when the StageTimings recorder is enabled, and per-voice
+     * component timings only when its voice stages are enabled too.
      */
     public void processBlock(double[] stereoOutputBuffer){
+        processBlock(stereoOutputBuffer, System.nanoTime());
+    }
+
+    /**
+     * Processes one block of audio samples for all active voices, with the block starting at the
+     * given time rather than now. Events are placed inside the block by comparing their times with
+     * the block start times, so this lets the block clock differ from the wall clock, for example
+     * when rendering faster than real time.
+     * @param stereoOutputBuffer The interleaved stereo output buffer.
+     * @param blockStartNanos The start of this block, on the System.nanoTime() scale the events are timestamped with.
+     */
+    public void processBlock(double[] stereoOutputBuffer, long blockStartNanos){
+        boolean timed = this.stageTimings.isEnabled();
+        boolean voicesTimed = timed && this.stageTimings.isVoiceStagesEnabled();
+        this.voiceStagesSkipped = false;
+        long startTime = System.nanoTime();
+
         // Clear the output buffer
         Arrays.fill(stereoOutputBuffer, 0.0);
 
+        // Read the patch before the count of scheduled changes, so a change still on its way is never picked up early
+        Patch latest = this.patch.get();
+        if (this.scheduledChanges.get() == 0 || this.appliedPatch == null) {
+            syncPatchToVoices(latest);
+        }
+        syncVoicePool();
+        syncStealPolicy();
+        syncFilterControlPeriod();
+        syncFusedRendering();
         syncLfo();
+        syncRenderer();
+        syncMasterLimiting();
 
         // Populate LFO buffer
         LFO.processBlock(null, this.lfoOutputBuffer, blockSize);
-
-        double vol = this.volumeAttenuation;
+        if (timed) startTime = this.stageTimings.lap(StageTimings.Stage.LFO, startTime);
 
         // Voice Processing and Mixing
-        synchronized (voices) {
-            syncDirtyParamsToVoices();
-
-            for (int i = 0; i < voices.length; i++) {
-                Voice voice = voices[i];
-                if (voice.isActive()) {
-                    // If the voice is active, process its block and sum it into the output buffer.
-                    voice.processBlock(null, this.voiceOutputBuffer, this.blockSize);
-                    for(int j = 0; j < this.blockSize * 2; j++){
-                        stereoOutputBuffer[j] += this.voiceOutputBuffer[j] * vol;
-                    }
-                }
+        int eventCount = scheduleEvents(blockStartNanos);
+
+        int position = 0;
+        int eventIndex = 0;
+        while (position < this.blockSize) {
+            while (eventIndex < eventCount && this.pendingEventOffsets[eventIndex] <= position) {
+                applyEvent(eventIndex++);
+            }
+            int segmentEnd = eventIndex < eventCount ? this.pendingEventOffsets[eventIndex] : this.blockSize;
+            if (this.precision == Precision.FLOAT) {
+                renderVoicesFloat(position, segmentEnd - position, voicesTimed);
+            } else {
+                renderVoices(stereoOutputBuffer, position, segmentEnd - position, voicesTimed);
+            }
+            position = segmentEnd;
+        }
+        if (this.precision == Precision.FLOAT) {
+            // Widen the float mix into the output
+            for (int i = 0; i < blockSize * 2; i++) {
+                stereoOutputBuffer[i] = this.mixBufferF[i];
+                this.mixBufferF[i] = 0.0f;
             }
         }
+        refreshStealPriorities();
+        if (timed) startTime = this.stageTimings.lap(StageTimings.Stage.VOICE_MIX, startTime);
 
         // Update LFO position once per block (last sample)
         this.LFOPosition = lfoOutputBuffer[blockSize - 1];
 
+        // Limiting, then Soft Clipping as a safety stage above the limiter's ceiling
+        if (this.appliedMasterLimiting) {
+            this.limiter.process(stereoOutputBuffer, blockSize);
+            if (timed) startTime = this.stageTimings.lap(StageTimings.Stage.LIMITER, startTime);
+            SampleKernels.softClip(stereoOutputBuffer, blockSize * 2, AudioConstants.SOFT_CLIP_KNEE);
+            if (timed) startTime = this.stageTimings.lap(StageTimings.Stage.SOFT_CLIP, startTime);
+        }
+
         // Hard Clipping
-        for (int i = 0; i < blockSize * 2; i++) {
-            if (stereoOutputBuffer[i] > 1.0) {
-                stereoOutputBuffer[i] = 1.0;
-            } else if (stereoOutputBuffer[i] < -1.0) {
-                stereoOutputBuffer[i] = -1.0;
-            }
+        SampleKernels.hardClip(stereoOutputBuffer, blockSize * 2);
+        if (timed) {
+            this.stageTimings.lap(StageTimings.Stage.HARD_CLIP, startTime);
+            this.stageTimings.endBlock(voicesTimed && !this.voiceStagesSkipped);
         }
     }
+
     /**
-     * Processes one block of audio samples and returns performance timings.
-     * @return A map containing the total time taken for each processing stage in nanoseconds.
+     * Renders a segment of the block for every active voice and sums it into the output buffer.
+     * @param stereoOutputBuffer The interleaved stereo mix buffer.
+     * @param offset The first sample of the segment within the block.
+     * @param length The number of samples in the segment.
+     * @param timed true to record the per-voice component timings, which renders on the modular path.
      */
-    public Map<String, Long> processBlockInstrumented(double[] stereoOutputBuffer){
-        Map<String, Long> timings = new HashMap<>();
-        long startTime, endTime;
-
-        // Clear the output buffer and timings map
-        timings.clear();
-        Arrays.fill(stereoOutputBuffer, 0.0);
-
-        syncLfo();
-
-        // Populate LFO buffer
-        startTime = System.nanoTime();
-        LFO.processBlock(null, this.lfoOutputBuffer, blockSize);
-        endTime = System.nanoTime();
-        timings.merge("LFO", endTime - startTime, Long::sum);
-
+    private void renderVoices(double[] stereoOutputBuffer, int offset, int length, boolean timed) {
         double vol = this.volumeAttenuation;
+        int mixOffset = offset * 2;
+
+        int[] activeVoices = this.voiceAllocator.allocatedSlots();
+        int activeCount = this.voiceAllocator.allocatedCount();
+
+        // Spread the voices across the worker pool when enough of them are sounding to pay for the barrier
+        ParallelVoiceRenderer renderer = this.parallelRenderer;
+        if (renderer != null && activeCount >= AudioConstants.PARALLEL_VOICE_THRESHOLD) {
+            // The workers do not time components, so this block has no per-voice stages
+            this.voiceStagesSkipped |= timed;
+            renderer.render(this.voices, activeVoices, activeCount, stereoOutputBuffer, offset, length, vol, this.silenceThreshold);
+            retireIdleVoices();
+            return;
+        }
 
-        // Voice Processing and Mixing
-        startTime = System.nanoTime();
-        synchronized (voices) {
-            syncDirtyParamsToVoices();
-
-            for (int i = 0; i < voices.length; i++) {
-                Voice voice = voices[i];
-                if (voice.isActive()) {
-                    voice.processBlockInstrumented(this.lfoOutputBuffer, this.voiceOutputBuffer, this.blockSize, timings);
-                    for(int j = 0; j < this.blockSize * 2; j++){
-                        stereoOutputBuffer[j] += this.voiceOutputBuffer[j] * vol;
-                    }
-                }
-            }
+        if (this.laneRendering && !timed && this.appliedPatch.filterOversampling() == 1) {
+            this.laneRenderer.render(this.voices, activeVoices, activeCount, stereoOutputBuffer, offset, length, vol, this.silenceThreshold);
+            retireIdleVoices();
+            return;
         }
-        endTime = System.nanoTime();
-        timings.merge("Voice Processing & Mix", endTime - startTime, Long::sum);
 
-        // Update LFO position once per block (last sample)
-        this.LFOPosition = lfoOutputBuffer[blockSize - 1];
+        // Only the active voice list is touched, never the idle part of the bank.
+        // Backwards, so a voice retired here swaps in an entry that has already been rendered.
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int index = activeVoices[i];
+            Voice voice = this.voices[index];
+            // Process the voice's segment and sum it into the output buffer.
+            if (timed) {
+                voice.processBlockInstrumented(this.lfoOutputBuffer, this.voiceOutputBuffer, length, this.stageTimings);
+            } else {
+                voice.processBlock(null, this.voiceOutputBuffer, length);
+            }
+            SampleKernels.mixInto(stereoOutputBuffer, mixOffset, this.voiceOutputBuffer, length * 2, vol);
+            if (voice.isReleasing()) {
+                voice.endIfSilent(SampleKernels.peak(this.voiceOutputBuffer, length * 2) * vol, this.silenceThreshold, length);
+            }
+            if (!voice.isActive()) {
+                freeVoice(index);
+            }
+        }
+    }
 
+    /**
+     * Renders a segment of the block for every active voice in single precision and sums it into the float mix buffer.
+     * @param offset The first sample of the segment within the block.
+     * @param length The number of samples in the segment.
+     * @param timed true to record the per-voice component timings, which renders on the modular path.
+     */
+    private void renderVoicesFloat(int offset, int length, boolean timed) {
+        float[] mix = this.mixBufferF;
+        float vol = (float) this.volumeAttenuation;
+        int mixOffset = offset * 2;
+        int[] activeVoices = this.voiceAllocator.allocatedSlots();
+        int activeCount = this.voiceAllocator.allocatedCount();
+
+        ParallelVoiceRenderer renderer = this.parallelRenderer;
+        if (renderer != null && activeCount >= AudioConstants.PARALLEL_VOICE_THRESHOLD) {
+            this.voiceStagesSkipped |= timed;
+            renderer.render(this.voices, activeVoices, activeCount, mix, offset, length, vol, this.silenceThreshold);
+            retireIdleVoices();
+            return;
+        }
 
-        // Hard Clipping
-        startTime = System.nanoTime();
-        for (int i = 0; i < blockSize * 2; i++) {
-            if (stereoOutputBuffer[i] > 1.0) {
-                stereoOutputBuffer[i] = 1.0;
-            } else if (stereoOutputBuffer[i] < -1.0) {
-                stereoOutputBuffer[i] = -1.0;
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int index = activeVoices[i];
+            Voice voice = this.voices[index];
+            if (timed) {
+                voice.processBlockInstrumented(this.voiceOutputBufferF, length, this.stageTimings);
+            } else {
+                voice.processBlock(null, this.voiceOutputBufferF, length);
+            }
+            SampleKernels.mixInto(mix, mixOffset, this.voiceOutputBufferF, length * 2, vol);
+            if (voice.isReleasing()) {
+                voice.endIfSilent(SampleKernels.peak(this.voiceOutputBufferF, length * 2) * vol, this.silenceThreshold, length);
+            }
+            if (!voice.isActive()) {
+                freeVoice(index);
             }
         }
-        endTime = System.nanoTime();
-        timings.merge("Hard Clipping", endTime - startTime, Long::sum);
-
-        return timings;
     }
-}
\ No newline at end of file
+}
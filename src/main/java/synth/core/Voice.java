@@ -1,10 +1,12 @@
 package synth.core;
 
 import synth.components.Envelope;
+import synth.components.filters.HalfBandResampler;
 import synth.components.filters.ResonantLowPassFilter;
 import synth.components.oscillators.*;
+import synth.utils.AudioConstants;
 import synth.utils.LookupTables;
-import java.util.Map;
+import synth.utils.SampleKernels;
 
 
 /**
@@ -12,7 +14,7 @@ import java.util.Map;
  * required to generate a sound, including an oscillator, filter, and envelopes.
  * This class acts as a facade to simplify control over its internal components.
  */
-public class Voice implements AudioComponent{
+public class Voice implements AudioComponent, FloatAudioComponent{
 
     // Audio Component Objects
     private Oscillator oscillator;
@@ -21,7 +23,8 @@ public class Voice implements AudioComponent{
     private final Oscillator triangle;
     private final Oscillator square;
 
-    private final ResonantLowPassFilter filter;
+    private ResonantLowPassFilter filter; // The filter for the current oversampling factor
+    private final ResonantLowPassFilter[] filters; // At 1x, 2x and 4x the sample rate (double voices only)
     private final Envelope ampEnvelope;
     private final Envelope filterEnvelope;
 
@@ -33,7 +36,11 @@ public class Voice implements AudioComponent{
     private double filterCutoff;
     private double filterResonance;
     private double filterModRange;
-    private int controlRateCounter;
+    private int filterControlPeriod; // Samples between filter coefficient updates, 0 for once per block
+    private int filterOversampling; // 1, 2 or 4
+
+    // Rendering
+    private boolean fusedRendering = true;
 
     // Gain Staging
     private double velocityMult;
@@ -52,14 +59,25 @@ public class Voice implements AudioComponent{
     // Pre Computed Constants
     private static final double panIndexScalar = LookupTables.TABLE_SIZE / (2.0 * Math.PI) * (Math.PI/4);
 
-    // Output Buffers
+    // Output Buffers, allocated only for the precision the voice was built for
+    private final Synthesiser.Precision precision;
     private final double[] oscillatorOutputBuffer;
     private final double[] filterOutputBuffer;
     private final double[] filterEnvelopeOutputBuffer;
     private final double[] ampEnvelopeOutputBuffer;
+    private final float[] oscillatorOutputBufferF;
+    private final float[] filterOutputBufferF;
+    private final float[] filterEnvelopeOutputBufferF;
+    private final float[] ampEnvelopeOutputBufferF;
+
+    // Filter Oversampling: one half-band stage per doubling, and buffers at up to 4x the block size
+    private final HalfBandResampler[] resamplers;
+    private final double[] oversampledBuffer;
+    private final double[] oversampledScratchBuffer; // The 2x signal at 4x, or the cutoff
 
     // Trackers
     private long noteOnTime;
+    private int silentSamples; // Consecutive samples of the release below SILENCE_THRESHOLD
 
     /**
      * Constructs a new Voice with the specified waveform, pitch, sample rate, and pan position.
@@ -69,6 +87,21 @@ public class Voice implements AudioComponent{
      * @param sampleRate     The audio sample rate. Must be positive.
      */
     public Voice (Synthesiser.Waveform waveform, double pitchFrequency, double sampleRate, int blockSize){
+        this(waveform, pitchFrequency, sampleRate, blockSize, Synthesiser.Precision.DOUBLE);
+    }
+
+    /**
+     * Constructs a new Voice that renders in the given precision.
+     * A DOUBLE voice is rendered through processBlock(double[], ...) and a FLOAT voice through
+     * processBlock(float[], ...); only the scratch buffers for that precision are allocated.
+     *
+     * @param waveform       The oscillator waveform.
+     * @param pitchFrequency The initial pitch frequency of the oscillator. Must not be negative.
+     * @param sampleRate     The audio sample rate. Must be positive.
+     * @param precision      The sample precision of the voice's processing chain.
+     */
+    public Voice (Synthesiser.Waveform waveform, double pitchFrequency, double sampleRate, int blockSize,
+                  Synthesiser.Precision precision){
         if (pitchFrequency < 0) {
             throw new IllegalArgumentException("Initial pitch frequency cannot be negative.");
         }
@@ -80,7 +113,11 @@ public class Voice implements AudioComponent{
         this.square = new SquareOscillator(sampleRate);
         setOscillatorWaveform(waveform);
 
+        boolean useFloat = precision == Synthesiser.Precision.FLOAT;
         this.filter = new ResonantLowPassFilter(sampleRate);
+        this.filters = useFloat ? new ResonantLowPassFilter[] {this.filter} : new ResonantLowPassFilter[] {
+                this.filter, new ResonantLowPassFilter(sampleRate * 2), new ResonantLowPassFilter(sampleRate * 4)};
+        this.filterOversampling = 1;
         this.ampEnvelope = new Envelope(sampleRate);
         this.filterEnvelope = new Envelope(sampleRate);
 
@@ -91,7 +128,7 @@ public class Voice implements AudioComponent{
         this.filterResonance = 1;
         this.filterModRange = 2000;
         this.filter.setParameters(this.filterCutoff, this.filterResonance);
-        this.controlRateCounter = 0;
+        this.filterControlPeriod = 0;
 
         // Set Oscillator starting pitch
         this.pitchFrequency = pitchFrequency;
@@ -104,10 +141,23 @@ public class Voice implements AudioComponent{
         this.panDepth = 1.0;
 
         // Output Buffers
-        this.oscillatorOutputBuffer = new double[blockSize];
-        this.filterOutputBuffer = new double[blockSize];
-        this.filterEnvelopeOutputBuffer  = new double[blockSize];
-        this.ampEnvelopeOutputBuffer  = new double[blockSize];
+        this.precision = precision;
+        this.oscillatorOutputBuffer = useFloat ? null : new double[blockSize];
+        this.filterOutputBuffer = useFloat ? null : new double[blockSize];
+        this.filterEnvelopeOutputBuffer  = useFloat ? null : new double[blockSize];
+        this.ampEnvelopeOutputBuffer  = useFloat ? null : new double[blockSize];
+        this.oscillatorOutputBufferF = useFloat ? new float[blockSize] : null;
+        this.filterOutputBufferF = useFloat ? new float[blockSize] : null;
+        this.filterEnvelopeOutputBufferF = useFloat ? new float[blockSize] : null;
+        this.ampEnvelopeOutputBufferF = useFloat ? new float[blockSize] : null;
+        this.resamplers = useFloat ? null : new HalfBandResampler[] {
+                new HalfBandResampler(blockSize), new HalfBandResampler(blockSize * 2)};
+        this.oversampledBuffer = useFloat ? null : new double[blockSize * 4];
+        this.oversampledScratchBuffer = useFloat ? null : new double[blockSize * 4];
+    }
+
+    public Synthesiser.Precision getPrecision() {
+        return this.precision;
     }
 
     // Facade Setter Methods
@@ -184,6 +234,9 @@ public class Voice implements AudioComponent{
     public void setAmpEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime){
         this.ampEnvelope.setEnvelope(attackTime, decayTime, sustainLevel, releaseTime);
     }
+    public void setAmpEnvelopeCurves(Envelope.Curves curves){
+        this.ampEnvelope.setCurves(curves);
+    }
 
     // Filter Envelope:
     public void setFilterEnvelopeAttackTime(double seconds){
@@ -201,6 +254,9 @@ public class Voice implements AudioComponent{
     public void setFilterEnvelope(double attackTime, double decayTime, double sustainLevel, double releaseTime){
         this.filterEnvelope.setEnvelope(attackTime, decayTime, sustainLevel, releaseTime);
     }
+    public void setFilterEnvelopeCurves(Envelope.Curves curves){
+        this.filterEnvelope.setCurves(curves);
+    }
 
     /**
      * Sets the parameters for the resonant low-pass filter.
@@ -215,6 +271,69 @@ public class Voice implements AudioComponent{
         this.filter.setParameters(frequency, resonance);
     }
 
+    /**
+     * Sets how often the filter envelope updates the filter cutoff.
+     * With a period of 0 the cutoff is taken from the first sample of each block, so fast filter
+     * envelopes step at the block rate. Any other period updates the coefficients every that many
+     * samples and interpolates between updates; 1 updates them every sample.
+     * @param samples The number of samples between updates, or 0 for once per block.
+     */
+    public void setFilterControlPeriod(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("Filter control period cannot be negative.");
+        }
+        this.filterControlPeriod = samples;
+    }
+
+    /**
+     * Sets how many times the sample rate the filter runs at. Oversampling moves the filter's
+     * Nyquist frequency up, so high cutoffs and resonance keep their analogue shape instead of
+     * cramping against the sample rate, at the cost of the resampling and of running the filter
+     * 2 or 4 times per sample. An oversampled voice always renders through the modular path.
+     * Switching clears the new filter and resamplers, as if the voice had been silent.
+     * @param factor 1 (off), 2 or 4.
+     */
+    public void setFilterOversampling(int factor) {
+        if (factor != 1 && factor != 2 && factor != 4) {
+            throw new IllegalArgumentException("Filter oversampling must be 1, 2 or 4.");
+        }
+        if (factor != 1 && this.precision == Synthesiser.Precision.FLOAT) {
+            throw new IllegalArgumentException("Filter oversampling is only available in double precision.");
+        }
+        if (factor == this.filterOversampling) {
+            return;
+        }
+        this.filterOversampling = factor;
+        this.filter = this.filters[Integer.numberOfTrailingZeros(factor)];
+        this.filter.setIntegrators(0.0, 0.0);
+        this.filter.setParameters(this.filterCutoff, this.filterResonance);
+        if (factor > 1) {
+            for (HalfBandResampler resampler : this.resamplers) {
+                resampler.reset();
+            }
+        }
+    }
+
+    public int getFilterOversampling() {
+        return this.filterOversampling;
+    }
+
+    /**
+     * Chooses between the fused single-pass renderer and the modular one, which runs each component
+     * over the whole block in turn. Both produce the same samples; the modular path is kept for
+     * debugging and comparison. Timing each component (StageTimings.setVoiceStagesEnabled) needs the
+     * modular path, so that trades the fused path's speed for a per-component breakdown; plain stage
+     * timings only time the voice mix as a whole and leave this choice alone.
+     * @param fused true to render in a single pass.
+     */
+    public void setFusedRendering(boolean fused) {
+        this.fusedRendering = fused;
+    }
+
+    public boolean isFusedRendering() {
+        return this.fusedRendering;
+    }
+
     /**
      * Sets the pre- and post-filter gain levels.
      * @param preFilterGainDB Gain before the filter in decibels.
@@ -244,6 +363,7 @@ public class Voice implements AudioComponent{
     public void noteOn(){
         ampEnvelope.noteOn();
         filterEnvelope.noteOn();
+        this.silentSamples = 0;
     }
 
     /**
@@ -262,6 +382,22 @@ public class Voice implements AudioComponent{
         return this.noteOnTime;
     }
 
+    public double getVelocity() {
+        return this.velocityMult;
+    }
+
+    public Envelope.Stage getAmpStage() {
+        return ampEnvelope.getStage();
+    }
+
+    /**
+     * Gets how loud the voice currently is, before panning and gain staging.
+     * @return The amplitude envelope level scaled by the note velocity.
+     */
+    public double getAmpLevel() {
+        return ampEnvelope.getLevel() * this.velocityMult;
+    }
+
     /**
      * Checks if the voice is currently active.
      * @return true if the amplitude envelope is not in the IDLE stage.
@@ -270,6 +406,38 @@ public class Voice implements AudioComponent{
         return ampEnvelope.getStage() != Envelope.Stage.IDLE;
     }
 
+    /**
+     * Checks if the voice is in its release. Renderers only need to measure a releasing voice's
+     * output for endIfSilent.
+     * @return true if the amplitude envelope is in the RELEASE stage.
+     */
+    public boolean isReleasing() {
+        return ampEnvelope.getStage() == Envelope.Stage.RELEASE;
+    }
+
+    /**
+     * Retires a releasing voice once it has stayed at or below the silence threshold for
+     * SILENCE_HOLD samples, by ending its amp envelope. A long or curved release spends most of its
+     * time far below audibility; this stops it costing a full voice's rendering until it reaches zero.
+     * @param peak The largest magnitude the voice added to the mix over the segment just rendered.
+     * @param threshold The silence threshold on the same scale as the peak: SILENCE_THRESHOLD
+     *                  times the master volume, so the test does not depend on the master volume.
+     * @param length The number of samples in the segment.
+     */
+    public void endIfSilent(double peak, double threshold, int length) {
+        if (!isReleasing()) {
+            return;
+        }
+        if (!(peak <= threshold)) {
+            this.silentSamples = 0;
+            return;
+        }
+        this.silentSamples += length;
+        if (this.silentSamples >= AudioConstants.SILENCE_HOLD) {
+            ampEnvelope.silence();
+        }
+    }
+
     /**
      * Checks if the voice is in the attack/decay/sustain stage. Useful for rendering.
      * @return true if the amplitude envelope is not in the IDLE OR RELEASE stage.
@@ -278,6 +446,347 @@ public class Voice implements AudioComponent{
         return (ampEnvelope.getStage() != Envelope.Stage.IDLE) & (ampEnvelope.getStage() != Envelope.Stage.RELEASE);
     }
 
+    // Lane Rendering (component access for LaneVoiceRenderer)
+
+    Oscillator getOscillator() {
+        return this.oscillator;
+    }
+
+    ResonantLowPassFilter getFilter() {
+        return this.filter;
+    }
+
+    Envelope getAmpEnvelope() {
+        return this.ampEnvelope;
+    }
+
+    int getFilterControlPeriod() {
+        return this.filterControlPeriod;
+    }
+
+    double getPreFilterMult() {
+        return this.preFilterMult;
+    }
+
+    /**
+     * Gets the gain applied after the amp envelope: velocity and post-filter gain.
+     */
+    double getOutputMult() {
+        return this.velocityMult * this.postFilterMult;
+    }
+
+    double getLeftGain() {
+        return this.leftGain;
+    }
+
+    double getRightGain() {
+        return this.rightGain;
+    }
+
+    // Fused Rendering
+    // Each sample is generated, gain staged, filtered, enveloped and panned before the next, with the
+    // oscillator, filter and amp envelope state held in locals, so none of the scratch buffers are
+    // written or re-read. The arithmetic per sample is the same as the modular path's, in the same
+    // order. The block is split where the filter coefficients are retargeted (each control period)
+    // and wherever the amp envelope cannot run without checking for the end of its stage; the filter
+    // envelope is only read where the cutoff is updated.
+
+    /**
+     * Renders a block in a single pass. See setFusedRendering.
+     * @param stereoOutputBuffer The buffer where the voice's stereo output will be written.
+     * @param blockSize The number of samples to process.
+     */
+    private void processBlockFused(double[] stereoOutputBuffer, int blockSize) {
+        double[] table = this.oscillator.getWaveTable();
+        int phase = this.oscillator.getPhase();
+        int phaseIncrement = this.oscillator.getPhaseIncrement();
+        double preFilterMult = this.preFilterMult;
+        double outputMult = this.velocityMult * this.postFilterMult;
+        double leftGain = this.leftGain;
+        double rightGain = this.rightGain;
+        double ic1 = this.filter.getIntegrator1();
+        double ic2 = this.filter.getIntegrator2();
+
+        boolean modulated = this.filterControlPeriod != 0;
+        int period = modulated ? this.filterControlPeriod : blockSize;
+        if (!modulated) {
+            updateBlockRateCutoff(blockSize);
+        }
+        double a1 = this.filter.getA1();
+        double a2 = this.filter.getA2();
+        double a3 = this.filter.getA3();
+        double periodReciprocal = 1.0 / period;
+
+        for (int start = 0; start < blockSize; start += period) {
+            int end = Math.min(start + period, blockSize);
+
+            // Ramp the coefficients towards the cutoff at the end of the period
+            double delta1 = 0.0;
+            double delta2 = 0.0;
+            double delta3 = 0.0;
+            if (modulated) {
+                double step = end - start == period ? periodReciprocal : 1.0 / (end - start);
+                retargetFilterCutoff(end - start);
+                delta1 = (this.filter.getA1() - a1) * step;
+                delta2 = (this.filter.getA2() - a2) * step;
+                delta3 = (this.filter.getA3() - a3) * step;
+            }
+
+            int position = start;
+            while (position < end) {
+                // Amp envelope: a run of gap = gap * multiplier + offset, level = base + gap, or a
+                // single stepped sample at a fixed level when its stage may end on this sample
+                int run = this.ampEnvelope.safeRunLength(end - position);
+                boolean stepped = run == 0;
+                double gap = stepped ? 0.0 : this.ampEnvelope.beginRun();
+                double multiplier = stepped ? 0.0 : this.ampEnvelope.getRunMultiplier();
+                double offset = stepped ? 0.0 : this.ampEnvelope.getRunOffset();
+                double base = stepped ? this.ampEnvelope.stepSample() : this.ampEnvelope.getRunBase();
+                int runEnd = stepped ? position + 1 : position + run;
+
+                for (int i = position; i < runEnd; i++) {
+                    // Oscillator and pre-filter gain
+                    double sample = Oscillator.lookup(table, phase) * preFilterMult;
+                    phase += phaseIncrement;
+
+                    // TPT State-Variable Filter
+                    a1 += delta1;
+                    a2 += delta2;
+                    a3 += delta3;
+                    double v3 = sample - ic2;
+                    double v1 = a1 * ic1 + a2 * v3;
+                    double v2 = ic2 + a2 * ic1 + a3 * v3;
+                    ic1 = 2 * v1 - ic1;
+                    ic2 = 2 * v2 - ic2;
+
+                    // Amp envelope, velocity, post-filter gain and panning
+                    gap = gap * multiplier + offset;
+                    double monoSample = v2 * (base + gap) * outputMult;
+                    stereoOutputBuffer[i * 2] = monoSample * leftGain;
+                    stereoOutputBuffer[i * 2 + 1] = monoSample * rightGain;
+                }
+                if (!stepped) {
+                    this.ampEnvelope.endRun(gap);
+                }
+                position = runEnd;
+            }
+
+            // Land exactly on the target so rounding in the ramp never accumulates
+            a1 = this.filter.getA1();
+            a2 = this.filter.getA2();
+            a3 = this.filter.getA3();
+        }
+
+        this.oscillator.setPhase(phase);
+        this.filter.setIntegrators(ic1, ic2);
+    }
+
+    /**
+     * Renders a block in a single pass in single precision. See setFusedRendering.
+     * @param stereoOutputBuffer The buffer where the voice's stereo output will be written.
+     * @param blockSize The number of samples to process.
+     */
+    private void processBlockFused(float[] stereoOutputBuffer, int blockSize) {
+        float[] table = this.oscillator.getWaveTableF();
+        int phase = this.oscillator.getPhase();
+        int phaseIncrement = this.oscillator.getPhaseIncrement();
+        float preFilterMult = (float) this.preFilterMult;
+        float outputMult = (float) (this.velocityMult * this.postFilterMult);
+        float leftGain = (float) this.leftGain;
+        float rightGain = (float) this.rightGain;
+        float ic1 = this.filter.getIntegrator1F();
+        float ic2 = this.filter.getIntegrator2F();
+
+        boolean modulated = this.filterControlPeriod != 0;
+        int period = modulated ? this.filterControlPeriod : blockSize;
+        if (!modulated) {
+            double finalCutoff = filterCutoff + ((float) this.filterEnvelope.advance(1) * filterModRange);
+            filter.setParameters(finalCutoff, this.filterResonance);
+            this.filterEnvelope.advance(blockSize - 1);
+        }
+        float baseCutoff = (float) filterCutoff;
+        float modRange = (float) filterModRange;
+        float a1 = this.filter.getA1F();
+        float a2 = this.filter.getA2F();
+        float a3 = this.filter.getA3F();
+        float periodReciprocal = 1.0f / period;
+
+        for (int start = 0; start < blockSize; start += period) {
+            int end = Math.min(start + period, blockSize);
+
+            float delta1 = 0.0f;
+            float delta2 = 0.0f;
+            float delta3 = 0.0f;
+            if (modulated) {
+                float step = end - start == period ? periodReciprocal : 1.0f / (end - start);
+                float cutoff = baseCutoff + ((float) this.filterEnvelope.advance(end - start) * modRange);
+                this.filter.retarget(cutoff, this.filterResonance);
+                delta1 = (this.filter.getA1F() - a1) * step;
+                delta2 = (this.filter.getA2F() - a2) * step;
+                delta3 = (this.filter.getA3F() - a3) * step;
+            }
+
+            int position = start;
+            while (position < end) {
+                int run = this.ampEnvelope.safeRunLength(end - position);
+                boolean stepped = run == 0;
+                double gap = stepped ? 0.0 : this.ampEnvelope.beginRun();
+                double multiplier = stepped ? 0.0 : this.ampEnvelope.getRunMultiplier();
+                double offset = stepped ? 0.0 : this.ampEnvelope.getRunOffset();
+                double base = stepped ? this.ampEnvelope.stepSample() : this.ampEnvelope.getRunBase();
+                int runEnd = stepped ? position + 1 : position + run;
+
+                for (int i = position; i < runEnd; i++) {
+                    float sample = Oscillator.lookup(table, phase) * preFilterMult;
+                    phase += phaseIncrement;
+
+                    a1 += delta1;
+                    a2 += delta2;
+                    a3 += delta3;
+                    float v3 = sample - ic2;
+                    float v1 = a1 * ic1 + a2 * v3;
+                    float v2 = ic2 + a2 * ic1 + a3 * v3;
+                    ic1 = 2 * v1 - ic1;
+                    ic2 = 2 * v2 - ic2;
+
+                    // The envelope level is still accumulated in double precision
+                    gap = gap * multiplier + offset;
+                    float monoSample = v2 * (float) (base + gap) * outputMult;
+                    stereoOutputBuffer[i * 2] = monoSample * leftGain;
+                    stereoOutputBuffer[i * 2 + 1] = monoSample * rightGain;
+                }
+                if (!stepped) {
+                    this.ampEnvelope.endRun(gap);
+                }
+                position = runEnd;
+            }
+
+            a1 = this.filter.getA1F();
+            a2 = this.filter.getA2F();
+            a3 = this.filter.getA3F();
+        }
+
+        this.oscillator.setPhase(phase);
+        this.filter.setIntegrators(ic1, ic2);
+    }
+
+    // Filter Modulation
+
+    /**
+     * Sets the filter cutoff for a block from the first sample of the filter envelope, advancing
+     * the filter envelope over the whole block, as the modular path does with a control period of 0.
+     */
+    void updateBlockRateCutoff(int blockSize) {
+        double finalCutoff = filterCutoff + (this.filterEnvelope.advance(1) * filterModRange);
+        filter.setParameters(finalCutoff, this.filterResonance);
+        this.filterEnvelope.advance(blockSize - 1);
+    }
+
+    /**
+     * Advances the filter envelope over a control period and retargets the filter coefficients to
+     * the cutoff at its last sample, as processBlockModulated does at the start of each period.
+     */
+    void retargetFilterCutoff(int samples) {
+        double cutoff = filterCutoff + (this.filterEnvelope.advance(samples) * filterModRange);
+        this.filter.retarget(cutoff, this.filterResonance);
+    }
+
+    /**
+     * Derives the filter cutoff from the filter envelope: once per block from its first sample, or,
+     * with a control period set, as a per-sample cutoff written over the filter envelope buffer.
+     */
+    private void updateFilterCutoff(int blockSize) {
+        if (this.filterControlPeriod == 0) {
+            double finalCutoff = filterCutoff + (this.filterEnvelopeOutputBuffer[0] * filterModRange);
+            filter.setParameters(finalCutoff, this.filterResonance);
+            return;
+        }
+        double[] envelope = this.filterEnvelopeOutputBuffer;
+        double baseCutoff = filterCutoff;
+        double modRange = filterModRange;
+        for (int i = 0; i < blockSize; i++) {
+            envelope[i] = baseCutoff + (envelope[i] * modRange);
+        }
+    }
+
+    private void runFilter(int blockSize) {
+        if (this.filterOversampling > 1) {
+            runFilterOversampled(blockSize);
+            return;
+        }
+        if (this.filterControlPeriod == 0) {
+            filter.processBlock(this.oscillatorOutputBuffer, this.filterOutputBuffer, blockSize);
+        } else {
+            filter.processBlockModulated(this.oscillatorOutputBuffer, this.filterEnvelopeOutputBuffer,
+                    this.filterResonance, this.filterOutputBuffer, blockSize, this.filterControlPeriod);
+        }
+    }
+
+    /**
+     * Runs the filter at 2x or 4x the sample rate: the gain-staged oscillator signal is upsampled
+     * through one or two half-band stages, filtered, then decimated back through the same stages.
+     * The control period is scaled by the same factor, so the cutoff is updated at the same times.
+     */
+    private void runFilterOversampled(int blockSize) {
+        int factor = this.filterOversampling;
+        int length = blockSize * factor;
+        double[] signal = this.oversampledBuffer;
+        double[] scratch = this.oversampledScratchBuffer;
+        HalfBandResampler first = this.resamplers[0];
+        HalfBandResampler second = this.resamplers[1];
+
+        if (factor == 2) {
+            first.upsample(this.oscillatorOutputBuffer, signal, blockSize);
+        } else {
+            first.upsample(this.oscillatorOutputBuffer, scratch, blockSize);
+            second.upsample(scratch, signal, blockSize * 2);
+        }
+
+        if (this.filterControlPeriod == 0) {
+            filter.processBlock(signal, signal, length);
+        } else {
+            // Each period only reads the cutoff at its last sample, which is always the last of a
+            // group of factor samples
+            double[] cutoffs = this.filterEnvelopeOutputBuffer;
+            for (int i = 0; i < blockSize; i++) {
+                scratch[i * factor + factor - 1] = cutoffs[i];
+            }
+            filter.processBlockModulated(signal, scratch, this.filterResonance, signal, length,
+                    this.filterControlPeriod * factor);
+        }
+
+        if (factor == 2) {
+            first.downsample(signal, this.filterOutputBuffer, blockSize);
+        } else {
+            second.downsample(signal, scratch, blockSize * 2);
+            first.downsample(scratch, this.filterOutputBuffer, blockSize);
+        }
+    }
+
+    private void updateFilterCutoffFloat(int blockSize) {
+        if (this.filterControlPeriod == 0) {
+            double finalCutoff = filterCutoff + (this.filterEnvelopeOutputBufferF[0] * filterModRange);
+            filter.setParameters(finalCutoff, this.filterResonance);
+            return;
+        }
+        // Single-precision arithmetic keeps this loop vectorisable
+        float[] envelope = this.filterEnvelopeOutputBufferF;
+        float baseCutoff = (float) filterCutoff;
+        float modRange = (float) filterModRange;
+        for (int i = 0; i < blockSize; i++) {
+            envelope[i] = baseCutoff + (envelope[i] * modRange);
+        }
+    }
+
+    private void runFilterFloat(int blockSize) {
+        if (this.filterControlPeriod == 0) {
+            filter.processBlock(this.oscillatorOutputBufferF, this.filterOutputBufferF, blockSize);
+        } else {
+            filter.processBlockModulated(this.oscillatorOutputBufferF, this.filterEnvelopeOutputBufferF,
+                    this.filterResonance, this.filterOutputBufferF, blockSize, this.filterControlPeriod);
+        }
+    }
+
     /**
      * Processes a block of audio, applying the envelope to each sample.
      * @param nullBuffer not used. Here for interface consistency.
@@ -286,32 +795,28 @@ public class Voice implements AudioComponent{
      */
     @Override
     public void processBlock(double[] nullBuffer, double[] stereoOutputBuffer, int blockSize) {
+        if (this.fusedRendering && this.filterOversampling == 1) {
+            processBlockFused(stereoOutputBuffer, blockSize);
+            return;
+        }
+
         // Populate base audio component buffers
         oscillator.processBlock(null, this.oscillatorOutputBuffer, blockSize);
         filterEnvelope.processBlock(null, this.filterEnvelopeOutputBuffer, blockSize);
 
         // Apply Pre-Filter Gain Staging:
-        for (int i = 0; i < blockSize; i++) {
-            this.oscillatorOutputBuffer[i] *= this.preFilterMult;
-        }
+        SampleKernels.scale(this.oscillatorOutputBuffer, blockSize, this.preFilterMult);
 
         // Set Filter Parameters
-        double filterEnvValue = this.filterEnvelopeOutputBuffer[0];
-        double finalCutoff = filterCutoff + (filterEnvValue * filterModRange);
-        filter.setParameters(finalCutoff, this.filterResonance);
+        updateFilterCutoff(blockSize);
 
         // Apply Filter then Amp Env Processing
-        filter.processBlock(this.oscillatorOutputBuffer, this.filterOutputBuffer, blockSize);
+        runFilter(blockSize);
         ampEnvelope.processBlock(this.filterOutputBuffer, this.ampEnvelopeOutputBuffer, blockSize);
 
         // Conversion from Mono sample to Stereo, applies panning modulated by LFO
-        double monoSample = 0.0;
-
-        for (int i = 0; i < blockSize; i++){
-            monoSample = this.ampEnvelopeOutputBuffer[i] * this.velocityMult * this.postFilterMult;
-            stereoOutputBuffer[i * 2] = monoSample * leftGain;
-            stereoOutputBuffer[i * 2 + 1] = monoSample * rightGain;
-        }
+        SampleKernels.panToStereo(this.ampEnvelopeOutputBuffer, stereoOutputBuffer, blockSize,
+                this.velocityMult * this.postFilterMult, this.leftGain, this.rightGain);
     }
 
     /**
@@ -319,61 +824,110 @@ public class Voice implements AudioComponent{
      * @param lfoBuffer The LFO signal for modulation.
      * @param stereoOutputBuffer The buffer where the modulated audio will be written.
      * @param blockSize The number of samples to process.
-     * @param timings A map to store the execution time of each processing stage.
+     * @param timings The recorder to charge the execution time of each processing stage to.
      */
-    public void processBlockInstrumented(double[] lfoBuffer, double[] stereoOutputBuffer, int blockSize, Map<String, Long> timings) {
-        long startTime, endTime;
+    public void processBlockInstrumented(double[] lfoBuffer, double[] stereoOutputBuffer, int blockSize, StageTimings timings) {
+        long startTime = System.nanoTime();
 
         // Oscillator
-        startTime = System.nanoTime();
         oscillator.processBlock(null, this.oscillatorOutputBuffer, blockSize);
-        endTime = System.nanoTime();
-        timings.merge("Oscillator", endTime - startTime, Long::sum);
+        startTime = timings.lap(StageTimings.Stage.OSCILLATOR, startTime);
 
         // Filter Envelope
-        startTime = System.nanoTime();
         filterEnvelope.processBlock(null, this.filterEnvelopeOutputBuffer, blockSize);
-        endTime = System.nanoTime();
-        timings.merge("Filter Envelope", endTime - startTime, Long::sum);
+        startTime = timings.lap(StageTimings.Stage.FILTER_ENVELOPE, startTime);
 
         // Pre-Filter Gain
-        startTime = System.nanoTime();
-        for (int i = 0; i < blockSize; i++) {
-            this.oscillatorOutputBuffer[i] *= this.preFilterMult;
-        }
-        endTime = System.nanoTime();
-        timings.merge("Pre-Filter Gain", endTime - startTime, Long::sum);
+        SampleKernels.scale(this.oscillatorOutputBuffer, blockSize, this.preFilterMult);
+        startTime = timings.lap(StageTimings.Stage.PRE_FILTER_GAIN, startTime);
 
         // Filter Parameter Calculation
-        startTime = System.nanoTime();
-        double filterEnvValue = this.filterEnvelopeOutputBuffer[0];
-        double finalCutoff = filterCutoff + (filterEnvValue * filterModRange);
-        filter.setParameters(finalCutoff, this.filterResonance);
-        endTime = System.nanoTime();
-        timings.merge("Filter Params", endTime - startTime, Long::sum);
+        updateFilterCutoff(blockSize);
+        startTime = timings.lap(StageTimings.Stage.FILTER_PARAMS, startTime);
 
         // Filtering
-        startTime = System.nanoTime();
-        filter.processBlock(this.oscillatorOutputBuffer, this.filterOutputBuffer, blockSize);
-        endTime = System.nanoTime();
-        timings.merge("Filter", endTime - startTime, Long::sum);
+        runFilter(blockSize);
+        startTime = timings.lap(StageTimings.Stage.FILTER, startTime);
 
         // Amplitude Envelope Processing
-        startTime = System.nanoTime();
         ampEnvelope.processBlock(this.filterOutputBuffer, this.ampEnvelopeOutputBuffer, blockSize);
-        endTime = System.nanoTime();
-        timings.merge("Amp Envelope", endTime - startTime, Long::sum);
+        startTime = timings.lap(StageTimings.Stage.AMP_ENVELOPE, startTime);
 
         // Stereo Panning & Output
-        startTime = System.nanoTime();
-        double monoSample = 0.0;
+        SampleKernels.panToStereo(this.ampEnvelopeOutputBuffer, stereoOutputBuffer, blockSize,
+                this.velocityMult * this.postFilterMult, this.leftGain, this.rightGain);
+        timings.lap(StageTimings.Stage.PANNING, startTime);
+    }
 
-        for (int i = 0; i < blockSize; i++){
-            monoSample = this.ampEnvelopeOutputBuffer[i] * this.velocityMult * this.postFilterMult;
-            stereoOutputBuffer[i * 2] = monoSample * leftGain;
-            stereoOutputBuffer[i * 2 + 1] = monoSample * rightGain;
+    /**
+     * Processes a block of audio in single precision. Only valid for a voice built with Precision.FLOAT.
+     * @param nullBuffer not used. Here for interface consistency.
+     * @param stereoOutputBuffer The buffer where the modulated audio will be written.
+     * @param blockSize The number of samples to process.
+     */
+    @Override
+    public void processBlock(float[] nullBuffer, float[] stereoOutputBuffer, int blockSize) {
+        if (this.fusedRendering) {
+            processBlockFused(stereoOutputBuffer, blockSize);
+            return;
         }
-        endTime = System.nanoTime();
-        timings.merge("Panning", endTime - startTime, Long::sum);
+
+        // Populate base audio component buffers
+        oscillator.processBlock(null, this.oscillatorOutputBufferF, blockSize);
+        filterEnvelope.processBlock(null, this.filterEnvelopeOutputBufferF, blockSize);
+
+        // Apply Pre-Filter Gain Staging:
+        SampleKernels.scale(this.oscillatorOutputBufferF, blockSize, (float) this.preFilterMult);
+
+        // Set Filter Parameters
+        updateFilterCutoffFloat(blockSize);
+
+        // Apply Filter then Amp Env Processing
+        runFilterFloat(blockSize);
+        ampEnvelope.processBlock(this.filterOutputBufferF, this.ampEnvelopeOutputBufferF, blockSize);
+
+        // Conversion from Mono sample to Stereo, applies panning modulated by LFO
+        SampleKernels.panToStereo(this.ampEnvelopeOutputBufferF, stereoOutputBuffer, blockSize,
+                (float) (this.velocityMult * this.postFilterMult), (float) this.leftGain, (float) this.rightGain);
+    }
+
+    /**
+     * Processes a block of audio in single precision and records performance metrics.
+     * Only valid for a voice built with Precision.FLOAT.
+     * @param stereoOutputBuffer The buffer where the modulated audio will be written.
+     * @param blockSize The number of samples to process.
+     * @param timings The recorder to charge the execution time of each processing stage to.
+     */
+    public void processBlockInstrumented(float[] stereoOutputBuffer, int blockSize, StageTimings timings) {
+        long startTime = System.nanoTime();
+
+        // Oscillator
+        oscillator.processBlock(null, this.oscillatorOutputBufferF, blockSize);
+        startTime = timings.lap(StageTimings.Stage.OSCILLATOR, startTime);
+
+        // Filter Envelope
+        filterEnvelope.processBlock(null, this.filterEnvelopeOutputBufferF, blockSize);
+        startTime = timings.lap(StageTimings.Stage.FILTER_ENVELOPE, startTime);
+
+        // Pre-Filter Gain
+        SampleKernels.scale(this.oscillatorOutputBufferF, blockSize, (float) this.preFilterMult);
+        startTime = timings.lap(StageTimings.Stage.PRE_FILTER_GAIN, startTime);
+
+        // Filter Parameter Calculation
+        updateFilterCutoffFloat(blockSize);
+        startTime = timings.lap(StageTimings.Stage.FILTER_PARAMS, startTime);
+
+        // Filtering
+        runFilterFloat(blockSize);
+        startTime = timings.lap(StageTimings.Stage.FILTER, startTime);
+
+        // Amplitude Envelope Processing
+        ampEnvelope.processBlock(this.filterOutputBufferF, this.ampEnvelopeOutputBufferF, blockSize);
+        startTime = timings.lap(StageTimings.Stage.AMP_ENVELOPE, startTime);
+
+        // Stereo Panning & Output
+        SampleKernels.panToStereo(this.ampEnvelopeOutputBufferF, stereoOutputBuffer, blockSize,
+                (float) (this.velocityMult * this.postFilterMult), (float) this.leftGain, (float) this.rightGain);
+        timings.lap(StageTimings.Stage.PANNING, startTime);
     }
 }
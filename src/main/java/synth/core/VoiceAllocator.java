@@ -0,0 +1,367 @@
+package synth.core;
+
+/**
+ * Constant-time voice allocation for a bank of voice slots, identified by index.
+ * Idle slots are kept on a free stack, and allocated slots on an intrusive doubly linked
+ * list ordered by age, so finding a free voice, stealing the oldest and freeing a voice are
+ * all O(1) regardless of polyphony. Allocated slots are also kept in a dense, compacted array
+ * (swap-remove on free) so the render loop touches only the voices that are sounding.
+ *
+ * For steal policies other than "oldest", each allocated slot also carries a steal priority and
+ * the slots are kept in an indexed binary min-heap on (priority, age). Stealing takes the root,
+ * and a priority change only sifts the one slot, so every operation stays O(log n).
+ * All storage is preallocated; must only be used from the audio thread.
+ */
+public class VoiceAllocator {
+
+    public static final int NONE = -1;
+
+    // Free Slots
+    private final int[] freeStack;
+    private int freeCount;
+
+    // Allocated Slots, linked from oldest to newest
+    private final int[] older;
+    private final int[] newer;
+    private final boolean[] allocated;
+    private int oldest = NONE;
+    private int newest = NONE;
+    private int allocatedCount = 0;
+
+    // Dense list of allocated slots in no particular order, compacted on free
+    private final int[] allocatedSlots;
+    private final int[] allocatedPositions;
+
+    // Steal Priorities: lower priority is stolen first, ties go to the lower sequence (older)
+    private final long[] priorities;
+    private final long[] sequences;
+    private long nextSequence = 0;
+
+    // Indexed min-heap of allocated slots, only maintained while prioritised
+    private final int[] heap;
+    private final int[] heapPositions;
+    private int heapSize = 0;
+    private boolean prioritised = false;
+
+    /**
+     * Constructs a VoiceAllocator with every slot free.
+     * @param capacity The number of voice slots. Must be positive.
+     */
+    public VoiceAllocator(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.freeStack = new int[capacity];
+        this.older = new int[capacity];
+        this.newer = new int[capacity];
+        this.allocated = new boolean[capacity];
+        this.allocatedSlots = new int[capacity];
+        this.allocatedPositions = new int[capacity];
+        this.priorities = new long[capacity];
+        this.sequences = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        clear();
+    }
+
+    public int capacity() {
+        return this.allocated.length;
+    }
+
+    public int allocatedCount() {
+        return this.allocatedCount;
+    }
+
+    /**
+     * Gets the dense list of allocated slots. The first allocatedCount() entries are valid.
+     * The array is owned by the allocator and must not be modified; freeing a slot moves the
+     * last entry into the freed position, so loops that free while iterating should run backwards.
+     * @return The allocated slots.
+     */
+    public int[] allocatedSlots() {
+        return this.allocatedSlots;
+    }
+
+    public boolean isAllocated(int index) {
+        return this.allocated[index];
+    }
+
+    public boolean isPrioritised() {
+        return this.prioritised;
+    }
+
+    /**
+     * Gets the longest-held allocated slot, the start of an oldest-to-newest walk.
+     * @return The oldest slot, or NONE if nothing is allocated.
+     */
+    public int oldest() {
+        return this.oldest;
+    }
+
+    /**
+     * Gets the next slot in an oldest-to-newest walk.
+     * @param index An allocated slot.
+     * @return The slot allocated after it, or NONE if it is the newest.
+     */
+    public int newer(int index) {
+        return this.newer[index];
+    }
+
+    /**
+     * Chooses whether stealing takes the oldest slot or the lowest steal priority.
+     * Switching priorities on rebuilds the heap from the priorities already written, in O(n).
+     * @param prioritised true to steal by priority, false to steal the oldest slot.
+     */
+    public void setPrioritised(boolean prioritised) {
+        this.prioritised = prioritised;
+        this.heapSize = 0;
+        if (prioritised) {
+            for (int index = this.oldest; index != NONE; index = this.newer[index]) {
+                this.heapPositions[index] = this.heapSize;
+                this.heap[this.heapSize++] = index;
+            }
+            reorder();
+        }
+    }
+
+    /**
+     * Allocates a slot, taking a free one if available and otherwise stealing.
+     * The returned slot becomes the newest.
+     * @param stealPriority The priority of the new note. Ignored unless prioritised.
+     * @return The allocated slot.
+     */
+    public int allocate(long stealPriority) {
+        int index;
+        if (this.freeCount > 0) {
+            index = this.freeStack[--this.freeCount];
+            markAllocated(index);
+        } else {
+            index = this.prioritised ? this.heap[0] : this.oldest;
+            unlink(index);
+            if (this.prioritised) {
+                heapRemove(index);
+            }
+        }
+        linkNewest(index);
+        this.sequences[index] = this.nextSequence++;
+        this.priorities[index] = stealPriority;
+        if (this.prioritised) {
+            heapInsert(index);
+        }
+        return index;
+    }
+
+    /**
+     * Re-allocates a slot that is already allocated, as if it had just been taken: it becomes the newest.
+     * Used to retrigger a voice in place.
+     * @param index An allocated slot.
+     * @param stealPriority The priority of the new note. Ignored unless prioritised.
+     */
+    public void reallocate(int index, long stealPriority) {
+        unlink(index);
+        linkNewest(index);
+        this.sequences[index] = this.nextSequence++;
+        setStealPriority(index, stealPriority);
+    }
+
+    /**
+     * Changes the steal priority of an allocated slot, restoring the heap order at once.
+     * @param index An allocated slot.
+     * @param stealPriority The new priority.
+     */
+    public void setStealPriority(int index, long stealPriority) {
+        this.priorities[index] = stealPriority;
+        if (this.prioritised) {
+            int position = this.heapPositions[index];
+            siftUp(position);
+            siftDown(this.heapPositions[index]);
+        }
+    }
+
+    /**
+     * Changes the steal priority of an allocated slot without restoring the heap order.
+     * For refreshing many priorities at once; call reorder() once the batch is written.
+     * @param index An allocated slot.
+     * @param stealPriority The new priority.
+     */
+    public void writeStealPriority(int index, long stealPriority) {
+        this.priorities[index] = stealPriority;
+    }
+
+    /**
+     * Restores the heap order after a batch of writeStealPriority calls, in O(n).
+     */
+    public void reorder() {
+        for (int position = (this.heapSize >>> 1) - 1; position >= 0; position--) {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * Returns an allocated slot to the free stack. Freeing a slot that is already free does nothing.
+     * @param index The slot to free.
+     */
+    public void free(int index) {
+        if (!this.allocated[index]) {
+            return;
+        }
+        unlink(index);
+        if (this.prioritised) {
+            heapRemove(index);
+        }
+        this.allocated[index] = false;
+        int position = this.allocatedPositions[index];
+        int last = this.allocatedSlots[--this.allocatedCount];
+        this.allocatedSlots[position] = last;
+        this.allocatedPositions[last] = position;
+        this.freeStack[this.freeCount++] = index;
+    }
+
+    /**
+     * Frees every slot. Slots are stacked so the lowest index is handed out first.
+     */
+    public void clear() {
+        int capacity = capacity();
+        for (int i = 0; i < capacity; i++) {
+            this.allocated[i] = false;
+            this.freeStack[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+        this.oldest = NONE;
+        this.newest = NONE;
+        this.allocatedCount = 0;
+        this.heapSize = 0;
+    }
+
+    /**
+     * Takes over the age order, priorities and steal mode of another allocator, used when the
+     * voice bank is resized. Slots that no longer fit in this allocator are dropped; every other slot is freed.
+     * @param previous The allocator being replaced.
+     */
+    public void adopt(VoiceAllocator previous) {
+        int capacity = capacity();
+        for (int i = 0; i < capacity; i++) {
+            this.allocated[i] = false;
+        }
+        this.oldest = NONE;
+        this.newest = NONE;
+        this.allocatedCount = 0;
+        this.nextSequence = previous.nextSequence;
+
+        for (int index = previous.oldest; index != NONE; index = previous.newer[index]) {
+            if (index < capacity) {
+                markAllocated(index);
+                this.sequences[index] = previous.sequences[index];
+                this.priorities[index] = previous.priorities[index];
+                linkNewest(index);
+            }
+        }
+
+        this.freeCount = 0;
+        for (int i = capacity - 1; i >= 0; i--) {
+            if (!this.allocated[i]) {
+                this.freeStack[this.freeCount++] = i;
+            }
+        }
+        setPrioritised(previous.prioritised);
+    }
+
+    private void markAllocated(int index) {
+        this.allocated[index] = true;
+        this.allocatedPositions[index] = this.allocatedCount;
+        this.allocatedSlots[this.allocatedCount++] = index;
+    }
+
+    // --- Age List ---
+
+    private void linkNewest(int index) {
+        this.older[index] = this.newest;
+        this.newer[index] = NONE;
+        if (this.newest != NONE) {
+            this.newer[this.newest] = index;
+        } else {
+            this.oldest = index;
+        }
+        this.newest = index;
+    }
+
+    private void unlink(int index) {
+        int before = this.older[index];
+        int after = this.newer[index];
+        if (before != NONE) {
+            this.newer[before] = after;
+        } else {
+            this.oldest = after;
+        }
+        if (after != NONE) {
+            this.older[after] = before;
+        } else {
+            this.newest = before;
+        }
+    }
+
+    // --- Priority Heap ---
+
+    private boolean stealsBefore(int a, int b) {
+        long priorityA = this.priorities[a];
+        long priorityB = this.priorities[b];
+        return priorityA < priorityB || (priorityA == priorityB && this.sequences[a] < this.sequences[b]);
+    }
+
+    private void heapInsert(int index) {
+        int position = this.heapSize++;
+        this.heap[position] = index;
+        this.heapPositions[index] = position;
+        siftUp(position);
+    }
+
+    private void heapRemove(int index) {
+        int position = this.heapPositions[index];
+        int last = this.heap[--this.heapSize];
+        if (position == this.heapSize) {
+            return;
+        }
+        this.heap[position] = last;
+        this.heapPositions[last] = position;
+        siftUp(position);
+        siftDown(this.heapPositions[last]);
+    }
+
+    private void siftUp(int position) {
+        int index = this.heap[position];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = this.heap[parentPosition];
+            if (!stealsBefore(index, parent)) {
+                break;
+            }
+            this.heap[position] = parent;
+            this.heapPositions[parent] = position;
+            position = parentPosition;
+        }
+        this.heap[position] = index;
+        this.heapPositions[index] = position;
+    }
+
+    private void siftDown(int position) {
+        int index = this.heap[position];
+        int half = this.heapSize >>> 1;
+        while (position < half) {
+            int childPosition = (position << 1) + 1;
+            int child = this.heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < this.heapSize && stealsBefore(this.heap[rightPosition], child)) {
+                childPosition = rightPosition;
+                child = this.heap[childPosition];
+            }
+            if (!stealsBefore(child, index)) {
+                break;
+            }
+            this.heap[position] = child;
+            this.heapPositions[child] = position;
+            position = childPosition;
+        }
+        this.heap[position] = index;
+        this.heapPositions[index] = position;
+    }
+}
@@ -9,11 +9,17 @@ import synth.core.Synthesiser;
 /**
  * A MIDI receiver that processes incoming MIDI messages and controls a synthesiser.
  * It handles Note On and Note Off events to trigger and release voices.
+ * Every event is timestamped so the synthesiser can start it on the exact sample it occurred.
  */
 public class MidiInputHandler implements Receiver{
     private final Synthesiser synth;
     private final Runnable onControlChange;
 
+    // Offset from the device's microsecond clock to System.nanoTime(), tracked as a leaky minimum
+    // so it follows the least-delayed message while still absorbing slow clock drift.
+    private static final long CLOCK_OFFSET_LEAK_NANOS = 1_000;
+    private long deviceClockOffsetNanos = Long.MAX_VALUE;
+
     /**
      * Constructs a MidiInputHandler.
      * @param synth The synthesiser to be controlled. Must not be null.
@@ -26,6 +32,7 @@ public class MidiInputHandler implements Receiver{
      * Constructs a MidiInputHandler with a control change callback.
      * @param synth The synthesiser to be controlled. Must not be null.
      * @param onControlChange Optional callback invoked after a CC message is processed.
+     *                        It runs on the MIDI thread.
      */
     public MidiInputHandler(Synthesiser synth, Runnable onControlChange) {
         if (synth == null) {
@@ -35,14 +42,34 @@ public class MidiInputHandler implements Receiver{
         this.onControlChange = onControlChange;
     }
 
+    /**
+     * Converts a MIDI timestamp into the System.nanoTime() clock used by the synthesiser.
+     * @param timeStamp The message timestamp in microseconds, or -1 if the device does not supply one.
+     * @return The estimated System.nanoTime() at which the message occurred.
+     */
+    private long toNanoTime(long timeStamp) {
+        long now = System.nanoTime();
+        if (timeStamp <= 0) {
+            return now;
+        }
+        long deviceNanos = timeStamp * 1000L;
+        long observedOffset = now - deviceNanos;
+        long leakedOffset = this.deviceClockOffsetNanos == Long.MAX_VALUE
+                ? observedOffset
+                : this.deviceClockOffsetNanos + CLOCK_OFFSET_LEAK_NANOS;
+        this.deviceClockOffsetNanos = Math.min(leakedOffset, observedOffset);
+        return deviceNanos + this.deviceClockOffsetNanos;
+    }
+
     /**
      * Processes an incoming MIDI message, sending the control signals to the Synthesiser.
      * @param message The MIDI message to process.
-     * @param timeStamp The timestamp of the message.
+     * @param timeStamp The timestamp of the message in microseconds, or -1 if unknown.
      */
     @Override
     public void send(MidiMessage message, long timeStamp){
         if(message instanceof ShortMessage sm){
+            long eventTimeNanos = toNanoTime(timeStamp);
 
             byte pitch = (byte) sm.getData1();  // Grabs the pitch byte from the midi message
             double velocity = sm.getData2() /127.00; // Grabs the velocity from the midi message and converts it to a scalar
@@ -50,118 +77,93 @@ public class MidiInputHandler implements Receiver{
             // Get the command data from the short message and route it appropriately
             if (sm.getCommand() == ShortMessage.NOTE_ON && velocity > 0) {
                 // NOTE_ON
-                synth.noteOn(pitch, velocity);
+                synth.noteOn(sm.getChannel(), pitch, velocity, eventTimeNanos);
             } else if (sm.getCommand() == ShortMessage.NOTE_OFF || (sm.getCommand() == ShortMessage.NOTE_ON && velocity == 0)) {
                 // NOTE_OFF
-                synth.noteOff(pitch);
+                synth.noteOff(sm.getChannel(), pitch, eventTimeNanos);
             } else if (sm.getCommand() == ShortMessage.CONTROL_CHANGE){
-                // CONTROL CHANGE
-                int controller = sm.getData1();
-                int value = sm.getData2();
-
-                double scaledValue = value / 127.0;
-
-                // Parameter control switch:
-                boolean handled = true;
-                switch (controller) {
-                    // --- OSCILLATOR CONTROLS ---
-                    case 32: // Modulation Wheel, LFO Frequency
-                        synth.setLFOFrequency(0.1 + (scaledValue * 9.9));
-                        break;
-                    case 13: // Oscillator Waveform
-                        if (value <= 31) {
-                            synth.setOscillatorWaveform(Synthesiser.Waveform.SINE);
-                        } else if (value <= 63) {
-                            synth.setOscillatorWaveform(Synthesiser.Waveform.SAW);
-                        } else if (value <= 95){
-                            synth.setOscillatorWaveform(Synthesiser.Waveform.TRIANGLE);
-                        } else{
-                            synth.setOscillatorWaveform(Synthesiser.Waveform.SQUARE);
-                        }
-                        break;
-
-                    case 17: // LFO Waveform
-                        if (value <= 31) {
-                            synth.setLFOWaveform(Synthesiser.Waveform.SINE);
-                        } else if (value <= 63) {
-                            synth.setLFOWaveform(Synthesiser.Waveform.SAW);
-                        } else if (value <= 95){
-                            synth.setLFOWaveform(Synthesiser.Waveform.TRIANGLE);
-                        } else{
-                            synth.setLFOWaveform(Synthesiser.Waveform.SQUARE);
-                        }
-                        break;
-
-                    // --- FILTER CONTROLS ---
-                    case 10: // Freq Cutoff
-                        // Logarithmic mapping
-                        double minFreq = 20.0;
-                        double maxFreq = 20000.0;
-                        double newCutoff = minFreq * Math.pow(maxFreq / minFreq, scaledValue);
-                        synth.setFilterCutoff(newCutoff);
-                        break;
-                    case 11: // Resonance
-                        synth.setFilterResonance(1.0 + (scaledValue * 14.0));
-                        break;
-                    case 12: // Filter Mod Range, from 0 to 10KHz
-                        synth.setFilterModRange(scaledValue * 10000.0);
-                        break;
-
-                    // --- FILTER ENVELOPE ---
-                    case 1: // Filter Attack
-                        synth.setFilterAttackTime(scaledValue * 10.0);
-                        break;
-                    case 2: // Filter Decay
-                        synth.setFilterDecayTime(scaledValue * 10.0);
-                        break;
-                    case 3: // Filter Sustain
-                        synth.setFilterSustainLevel(scaledValue);
-                        break;
-                    case 4: // Filter Release
-                        synth.setFilterReleaseTime(scaledValue * 10.0);
-                        break;
-
-                    // --- AMPLITUDE ENVELOPE ---
-                    case 5: // Attack Time
-                        synth.setAmpAttackTime(scaledValue * 10.0);
-                        break;
-                    case 6: // Release Time
-                        synth.setAmpReleaseTime(scaledValue * 10.0);
-                        break;
-                    case 7: // Amp Sustain
-                        synth.setAmpSustainLevel(scaledValue);
-                        break;
-                    case 8: // Amp Decay
-                        synth.setAmpDecayTime(scaledValue * 10.0);
-                        break;
-
-                    // --- GAIN & PANNING ---
-                    case 9:  // Maser Volume
-                        synth.setMasterVolume(scaledValue);
-                        break;
-                    case 14: // Pre-Filter Gain)
-                        // Ranges 24dB to +24dB
-                        synth.setPreFilterGainDB((scaledValue * 48.0) - 24.0);
-                        break;
-                    case 15: // Post-Filter Gain)
-                        // Ranges 24dB to +24dB
-                        synth.setPostFilterGainDB((scaledValue * 48.0) - 24.0);
-                        break;
-                    case 16: // Pan Depth
-                        synth.setPanDepth(scaledValue);
-                        break;
-                    default:
-                        handled = false;
-                        break;
+                // CONTROL CHANGE, mapped here and applied to the voices by the audio thread at the
+                // scheduled sample. Controllers with no mapping are ignored without queueing anything.
+                Runnable change = controlChange(sm.getData1(), sm.getData2());
+                if (change != null) {
+                    synth.scheduleChange(change, eventTimeNanos);
+                    notifyControlChange();
                 }
+            }
+        }
+    }
 
-                if (handled && onControlChange != null) {
-                    try {
-                        onControlChange.run();
-                    } catch (Exception e) {
-                        System.err.println("Error in MIDI CC callback: " + e.getMessage());
-                    }
-                }
+    /**
+     * Maps a MIDI control change onto a synthesiser parameter.
+     * @param controller The MIDI controller number.
+     * @param value The controller value (0-127).
+     * @return The change to make through the synthesiser's setters, or null if the controller is not mapped.
+     */
+    private Runnable controlChange(int controller, int value) {
+        double scaledValue = value / 127.0;
+
+        // Parameter control switch:
+        return switch (controller) {
+            // --- OSCILLATOR CONTROLS ---
+            case 32 -> () -> synth.setLFOFrequency(0.1 + (scaledValue * 9.9)); // Modulation Wheel, LFO Frequency
+            case 13 -> () -> synth.setOscillatorWaveform(waveformFor(value)); // Oscillator Waveform
+            case 17 -> () -> synth.setLFOWaveform(waveformFor(value)); // LFO Waveform
+
+            // --- FILTER CONTROLS ---
+            case 10 -> { // Freq Cutoff
+                // Logarithmic mapping
+                double minFreq = 20.0;
+                double maxFreq = 20000.0;
+                double newCutoff = minFreq * Math.pow(maxFreq / minFreq, scaledValue);
+                yield () -> synth.setFilterCutoff(newCutoff);
+            }
+            case 11 -> () -> synth.setFilterResonance(1.0 + (scaledValue * 14.0)); // Resonance
+            case 12 -> () -> synth.setFilterModRange(scaledValue * 10000.0); // Filter Mod Range, from 0 to 10KHz
+
+            // --- FILTER ENVELOPE ---
+            case 1 -> () -> synth.setFilterAttackTime(scaledValue * 10.0); // Filter Attack
+            case 2 -> () -> synth.setFilterDecayTime(scaledValue * 10.0); // Filter Decay
+            case 3 -> () -> synth.setFilterSustainLevel(scaledValue); // Filter Sustain
+            case 4 -> () -> synth.setFilterReleaseTime(scaledValue * 10.0); // Filter Release
+
+            // --- AMPLITUDE ENVELOPE ---
+            case 5 -> () -> synth.setAmpAttackTime(scaledValue * 10.0); // Attack Time
+            case 6 -> () -> synth.setAmpReleaseTime(scaledValue * 10.0); // Release Time
+            case 7 -> () -> synth.setAmpSustainLevel(scaledValue); // Amp Sustain
+            case 8 -> () -> synth.setAmpDecayTime(scaledValue * 10.0); // Amp Decay
+
+            // --- GAIN & PANNING ---
+            case 9 -> () -> synth.setMasterVolume(scaledValue); // Maser Volume
+            case 14 -> () -> synth.setPreFilterGainDB((scaledValue * 48.0) - 24.0); // Pre-Filter Gain, ranges -24dB to +24dB
+            case 15 -> () -> synth.setPostFilterGainDB((scaledValue * 48.0) - 24.0); // Post-Filter Gain, ranges -24dB to +24dB
+            case 16 -> () -> synth.setPanDepth(scaledValue); // Pan Depth
+            default -> null;
+        };
+    }
+
+    /**
+     * Maps a controller value onto a waveform, a quarter of the range each.
+     * @param value The controller value (0-127).
+     * @return The waveform.
+     */
+    private static Synthesiser.Waveform waveformFor(int value) {
+        if (value <= 31) {
+            return Synthesiser.Waveform.SINE;
+        } else if (value <= 63) {
+            return Synthesiser.Waveform.SAW;
+        } else if (value <= 95) {
+            return Synthesiser.Waveform.TRIANGLE;
+        } else {
+            return Synthesiser.Waveform.SQUARE;
+        }
+    }
+
+    private void notifyControlChange() {
+        if (onControlChange != null) {
+            try {
+                onControlChange.run();
+            } catch (Exception e) {
+                System.err.println("Error in MIDI CC callback: " + e.getMessage());
             }
         }
     }
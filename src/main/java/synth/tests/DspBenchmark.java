@@ -0,0 +1,487 @@
+package synth.tests;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import synth.components.Envelope;
+import synth.components.oscillators.Oscillator;
+import synth.components.oscillators.SawOscillator;
+import synth.components.oscillators.SineOscillator;
+import synth.components.oscillators.SquareOscillator;
+import synth.components.oscillators.TriangleOscillator;
+import synth.core.Synthesiser;
+import synth.utils.AudioConstants;
+import synth.utils.LookupTables;
+import synth.utils.SampleKernels;
+
+/**
+ * Benchmarks for alternative DSP implementations, comparing each against the
+ * reference path for both speed and output difference.
+ */
+public class DspBenchmark {
+
+    private static final int BLOCKS = 4000;
+    private static final int WARM_UP_BLOCKS = 2000;
+    private static final int KERNEL_SAMPLES = 1 << 23;
+
+    public static void main(String[] args) {
+        runPrecisionComparison();
+        runFilterControlPeriodComparison();
+        runEnvelopeComparison();
+        runKernelComparison();
+        runFusedComparison();
+        runLaneComparison();
+        runWavetableComparison();
+        runOversamplingComparison();
+    }
+
+    private static void runPrecisionComparison() {
+        int voiceCount = 64;
+
+        System.out.println("=== Double vs Float Engine ===");
+        System.out.println("Rendering " + voiceCount + " voices for " + BLOCKS + " blocks in each precision...");
+
+        Synthesiser doubleSynth = createSustainedSynth(voiceCount, Synthesiser.Precision.DOUBLE);
+        Synthesiser floatSynth = createSustainedSynth(voiceCount, Synthesiser.Precision.FLOAT);
+        double[] doubleBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        double[] floatBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+
+        // Render both in lockstep first, to warm up and to measure how far the float output strays
+        double maxDifference = 0.0;
+        for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+            doubleSynth.processBlock(doubleBlock);
+            floatSynth.processBlock(floatBlock);
+            for (int j = 0; j < doubleBlock.length; j++) {
+                maxDifference = Math.max(maxDifference, Math.abs(doubleBlock[j] - floatBlock[j]));
+            }
+        }
+
+        long doubleTime = timeBlocks(doubleSynth, doubleBlock);
+        long floatTime = timeBlocks(floatSynth, floatBlock);
+
+        System.out.println("\n--- Double vs Float Engine Results (average per block) ---");
+        System.out.printf("%-25s: %d µs%n", "Double", TimeUnit.NANOSECONDS.toMicros(doubleTime / BLOCKS));
+        System.out.printf("%-25s: %d µs%n", "Float", TimeUnit.NANOSECONDS.toMicros(floatTime / BLOCKS));
+        System.out.printf("%-25s: %.2fx%n", "Speed-up", (double) doubleTime / floatTime);
+        System.out.printf("%-25s: %.2e (%.1f dBFS)%n", "Max difference", maxDifference, 20 * Math.log10(maxDifference));
+        System.out.println("------------------------------------------");
+    }
+
+    private static void runFilterControlPeriodComparison() {
+        int voiceCount = 64;
+        int[] periods = {0, 64, 16, 4, 1};
+
+        System.out.println("\n=== Filter Control Period ===");
+        System.out.println("Rendering " + voiceCount + " voices for " + BLOCKS + " blocks at each control period (0 = once per block)...");
+
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        long[] times = new long[periods.length];
+        for (int p = 0; p < periods.length; p++) {
+            Synthesiser synth = createSustainedSynth(voiceCount, Synthesiser.Precision.DOUBLE);
+            synth.setFilter(500, 4, 8000);
+            synth.setFilterControlPeriod(periods[p]);
+            for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+                synth.processBlock(audioBlock);
+            }
+            times[p] = timeBlocks(synth, audioBlock);
+        }
+
+        System.out.println("\n--- Filter Control Period Results (average per block) ---");
+        for (int p = 0; p < periods.length; p++) {
+            System.out.printf("%-25s: %d µs (%.2fx block rate)%n", "Period " + periods[p],
+                    TimeUnit.NANOSECONDS.toMicros(times[p] / BLOCKS), (double) times[p] / times[0]);
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    private static void runEnvelopeComparison() {
+        int envelopeCount = 64;
+        int blockSize = AudioConstants.BLOCK_SIZE;
+
+        System.out.println("\n=== Per-Sample vs Segment Envelope ===");
+        System.out.println("Rendering " + envelopeCount + " envelopes for " + BLOCKS + " blocks, generating and applying...");
+
+        double[] input = new double[blockSize];
+        for (int i = 0; i < blockSize; i++) {
+            input[i] = Math.sin(i * 0.05);
+        }
+        double[] output = new double[blockSize];
+
+        Envelope.Curves exponential = new Envelope.Curves(Envelope.Curve.SOFT, Envelope.Curve.EXPONENTIAL, Envelope.Curve.EXPONENTIAL);
+        Envelope[] perSample = createEnvelopes(envelopeCount, true, Envelope.Curves.LINEAR);
+        Envelope[] segmented = createEnvelopes(envelopeCount, false, Envelope.Curves.LINEAR);
+        Envelope[] curved = createEnvelopes(envelopeCount, false, exponential);
+        timeEnvelopes(perSample, input, output, WARM_UP_BLOCKS);
+        timeEnvelopes(segmented, input, output, WARM_UP_BLOCKS);
+        timeEnvelopes(curved, input, output, WARM_UP_BLOCKS);
+        long perSampleTime = timeEnvelopes(perSample, input, output, BLOCKS);
+        long segmentedTime = timeEnvelopes(segmented, input, output, BLOCKS);
+        long curvedTime = timeEnvelopes(curved, input, output, BLOCKS);
+
+        System.out.println("\n--- Per-Sample vs Segment Envelope Results (average per block, all envelopes) ---");
+        System.out.printf("%-25s: %d µs%n", "Per-sample switch", TimeUnit.NANOSECONDS.toMicros(perSampleTime / BLOCKS));
+        System.out.printf("%-25s: %d µs%n", "Segments", TimeUnit.NANOSECONDS.toMicros(segmentedTime / BLOCKS));
+        System.out.printf("%-25s: %.2fx%n", "Speed-up", (double) perSampleTime / segmentedTime);
+        System.out.printf("%-25s: %d µs (%.2fx linear segments)%n", "Segments, curved",
+                TimeUnit.NANOSECONDS.toMicros(curvedTime / BLOCKS), (double) curvedTime / segmentedTime);
+        System.out.println("------------------------------------------");
+    }
+
+    private static void runKernelComparison() {
+        int[] blockSizes = {32, 64, 128, 256, 512, 1024};
+        String[] kernels = {"Gain", "Pan to stereo", "Mix", "Hard clip"};
+
+        System.out.println("\n=== Scalar vs SIMD Sample Kernels ===");
+        if (!SampleKernels.isVectorSupported()) {
+            System.out.println("Vector API not available (run with --add-modules jdk.incubator.vector), skipping.");
+            return;
+        }
+        System.out.println("Timing each kernel over " + KERNEL_SAMPLES + " samples at each block size...");
+
+        boolean wasVectorised = SampleKernels.isVectorised();
+        double[][] speedUps = new double[kernels.length][blockSizes.length];
+        for (int b = 0; b < blockSizes.length; b++) {
+            for (int k = 0; k < kernels.length; k++) {
+                SampleKernels.setVectorised(false);
+                timeKernel(k, blockSizes[b]);
+                long scalarTime = timeKernel(k, blockSizes[b]);
+                SampleKernels.setVectorised(true);
+                timeKernel(k, blockSizes[b]);
+                long vectorTime = timeKernel(k, blockSizes[b]);
+                speedUps[k][b] = (double) scalarTime / vectorTime;
+            }
+        }
+
+        // The whole engine, where the kernels are a fraction of each voice's work
+        int voiceCount = 64;
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        long[] engineTimes = new long[2];
+        for (int mode = 0; mode < 2; mode++) {
+            SampleKernels.setVectorised(mode == 1);
+            Synthesiser synth = createSustainedSynth(voiceCount, Synthesiser.Precision.DOUBLE);
+            for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+                synth.processBlock(audioBlock);
+            }
+            engineTimes[mode] = timeBlocks(synth, audioBlock);
+        }
+        SampleKernels.setVectorised(wasVectorised);
+
+        System.out.println("\n--- Scalar vs SIMD Results (SIMD speed-up by block size) ---");
+        System.out.printf("%-25s:", "Block size");
+        for (int blockSize : blockSizes) {
+            System.out.printf("%8d", blockSize);
+        }
+        System.out.println();
+        for (int k = 0; k < kernels.length; k++) {
+            System.out.printf("%-25s:", kernels[k]);
+            for (int b = 0; b < blockSizes.length; b++) {
+                System.out.printf("%7.2fx", speedUps[k][b]);
+            }
+            System.out.println();
+        }
+        System.out.printf("%-25s: %d µs scalar, %d µs SIMD (%.2fx)%n", "Engine, " + voiceCount + " voices",
+                TimeUnit.NANOSECONDS.toMicros(engineTimes[0] / BLOCKS), TimeUnit.NANOSECONDS.toMicros(engineTimes[1] / BLOCKS),
+                (double) engineTimes[0] / engineTimes[1]);
+        System.out.println("------------------------------------------");
+    }
+
+    /**
+     * Runs one kernel over KERNEL_SAMPLES mono samples in blocks of the given size, as the engine would.
+     */
+    private static long timeKernel(int kernel, int blockSize) {
+        double[] mono = new double[blockSize];
+        double[] stereo = new double[blockSize * 2];
+        double[] mix = new double[blockSize * 2];
+        for (int i = 0; i < blockSize; i++) {
+            mono[i] = Math.sin(i * 0.05);
+        }
+        SampleKernels.panToStereo(mono, stereo, blockSize, 1.0, 0.8, 0.6);
+
+        int blocks = KERNEL_SAMPLES / blockSize;
+        long startTime = System.nanoTime();
+        for (int b = 0; b < blocks; b++) {
+            switch (kernel) {
+                case 0 -> SampleKernels.scale(mono, blockSize, 0.999);
+                case 1 -> SampleKernels.panToStereo(mono, stereo, blockSize, 0.7, 0.8, 0.6);
+                case 2 -> SampleKernels.mixInto(mix, 0, stereo, blockSize * 2, 0.25);
+                default -> SampleKernels.hardClip(mix, blockSize * 2);
+            }
+        }
+        long time = System.nanoTime() - startTime;
+        // Keep the results live
+        if (mono[0] + mix[0] == 42.0) {
+            System.out.print("");
+        }
+        return time;
+    }
+
+    private static void runFusedComparison() {
+        int voiceCount = 64;
+        Synthesiser.Precision[] precisions = {Synthesiser.Precision.DOUBLE, Synthesiser.Precision.FLOAT};
+        int[] periods = {0, AudioConstants.FILTER_CONTROL_PERIOD};
+
+        System.out.println("\n=== Modular vs Fused Voice Rendering ===");
+        System.out.println("Rendering " + voiceCount + " voices for " + BLOCKS + " blocks with each renderer...");
+
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        System.out.println("\n--- Modular vs Fused Results (average per block) ---");
+        for (Synthesiser.Precision precision : precisions) {
+            for (int period : periods) {
+                long[] times = new long[2];
+                for (int mode = 0; mode < 2; mode++) {
+                    Synthesiser synth = createSustainedSynth(voiceCount, precision);
+                    synth.setFilter(500, 4, 8000);
+                    synth.setFilterControlPeriod(period);
+                    synth.setFusedRendering(mode == 1);
+                    for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+                        synth.processBlock(audioBlock);
+                    }
+                    times[mode] = timeBlocks(synth, audioBlock);
+                }
+                System.out.printf("%-25s: %d µs modular, %d µs fused (%.2fx)%n", precision + ", period " + period,
+                        TimeUnit.NANOSECONDS.toMicros(times[0] / BLOCKS), TimeUnit.NANOSECONDS.toMicros(times[1] / BLOCKS),
+                        (double) times[0] / times[1]);
+            }
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    private static void runLaneComparison() {
+        int[] voiceCounts = {16, 64, 256};
+        int[] periods = {0, AudioConstants.FILTER_CONTROL_PERIOD};
+
+        System.out.println("\n=== Per-Voice vs Lane (Structure-of-Arrays) Rendering ===");
+        System.out.println("Rendering for " + BLOCKS + " blocks with each renderer (double precision, fused voices)...");
+
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        System.out.println("\n--- Per-Voice vs Lane Results (average per block) ---");
+        for (int voiceCount : voiceCounts) {
+            for (int period : periods) {
+                long[] times = new long[2];
+                for (int mode = 0; mode < 2; mode++) {
+                    Synthesiser synth = createSustainedSynth(voiceCount, Synthesiser.Precision.DOUBLE);
+                    synth.setFilter(500, 4, 8000);
+                    synth.setFilterControlPeriod(period);
+                    synth.setLaneRendering(mode == 1);
+                    for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+                        synth.processBlock(audioBlock);
+                    }
+                    times[mode] = timeBlocks(synth, audioBlock);
+                }
+                System.out.printf("%-25s: %d µs per-voice, %d µs lanes (%.2fx)%n", voiceCount + " voices, period " + period,
+                        TimeUnit.NANOSECONDS.toMicros(times[0] / BLOCKS), TimeUnit.NANOSECONDS.toMicros(times[1] / BLOCKS),
+                        (double) times[0] / times[1]);
+            }
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    /**
+     * Compares truncated lookup in LOOKUP_TABLE_SIZE tables (the previous oscillators) with
+     * interpolated lookup in WAVETABLE_SIZE tables, for banks of oscillators spread over every
+     * waveform and a range of pitches. Both read one table per waveform and mipmap level in use.
+     * The working set is the total size of the distinct tables a bank reads; once it outgrows
+     * the cache, lookups in the large tables start to miss.
+     */
+    private static void runWavetableComparison() {
+        int[] voiceCounts = {16, 64, 256, 1024};
+        int blockSize = AudioConstants.BLOCK_SIZE;
+
+        // Full-size stand-ins for each small table, built on first use: the contents don't
+        // affect the timing
+        int largeSize = AudioConstants.LOOKUP_TABLE_SIZE;
+        int largeShift = Integer.SIZE - Integer.numberOfTrailingZeros(largeSize);
+        Map<double[], double[]> largeTables = new IdentityHashMap<>();
+
+        System.out.println("\n=== Truncated vs Interpolated Wavetable Lookup ===");
+        System.out.println("Truncated: " + largeSize + "-entry tables. Interpolated: " + LookupTables.WAVETABLE_SIZE
+                + "-entry band-limited mipmaps. Timing " + KERNEL_SAMPLES + " samples per bank...");
+
+        // Quality: the worst error of each against the exact sine, over random phases
+        Random random = new Random(22);
+        double truncatedError = 0.0;
+        double interpolatedError = 0.0;
+        for (int i = 0; i < 1 << 20; i++) {
+            int phase = random.nextInt();
+            double exact = Math.sin(2.0 * Math.PI * (phase & 0xFFFFFFFFL) / 4294967296.0);
+            double truncated = Math.sin(2.0 * Math.PI * (phase >>> largeShift) / largeSize);
+            truncatedError = Math.max(truncatedError, Math.abs(truncated - exact));
+            interpolatedError = Math.max(interpolatedError, Math.abs(Oscillator.lookup(LookupTables.sine(), phase) - exact));
+        }
+
+        System.out.println("\n--- Truncated vs Interpolated Results (average per block) ---");
+        System.out.printf("%-25s: %.1f dB truncated, %.1f dB interpolated%n", "Worst sine error",
+                20 * Math.log10(truncatedError), 20 * Math.log10(interpolatedError));
+        for (int voiceCount : voiceCounts) {
+            int[] phases = new int[voiceCount];
+            int[] increments = new int[voiceCount];
+            double[][] truncatedTables = new double[voiceCount][];
+            double[][] interpolatedTables = new double[voiceCount][];
+            Set<double[]> tableSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int v = 0; v < voiceCount; v++) {
+                Oscillator oscillator = switch (v % 4) {
+                    case 0 -> new SineOscillator(AudioConstants.SAMPLE_RATE);
+                    case 1 -> new SawOscillator(AudioConstants.SAMPLE_RATE);
+                    case 2 -> new TriangleOscillator(AudioConstants.SAMPLE_RATE);
+                    default -> new SquareOscillator(AudioConstants.SAMPLE_RATE);
+                };
+                oscillator.setFrequency(LookupTables.MIDI_TO_HZ[24 + (v * 7) % 96]);
+                phases[v] = random.nextInt();
+                increments[v] = oscillator.getPhaseIncrement();
+                interpolatedTables[v] = oscillator.getWaveTable();
+                truncatedTables[v] = largeTables.computeIfAbsent(interpolatedTables[v], table -> {
+                    double[] large = new double[largeSize];
+                    for (int i = 0; i < largeSize; i++) {
+                        large[i] = table[i / (largeSize / LookupTables.WAVETABLE_SIZE)];
+                    }
+                    return large;
+                });
+                tableSet.add(interpolatedTables[v]);
+            }
+
+            int blocks = Math.max(1, KERNEL_SAMPLES / (voiceCount * blockSize));
+            long[] times = new long[2];
+            for (int mode = 0; mode < 2; mode++) {
+                double[][] tables = mode == 0 ? truncatedTables : interpolatedTables;
+                int shift = mode == 0 ? largeShift : -1;
+                timeWavetables(tables, phases, increments, shift, blockSize, blocks);
+                times[mode] = timeWavetables(tables, phases, increments, shift, blockSize, blocks);
+            }
+            System.out.printf("%-25s: %d µs truncated (%d KB), %d µs interpolated (%d KB) (%.2fx)%n", voiceCount + " oscillators",
+                    TimeUnit.NANOSECONDS.toMicros(times[0] / blocks), tableSet.size() * largeSize * Double.BYTES / 1024,
+                    TimeUnit.NANOSECONDS.toMicros(times[1] / blocks),
+                    tableSet.size() * (LookupTables.WAVETABLE_SIZE + 1) * Double.BYTES / 1024,
+                    (double) times[0] / times[1]);
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    /**
+     * Renders a bank of oscillators block by block, as the voices would, summing them into one buffer.
+     * @param truncatedShift The phase shift for truncated lookup, or -1 to interpolate.
+     */
+    private static long timeWavetables(double[][] tables, int[] phases, int[] increments, int truncatedShift,
+                                       int blockSize, int blocks) {
+        double[] mix = new double[blockSize];
+        long startTime = System.nanoTime();
+        for (int b = 0; b < blocks; b++) {
+            for (int v = 0; v < tables.length; v++) {
+                phases[v] = truncatedShift < 0
+                        ? renderInterpolated(tables[v], phases[v], increments[v], mix, blockSize)
+                        : renderTruncated(tables[v], phases[v], increments[v], truncatedShift, mix, blockSize);
+            }
+        }
+        long time = System.nanoTime() - startTime;
+        // Keep the results live
+        if (mix[0] == 42.0) {
+            System.out.print("");
+        }
+        return time;
+    }
+
+    private static int renderInterpolated(double[] table, int phase, int increment, double[] mix, int blockSize) {
+        for (int i = 0; i < blockSize; i++) {
+            mix[i] += Oscillator.lookup(table, phase);
+            phase += increment;
+        }
+        return phase;
+    }
+
+    private static int renderTruncated(double[] table, int phase, int increment, int shift, double[] mix, int blockSize) {
+        for (int i = 0; i < blockSize; i++) {
+            mix[i] += table[phase >>> shift];
+            phase += increment;
+        }
+        return phase;
+    }
+
+    /**
+     * Times the filter at each oversampling factor, with a bright resonant patch. The plain filter
+     * is timed in both renderers, as an oversampled voice always uses the modular one.
+     */
+    private static void runOversamplingComparison() {
+        int voiceCount = 64;
+        int[] factors = {1, 1, 2, 4};
+
+        System.out.println("\n=== Filter Oversampling ===");
+        System.out.println("Rendering " + voiceCount + " voices for " + BLOCKS + " blocks at each factor...");
+
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        long[] times = new long[factors.length];
+        for (int f = 0; f < factors.length; f++) {
+            Synthesiser synth = createSustainedSynth(voiceCount, Synthesiser.Precision.DOUBLE);
+            synth.setFilter(12000, 12, 8000);
+            synth.setFilterOversampling(factors[f]);
+            synth.setFusedRendering(f == 0);
+            for (int i = 0; i < WARM_UP_BLOCKS; i++) {
+                synth.processBlock(audioBlock);
+            }
+            times[f] = timeBlocks(synth, audioBlock);
+        }
+
+        System.out.println("\n--- Filter Oversampling Results (average per block) ---");
+        for (int f = 0; f < factors.length; f++) {
+            String label = factors[f] == 1 ? (f == 0 ? "Plain, fused" : "Plain, modular") : factors[f] + "x oversampled";
+            System.out.printf("%-25s: %d µs (%.2fx plain fused)%n", label,
+                    TimeUnit.NANOSECONDS.toMicros(times[f] / BLOCKS), (double) times[f] / times[0]);
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    /**
+     * Creates envelopes with short attacks and decays, staggered so that every stage is represented.
+     */
+    private static Envelope[] createEnvelopes(int count, boolean perSample, Envelope.Curves curves) {
+        Envelope[] envelopes = new Envelope[count];
+        for (int i = 0; i < count; i++) {
+            envelopes[i] = perSample ? new PerSampleEnvelope(AudioConstants.SAMPLE_RATE) : new Envelope(AudioConstants.SAMPLE_RATE);
+            envelopes[i].setEnvelope(0.005, 0.1, 0.4, 0.3);
+            envelopes[i].setCurves(curves);
+        }
+        return envelopes;
+    }
+
+    /**
+     * Renders every envelope as a filter envelope (generate) and an amp envelope (apply) each block,
+     * retriggering and releasing them in turn so the stages keep cycling.
+     */
+    private static long timeEnvelopes(Envelope[] envelopes, double[] input, double[] output, int blocks) {
+        int blockSize = input.length;
+        long startTime = System.nanoTime();
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < envelopes.length; i++) {
+                int phase = (b + i * 7) % 200;
+                if (phase == 0) {
+                    envelopes[i].noteOn();
+                } else if (phase == 120) {
+                    envelopes[i].noteOff();
+                }
+                envelopes[i].processBlock(null, output, blockSize);
+                envelopes[i].processBlock(input, output, blockSize);
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static Synthesiser createSustainedSynth(int voiceCount, Synthesiser.Precision precision) {
+        Synthesiser synth = new Synthesiser(voiceCount, AudioConstants.SAMPLE_RATE, AudioConstants.BLOCK_SIZE, precision);
+        synth.setAmpSustainLevel(1.0);
+        // 64 pitches per MIDI channel, so large voice counts stay within the note range
+        for (int i = 0; i < voiceCount; i++) {
+            synth.noteOn(i / 64, (byte) (36 + i % 64), 1.0, 0);
+        }
+        return synth;
+    }
+
+    private static long timeBlocks(Synthesiser synth, double[] audioBlock) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < BLOCKS; i++) {
+            synth.processBlock(audioBlock);
+        }
+        return System.nanoTime() - startTime;
+    }
+}
@@ -0,0 +1,233 @@
+package synth.tests;
+
+import java.util.Random;
+
+import synth.components.Envelope;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks that the segment-based Envelope renders exactly the same samples as the original
+ * per-sample implementation (PerSampleEnvelope), bit for bit, in generate and apply mode and
+ * in both precisions. Envelope settings, block sizes and note on/off timings are randomised
+ * from a fixed seed, including zero-length stages and sustain levels of 0.0 and 1.0.
+ * Curved stages are checked against stepping the same envelope one sample at a time, and for
+ * ending after their stage time.
+ */
+public class EnvelopeSegmentTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int TRIALS = 2000;
+    private static final int MAX_BLOCK_SIZE = 512;
+
+    // Render modes, each checked against the reference envelope level
+    private static final String[] MODES = {"double generate", "double apply", "float generate", "float apply"};
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testMatchesPerSampleEnvelope();
+        testCurvedSegmentsMatchStepping();
+        testCurvedStagesTakeStageTime();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All envelope segment tests passed.");
+    }
+
+    private static void testMatchesPerSampleEnvelope() {
+        Random random = new Random(42);
+        double[] input = new double[MAX_BLOCK_SIZE];
+        float[] inputF = new float[MAX_BLOCK_SIZE];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextDouble() * 2.0 - 1.0;
+            inputF[i] = (float) input[i];
+        }
+        double[] level = new double[MAX_BLOCK_SIZE];
+        double[] output = new double[MAX_BLOCK_SIZE];
+        float[] outputF = new float[MAX_BLOCK_SIZE];
+        boolean[] failed = new boolean[MODES.length];
+
+        for (int trial = 0; trial < TRIALS; trial++) {
+            Envelope reference = new PerSampleEnvelope(SAMPLE_RATE);
+            Envelope[] segmented = new Envelope[MODES.length];
+            for (int m = 0; m < MODES.length; m++) {
+                segmented[m] = new Envelope(SAMPLE_RATE);
+            }
+            double attack = randomTime(random);
+            double decay = randomTime(random);
+            double sustain = switch (random.nextInt(4)) {
+                case 0 -> 0.0;
+                case 1 -> 1.0;
+                default -> random.nextDouble();
+            };
+            double release = randomTime(random);
+            reference.setEnvelope(attack, decay, sustain, release);
+            for (Envelope envelope : segmented) {
+                envelope.setEnvelope(attack, decay, sustain, release);
+            }
+
+            // A few note on/off events between blocks of random size
+            for (int event = 0; event < 6; event++) {
+                if (event % 2 == 0) {
+                    reference.noteOn();
+                    for (Envelope envelope : segmented) {
+                        envelope.noteOn();
+                    }
+                } else {
+                    reference.noteOff();
+                    for (Envelope envelope : segmented) {
+                        envelope.noteOff();
+                    }
+                }
+                int blocks = 1 + random.nextInt(40);
+                for (int b = 0; b < blocks; b++) {
+                    int blockSize = 1 + random.nextInt(MAX_BLOCK_SIZE);
+                    reference.processBlock(null, level, blockSize);
+                    for (int m = 0; m < MODES.length; m++) {
+                        if (failed[m]) {
+                            continue;
+                        }
+                        int mismatch = render(m, segmented[m], input, inputF, level, output, outputF, blockSize);
+                        if (mismatch >= 0) {
+                            check(false, MODES[m] + ": trial " + trial + " differs at sample " + mismatch
+                                    + " in " + reference.getStage());
+                            failed[m] = true;
+                        } else if (segmented[m].getStage() != reference.getStage()) {
+                            check(false, MODES[m] + ": trial " + trial + " ended in " + segmented[m].getStage()
+                                    + ", expected " + reference.getStage());
+                            failed[m] = true;
+                        }
+                    }
+                }
+            }
+        }
+        for (int m = 0; m < MODES.length; m++) {
+            if (!failed[m]) {
+                check(true, MODES[m] + ": " + TRIALS + " randomised envelopes bit-identical");
+            }
+        }
+    }
+
+    private static void testCurvedSegmentsMatchStepping() {
+        Random random = new Random(7);
+        Envelope.Curve[] shapes = Envelope.Curve.values();
+        double[] expected = new double[MAX_BLOCK_SIZE];
+        double[] actual = new double[MAX_BLOCK_SIZE];
+
+        for (int trial = 0; trial < TRIALS; trial++) {
+            Envelope stepped = new Envelope(SAMPLE_RATE);
+            Envelope segmented = new Envelope(SAMPLE_RATE);
+            Envelope.Curves curves = new Envelope.Curves(shapes[random.nextInt(shapes.length)],
+                    shapes[random.nextInt(shapes.length)], shapes[random.nextInt(shapes.length)]);
+            double attack = randomTime(random);
+            double decay = randomTime(random);
+            double sustain = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+            double release = randomTime(random);
+            for (Envelope envelope : new Envelope[] {stepped, segmented}) {
+                envelope.setEnvelope(attack, decay, sustain, release);
+                envelope.setCurves(curves);
+            }
+
+            for (int event = 0; event < 6; event++) {
+                if (event % 2 == 0) {
+                    stepped.noteOn();
+                    segmented.noteOn();
+                } else {
+                    stepped.noteOff();
+                    segmented.noteOff();
+                }
+                int blocks = 1 + random.nextInt(40);
+                for (int b = 0; b < blocks; b++) {
+                    int blockSize = 1 + random.nextInt(MAX_BLOCK_SIZE);
+                    for (int i = 0; i < blockSize; i++) {
+                        expected[i] = stepped.stepSample();
+                    }
+                    segmented.processBlock(null, actual, blockSize);
+                    for (int i = 0; i < blockSize; i++) {
+                        if (Double.doubleToRawLongBits(expected[i]) != Double.doubleToRawLongBits(actual[i])) {
+                            check(false, "curved: trial " + trial + " (" + curves + ") differs at sample " + i
+                                    + " in " + stepped.getStage());
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        check(true, "curved: " + TRIALS + " randomised curved envelopes match per-sample stepping");
+    }
+
+    private static void testCurvedStagesTakeStageTime() {
+        Envelope envelope = new Envelope(SAMPLE_RATE);
+        envelope.setEnvelope(0.1, 0.2, 0.25, 0.3);
+        envelope.setCurves(new Envelope.Curves(Envelope.Curve.SOFT, Envelope.Curve.EXPONENTIAL, Envelope.Curve.EXPONENTIAL));
+        envelope.noteOn();
+
+        double[] buffer = new double[1];
+        int attackSamples = countSamplesIn(envelope, Envelope.Stage.ATTACK, buffer);
+        int decaySamples = countSamplesIn(envelope, Envelope.Stage.DECAY, buffer);
+        envelope.noteOff();
+        int releaseSamples = countSamplesIn(envelope, Envelope.Stage.RELEASE, buffer);
+
+        check(Math.abs(attackSamples - 0.1 * SAMPLE_RATE) <= 2
+                        && Math.abs(decaySamples - 0.2 * SAMPLE_RATE) <= 2
+                        && Math.abs(releaseSamples - 0.3 * SAMPLE_RATE) <= 2,
+                "curve-timing: stages took " + attackSamples + ", " + decaySamples + " and " + releaseSamples
+                        + " samples, expected " + (int) (0.1 * SAMPLE_RATE) + ", " + (int) (0.2 * SAMPLE_RATE)
+                        + " and " + (int) (0.3 * SAMPLE_RATE));
+    }
+
+    private static int countSamplesIn(Envelope envelope, Envelope.Stage stage, double[] buffer) {
+        int samples = 0;
+        while (envelope.getStage() == stage) {
+            envelope.processBlock(null, buffer, 1);
+            samples++;
+        }
+        return samples;
+    }
+
+    /**
+     * Renders one block in the given mode and compares it with what the reference level implies.
+     * @return The first mismatching sample, or -1 if the block matches.
+     */
+    private static int render(int mode, Envelope envelope, double[] input, float[] inputF, double[] level,
+                              double[] output, float[] outputF, int blockSize) {
+        switch (mode) {
+            case 0 -> envelope.processBlock(null, output, blockSize);
+            case 1 -> envelope.processBlock(input, output, blockSize);
+            case 2 -> envelope.processBlock(null, outputF, blockSize);
+            default -> envelope.processBlock(inputF, outputF, blockSize);
+        }
+        for (int i = 0; i < blockSize; i++) {
+            boolean matches = switch (mode) {
+                case 0 -> Double.doubleToRawLongBits(output[i]) == Double.doubleToRawLongBits(level[i]);
+                case 1 -> Double.doubleToRawLongBits(output[i]) == Double.doubleToRawLongBits(input[i] * level[i]);
+                case 2 -> Float.floatToRawIntBits(outputF[i]) == Float.floatToRawIntBits((float) level[i]);
+                default -> Float.floatToRawIntBits(outputF[i]) == Float.floatToRawIntBits(inputF[i] * (float) level[i]);
+            };
+            if (!matches) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Mostly realistic times, with some instant and some very short stages
+    private static double randomTime(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> 0.0;
+            case 1 -> random.nextDouble() * 0.001;
+            default -> random.nextDouble() * 2.0;
+        };
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package synth.tests;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import synth.core.Synthesiser;
+import synth.midi.MidiInputHandler;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks that timestamped events land on the right sample: events that arrived during the previous
+ * block are spread over the current block in proportion to their times, early and late events are
+ * clamped to the block, an event is never placed before one queued ahead of it, a scheduled
+ * parameter change takes effect on its own sample rather than at the block boundary, and control
+ * changes that change nothing queue nothing.
+ *
+ * Blocks are rendered against a simulated clock, so the expected offsets are exact.
+ */
+public class EventSchedulingTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+    private static final long BLOCK_NANOS = 5_804_992; // 256 samples at 44.1 kHz, rounded to split into eighths exactly
+    private static final long START_NANOS = 1_000_000_000L;
+
+    // Events stamped within this block are scheduled into the next one
+    private static final long WINDOW_START = START_NANOS + BLOCK_NANOS;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testProportionalOffsets();
+        testOffsetsClamped();
+        testArrivalOrderKept();
+        testPatchChangeOnItsSample();
+        testUnchangedPatchNotQueued();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All event scheduling tests passed.");
+    }
+
+    /**
+     * Starts a note at each eighth of the window and checks its onset moves by an eighth of a block,
+     * measured against a note at the start of the window so the voice's own start-up cancels out.
+     */
+    private static void testProportionalOffsets() {
+        int baseline = onset(WINDOW_START);
+        int wrong = 0;
+        for (int k = 1; k < 8; k++) {
+            int offset = onset(WINDOW_START + BLOCK_NANOS * k / 8) - baseline;
+            if (offset != BLOCK_SIZE * k / 8) {
+                System.err.println("  Note at " + k + "/8 of the window started at sample " + offset);
+                wrong++;
+            }
+        }
+        check(baseline >= 0 && wrong == 0, "Proportional offsets: " + wrong + " of 7 notes on the wrong sample");
+    }
+
+    /**
+     * Stamps notes before the window and far after it.
+     */
+    private static void testOffsetsClamped() {
+        int baseline = onset(WINDOW_START);
+        int early = onset(START_NANOS) - baseline;
+        int late = onset(WINDOW_START + 10 * BLOCK_NANOS) - baseline;
+        check(early == 0 && late == BLOCK_SIZE - 1,
+                "Clamped offsets: early note at sample " + early + ", late note at sample " + late);
+    }
+
+    /**
+     * Queues a note stamped three quarters through the window, then one stamped a quarter through,
+     * and checks nothing sounds before the first.
+     */
+    private static void testArrivalOrderKept() {
+        int baseline = onset(WINDOW_START);
+        Synthesiser synth = createSynth();
+        synth.noteOn(0, (byte) 60, 1.0, WINDOW_START + BLOCK_NANOS * 3 / 4);
+        synth.noteOn(0, (byte) 72, 1.0, WINDOW_START + BLOCK_NANOS / 4);
+        int offset = firstSound(renderNext(synth)) - baseline;
+        check(offset == BLOCK_SIZE * 3 / 4, "Arrival order: first sound at sample " + offset + ", expected " + BLOCK_SIZE * 3 / 4);
+    }
+
+    /**
+     * Holds a note, then mutes the master volume through a scheduled change stamped half way
+     * through the window, and checks the output stops on exactly that sample.
+     */
+    private static void testPatchChangeOnItsSample() {
+        Synthesiser synth = new Synthesiser(4, SAMPLE_RATE, BLOCK_SIZE);
+        synth.setOscillatorWaveform(Synthesiser.Waveform.SAW);
+        synth.setAmpEnvelope(0.0, 0.0, 1.0, 0.1);
+        synth.setMasterLimiting(false);
+        double[] block = new double[BLOCK_SIZE * 2];
+        synth.noteOn(0, (byte) 60, 1.0, START_NANOS);
+        synth.processBlock(block, START_NANOS);
+        synth.processBlock(block, WINDOW_START);
+        synth.scheduleChange(() -> synth.setMasterVolume(0.0), WINDOW_START + BLOCK_NANOS / 2);
+        synth.processBlock(block, WINDOW_START + BLOCK_NANOS);
+
+        int lastSound = -1;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (block[2 * i] != 0.0 || block[2 * i + 1] != 0.0) {
+                lastSound = i;
+            }
+        }
+        check(lastSound == BLOCK_SIZE / 2 - 1, "Patch change: last sound at sample " + lastSound + ", expected " + (BLOCK_SIZE / 2 - 1));
+    }
+
+    /**
+     * Streams an unmapped controller, then a mapped one held at the same value, through the MIDI
+     * input, each more times than the event queue holds, and checks that only the first mapped
+     * change took a slot: the queue then still has room for all but one of a full ring of notes.
+     */
+    private static void testUnchangedPatchNotQueued() {
+        Synthesiser synth = new Synthesiser(4, SAMPLE_RATE, BLOCK_SIZE);
+        MidiInputHandler input = new MidiInputHandler(synth);
+        int queueSize = AudioConstants.MIDI_EVENT_QUEUE_SIZE;
+        try {
+            for (int i = 0; i < queueSize + 5; i++) {
+                input.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 64, i % 128), -1); // Sustain pedal, not mapped
+                input.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 16, 100), -1); // Pan depth, same value every time
+            }
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+        long droppedByControllers = synth.getDroppedEventCount();
+        for (int i = 0; i < queueSize; i++) {
+            synth.noteOff((byte) (i % 128));
+        }
+        check(droppedByControllers == 0 && synth.getDroppedEventCount() == 1,
+                "Unchanged patches: " + droppedByControllers + " control changes dropped, "
+                        + synth.getDroppedEventCount() + " of a full ring of notes dropped, expected 1");
+    }
+
+    /**
+     * Gets the sample at which a note stamped with the given time starts sounding.
+     */
+    private static int onset(long eventTimeNanos) {
+        Synthesiser synth = createSynth();
+        synth.noteOn(0, (byte) 60, 1.0, eventTimeNanos);
+        return firstSound(renderNext(synth));
+    }
+
+    /**
+     * Renders the block that the window's events are scheduled into, and the one after it, so a
+     * note placed on the last sample is still heard.
+     * @return Both blocks, one after the other.
+     */
+    private static double[] renderNext(Synthesiser synth) {
+        double[] block = new double[BLOCK_SIZE * 2];
+        double[] blocks = new double[BLOCK_SIZE * 4];
+        synth.processBlock(block, WINDOW_START + BLOCK_NANOS);
+        System.arraycopy(block, 0, blocks, 0, BLOCK_SIZE * 2);
+        synth.processBlock(block, WINDOW_START + 2 * BLOCK_NANOS);
+        System.arraycopy(block, 0, blocks, BLOCK_SIZE * 2, BLOCK_SIZE * 2);
+        return blocks;
+    }
+
+    private static int firstSound(double[] block) {
+        for (int i = 0; i < block.length / 2; i++) {
+            if (block[2 * i] != 0.0 || block[2 * i + 1] != 0.0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a synthesiser whose notes sound at full level from their first sample, with the
+     * master bus limiter off so its look-ahead does not delay the output, and renders the block
+     * before the window and the window itself, so events stamped now land in the next block.
+     */
+    private static Synthesiser createSynth() {
+        Synthesiser synth = new Synthesiser(4, SAMPLE_RATE, BLOCK_SIZE);
+        synth.setOscillatorWaveform(Synthesiser.Waveform.SAW);
+        synth.setAmpEnvelope(0.0, 0.0, 1.0, 0.1);
+        synth.setMasterLimiting(false);
+        double[] block = new double[BLOCK_SIZE * 2];
+        synth.processBlock(block, START_NANOS);
+        synth.processBlock(block, WINDOW_START);
+        return synth;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package synth.tests;
+
+import java.util.Random;
+
+import synth.components.Envelope;
+import synth.core.Synthesiser;
+import synth.core.Voice;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks that the fused single-pass voice renderer produces the same samples as the modular one,
+ * in both precisions. Pairs of identically configured voices are rendered side by side with
+ * randomised waveforms, filter settings and control periods, envelope settings and curves, note
+ * on/off timings and block sizes, all from a fixed seed. Samples are compared with ==, so a zero
+ * may differ in sign.
+ */
+public class FusedVoiceTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int TRIALS = 400;
+    private static final int MAX_BLOCK_SIZE = 512;
+    private static final int[] CONTROL_PERIODS = {0, 1, 3, 16, 64};
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testMatchesModular(Synthesiser.Precision.DOUBLE);
+        testMatchesModular(Synthesiser.Precision.FLOAT);
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All fused voice tests passed.");
+    }
+
+    private static void testMatchesModular(Synthesiser.Precision precision) {
+        Random random = new Random(precision == Synthesiser.Precision.DOUBLE ? 11 : 12);
+        Synthesiser.Waveform[] waveforms = Synthesiser.Waveform.values();
+        Envelope.Curve[] shapes = Envelope.Curve.values();
+        boolean useFloat = precision == Synthesiser.Precision.FLOAT;
+        double[] modular = new double[MAX_BLOCK_SIZE * 2];
+        double[] fused = new double[MAX_BLOCK_SIZE * 2];
+        float[] modularF = new float[MAX_BLOCK_SIZE * 2];
+        float[] fusedF = new float[MAX_BLOCK_SIZE * 2];
+
+        for (int trial = 0; trial < TRIALS; trial++) {
+            Voice reference = new Voice(Synthesiser.Waveform.SINE, 0, SAMPLE_RATE, MAX_BLOCK_SIZE, precision);
+            Voice candidate = new Voice(Synthesiser.Waveform.SINE, 0, SAMPLE_RATE, MAX_BLOCK_SIZE, precision);
+            reference.setFusedRendering(false);
+            candidate.setFusedRendering(true);
+
+            Synthesiser.Waveform waveform = waveforms[random.nextInt(waveforms.length)];
+            byte pitch = (byte) (24 + random.nextInt(90));
+            double velocity = random.nextDouble();
+            double cutoff = 20 + random.nextDouble() * 8000;
+            double resonance = 1 + random.nextDouble() * 19;
+            double modRange = random.nextDouble() * (SAMPLE_RATE / 2 - 2 - cutoff);
+            int controlPeriod = CONTROL_PERIODS[random.nextInt(CONTROL_PERIODS.length)];
+            double preGain = random.nextDouble() * 12 - 9;
+            double postGain = random.nextDouble() * 12 - 9;
+            double pan = random.nextDouble() * 2 - 1;
+            double[] amp = randomEnvelope(random);
+            double[] filter = randomEnvelope(random);
+            Envelope.Curves ampCurves = new Envelope.Curves(shapes[random.nextInt(shapes.length)],
+                    shapes[random.nextInt(shapes.length)], shapes[random.nextInt(shapes.length)]);
+            Envelope.Curves filterCurves = new Envelope.Curves(shapes[random.nextInt(shapes.length)],
+                    shapes[random.nextInt(shapes.length)], shapes[random.nextInt(shapes.length)]);
+
+            for (Voice voice : new Voice[] {reference, candidate}) {
+                voice.setOscillatorWaveform(waveform);
+                voice.setOscillatorPitch(pitch);
+                voice.setVelocity(velocity);
+                voice.setFilterParameters(cutoff, resonance, modRange);
+                voice.setFilterControlPeriod(controlPeriod);
+                voice.setFilterGainStaging(preGain, postGain);
+                voice.setPanPosition(pan);
+                voice.setAmpEnvelope(amp[0], amp[1], amp[2], amp[3]);
+                voice.setAmpEnvelopeCurves(ampCurves);
+                voice.setFilterEnvelope(filter[0], filter[1], filter[2], filter[3]);
+                voice.setFilterEnvelopeCurves(filterCurves);
+            }
+
+            for (int event = 0; event < 4; event++) {
+                if (event % 2 == 0) {
+                    reference.noteOn();
+                    candidate.noteOn();
+                } else {
+                    reference.noteOff();
+                    candidate.noteOff();
+                }
+                int blocks = 1 + random.nextInt(30);
+                for (int b = 0; b < blocks; b++) {
+                    int blockSize = 1 + random.nextInt(MAX_BLOCK_SIZE);
+                    int mismatch = -1;
+                    if (useFloat) {
+                        reference.processBlock(null, modularF, blockSize);
+                        candidate.processBlock(null, fusedF, blockSize);
+                        for (int i = 0; i < blockSize * 2 && mismatch < 0; i++) {
+                            mismatch = modularF[i] == fusedF[i] ? -1 : i;
+                        }
+                    } else {
+                        reference.processBlock(null, modular, blockSize);
+                        candidate.processBlock(null, fused, blockSize);
+                        for (int i = 0; i < blockSize * 2 && mismatch < 0; i++) {
+                            mismatch = modular[i] == fused[i] ? -1 : i;
+                        }
+                    }
+                    if (mismatch >= 0) {
+                        check(false, precision + ": trial " + trial + " (" + waveform + ", control period "
+                                + controlPeriod + ") differs at sample " + mismatch / 2 + " in " + reference.getAmpStage());
+                        return;
+                    }
+                }
+            }
+        }
+        check(true, precision + ": " + TRIALS + " randomised voices match the modular renderer");
+    }
+
+    /**
+     * Picks attack, decay, sustain and release settings, including zero-length stages.
+     */
+    private static double[] randomEnvelope(Random random) {
+        double[] envelope = new double[4];
+        for (int i = 0; i < 4; i++) {
+            envelope[i] = random.nextInt(5) == 0 ? 0.0 : random.nextDouble() * 0.2;
+        }
+        envelope[2] = random.nextInt(5) == 0 ? 1.0 : random.nextDouble();
+        return envelope;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
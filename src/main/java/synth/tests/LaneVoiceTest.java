@@ -0,0 +1,164 @@
+package synth.tests;
+
+import java.util.Random;
+
+import synth.components.Envelope;
+import synth.core.LaneVoiceRenderer;
+import synth.core.Synthesiser;
+import synth.core.Voice;
+import synth.utils.AudioConstants;
+import synth.utils.SampleKernels;
+
+/**
+ * Checks that the structure-of-arrays lane renderer produces the same mix as rendering the voices
+ * one at a time and summing them in order. Pairs of identical voice banks, larger than one group
+ * of lanes, are rendered with randomised waveforms, filter settings and control periods, envelope
+ * settings and curves, note timings and segment lengths, all from a fixed seed. Samples are
+ * compared with ==, so a zero may differ in sign. Covers the scalar filter pass and, when run with
+ * --add-modules jdk.incubator.vector, the SIMD one.
+ */
+public class LaneVoiceTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int TRIALS = 40;
+    private static final int MAX_BLOCK_SIZE = 512;
+    private static final int[] CONTROL_PERIODS = {0, 1, 3, 16, 64};
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        boolean wasVectorised = SampleKernels.isVectorised();
+        try {
+            SampleKernels.setVectorised(false);
+            testMatchesSerial("scalar");
+            if (SampleKernels.isVectorSupported()) {
+                SampleKernels.setVectorised(true);
+                testMatchesSerial("SIMD");
+            }
+        } finally {
+            SampleKernels.setVectorised(wasVectorised);
+        }
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All lane voice tests passed.");
+    }
+
+    private static void testMatchesSerial(String mode) {
+        Random random = new Random(19);
+        LaneVoiceRenderer renderer = new LaneVoiceRenderer(MAX_BLOCK_SIZE);
+        double[] serialMix = new double[MAX_BLOCK_SIZE * 2];
+        double[] laneMix = new double[MAX_BLOCK_SIZE * 2];
+        double[] voiceBuffer = new double[MAX_BLOCK_SIZE * 2];
+
+        for (int trial = 0; trial < TRIALS; trial++) {
+            // Covers a partial group, exactly one group and several groups
+            int voiceCount = 1 + random.nextInt(LaneVoiceRenderer.LANES * 3);
+            Voice[] reference = new Voice[voiceCount];
+            Voice[] candidate = new Voice[voiceCount];
+            int[] activeVoices = new int[voiceCount];
+            for (int v = 0; v < voiceCount; v++) {
+                reference[v] = new Voice(Synthesiser.Waveform.SINE, 0, SAMPLE_RATE, MAX_BLOCK_SIZE);
+                candidate[v] = new Voice(Synthesiser.Waveform.SINE, 0, SAMPLE_RATE, MAX_BLOCK_SIZE);
+                configure(random, reference[v], candidate[v]);
+                activeVoices[v] = voiceCount - 1 - v; // Not in bank order
+            }
+
+            for (int block = 0; block < 40; block++) {
+                // Start and release a few voices between segments
+                for (int change = random.nextInt(4); change > 0; change--) {
+                    int v = random.nextInt(voiceCount);
+                    if (random.nextBoolean()) {
+                        reference[v].noteOn();
+                        candidate[v].noteOn();
+                    } else {
+                        reference[v].noteOff();
+                        candidate[v].noteOff();
+                    }
+                }
+
+                int offset = random.nextInt(MAX_BLOCK_SIZE);
+                int length = 1 + random.nextInt(MAX_BLOCK_SIZE - offset);
+                double volume = random.nextDouble();
+                double silenceThreshold = AudioConstants.SILENCE_THRESHOLD * random.nextDouble();
+                for (int i = 0; i < MAX_BLOCK_SIZE * 2; i++) {
+                    serialMix[i] = random.nextDouble() - 0.5;
+                    laneMix[i] = serialMix[i];
+                }
+
+                for (int i = voiceCount - 1; i >= 0; i--) {
+                    Voice voice = reference[activeVoices[i]];
+                    voice.processBlock(null, voiceBuffer, length);
+                    SampleKernels.mixInto(serialMix, offset * 2, voiceBuffer, length * 2, volume);
+                    if (voice.isReleasing()) { // As the synthesiser's serial path does
+                        voice.endIfSilent(SampleKernels.peak(voiceBuffer, length * 2) * volume, silenceThreshold, length);
+                    }
+                }
+                renderer.render(candidate, activeVoices, voiceCount, laneMix, offset, length, volume, silenceThreshold);
+
+                int mismatch = -1;
+                for (int i = 0; i < MAX_BLOCK_SIZE * 2 && mismatch < 0; i++) {
+                    mismatch = serialMix[i] == laneMix[i] ? -1 : i;
+                }
+                if (mismatch >= 0) {
+                    check(false, mode + ": trial " + trial + " (" + voiceCount + " voices) differs at sample " + mismatch / 2);
+                    return;
+                }
+            }
+        }
+        check(true, mode + ": " + TRIALS + " randomised voice banks match the serial renderer");
+    }
+
+    /**
+     * Gives a pair of voices the same random settings.
+     */
+    private static void configure(Random random, Voice first, Voice second) {
+        Synthesiser.Waveform[] waveforms = Synthesiser.Waveform.values();
+        Envelope.Curve[] shapes = Envelope.Curve.values();
+        Synthesiser.Waveform waveform = waveforms[random.nextInt(waveforms.length)];
+        byte pitch = (byte) (24 + random.nextInt(90));
+        double velocity = random.nextDouble();
+        double cutoff = 20 + random.nextDouble() * 8000;
+        double resonance = 1 + random.nextDouble() * 19;
+        double modRange = random.nextDouble() * (SAMPLE_RATE / 2 - 2 - cutoff);
+        int controlPeriod = CONTROL_PERIODS[random.nextInt(CONTROL_PERIODS.length)];
+        double preGain = random.nextDouble() * 12 - 9;
+        double postGain = random.nextDouble() * 12 - 9;
+        double pan = random.nextDouble() * 2 - 1;
+        double[] amp = new double[4];
+        double[] filter = new double[4];
+        for (int i = 0; i < 4; i++) {
+            amp[i] = random.nextInt(5) == 0 ? 0.0 : random.nextDouble() * 0.1;
+            filter[i] = random.nextInt(5) == 0 ? 0.0 : random.nextDouble() * 0.1;
+        }
+        amp[2] = random.nextDouble();
+        filter[2] = random.nextDouble();
+        Envelope.Curves curves = new Envelope.Curves(shapes[random.nextInt(shapes.length)],
+                shapes[random.nextInt(shapes.length)], shapes[random.nextInt(shapes.length)]);
+
+        for (Voice voice : new Voice[] {first, second}) {
+            voice.setOscillatorWaveform(waveform);
+            voice.setOscillatorPitch(pitch);
+            voice.setVelocity(velocity);
+            voice.setFilterParameters(cutoff, resonance, modRange);
+            voice.setFilterControlPeriod(controlPeriod);
+            voice.setFilterGainStaging(preGain, postGain);
+            voice.setPanPosition(pan);
+            voice.setAmpEnvelope(amp[0], amp[1], amp[2], amp[3]);
+            voice.setAmpEnvelopeCurves(curves);
+            voice.setFilterEnvelope(filter[0], filter[1], filter[2], filter[3]);
+            voice.setFilterEnvelopeCurves(curves);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
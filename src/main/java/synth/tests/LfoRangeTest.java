@@ -0,0 +1,101 @@
+package synth.tests;
+
+import synth.components.oscillators.Oscillator;
+import synth.components.oscillators.SawOscillator;
+import synth.components.oscillators.SineOscillator;
+import synth.components.oscillators.SquareOscillator;
+import synth.components.oscillators.TriangleOscillator;
+import synth.core.Synthesiser;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks that the LFO stays within -1 to 1, so the pan position it drives does too. A band-limited
+ * square rings past its edges, and a note starting at the overshoot was given an invalid pan
+ * position on the audio thread; the LFOs read naive tables instead.
+ */
+public class LfoRangeTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testOscillatorRange();
+        testPanWithSquareLfo();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All LFO range tests passed.");
+    }
+
+    /**
+     * Renders a second of each LFO oscillator at 1 Hz in both precisions and checks the peak. The
+     * band-limited square is measured too, to show the test can see the overshoot.
+     */
+    private static void testOscillatorRange() {
+        double bandLimited = peak(new SquareOscillator(SAMPLE_RATE));
+        check(bandLimited > 1.0, "Band-limited square: peak " + bandLimited + " should overshoot");
+
+        Oscillator[] oscillators = {
+                new SineOscillator(SAMPLE_RATE),
+                new SawOscillator(SAMPLE_RATE, false),
+                new TriangleOscillator(SAMPLE_RATE, false),
+                new SquareOscillator(SAMPLE_RATE, false)
+        };
+        for (Oscillator oscillator : oscillators) {
+            double peak = peak(oscillator);
+            check(peak <= 1.0, oscillator.getClass().getSimpleName() + " LFO: peak " + peak);
+        }
+    }
+
+    private static double peak(Oscillator oscillator) {
+        int length = (int) SAMPLE_RATE;
+        double[] output = new double[length];
+        float[] outputF = new float[length];
+        oscillator.setFrequency(1.0);
+        oscillator.processBlock(null, output, length);
+        oscillator.setPhase(0);
+        oscillator.processBlock(null, outputF, length);
+        double peak = 0.0;
+        for (int i = 0; i < length; i++) {
+            peak = Math.max(peak, Math.max(Math.abs(output[i]), Math.abs(outputF[i])));
+        }
+        return peak;
+    }
+
+    /**
+     * Starts a note every block for three seconds with a 1 Hz square LFO at full pan depth, so
+     * notes start on every part of the LFO's cycle.
+     */
+    private static void testPanWithSquareLfo() {
+        Synthesiser synth = new Synthesiser(8, SAMPLE_RATE, BLOCK_SIZE);
+        synth.setLFOWaveform(Synthesiser.Waveform.SQUARE);
+        synth.setLFOFrequency(1.0);
+        synth.setPanDepth(1.0);
+        double[] block = new double[BLOCK_SIZE * 2];
+        double widest = 0.0;
+        String error = "none";
+        try {
+            for (int i = 0; i < 3 * SAMPLE_RATE / BLOCK_SIZE; i++) {
+                synth.noteOn((byte) (48 + i % 24), 1.0);
+                synth.processBlock(block);
+                widest = Math.max(widest, Math.abs(synth.getPanPosition()));
+            }
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        }
+        check(error.equals("none") && widest <= 1.0, "Square LFO pan: widest position " + widest + ", error " + error);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
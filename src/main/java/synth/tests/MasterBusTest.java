@@ -0,0 +1,196 @@
+package synth.tests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import synth.components.LookAheadLimiter;
+import synth.core.Synthesiser;
+import synth.utils.AudioConstants;
+import synth.utils.SampleKernels;
+
+/**
+ * Checks the master bus: that the soft clipper leaves quiet samples alone and bends loud ones
+ * smoothly below full scale; that the limiter followed by the soft clipper passes a signal under
+ * the ceiling through exactly, only delayed; that the limiter holds sudden bursts under its ceiling
+ * without clipping them, and a loud low sine, whose falling halves need a rising gain for longer
+ * than the look-ahead; and that a full synthesiser driven far too hot stays under the ceiling.
+ */
+public class MasterBusTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+    private static final double KNEE = AudioConstants.SOFT_CLIP_KNEE;
+    private static final double CEILING = AudioConstants.LIMITER_CEILING;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testSoftClipCurve();
+        testLimiterPassesQuietSignal();
+        testLimiterHoldsCeiling();
+        testLimiterLoudLowSine();
+        testSynthesiserOutput();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All master bus tests passed.");
+    }
+
+    /**
+     * Sweeps the soft clipper from -4 to 4 and compares it with the closed-form curve.
+     */
+    private static void testSoftClipCurve() {
+        int length = 8001;
+        double[] buffer = new double[length];
+        for (int i = 0; i < length; i++) {
+            buffer[i] = -4.0 + 8.0 * i / (length - 1);
+        }
+        double[] input = buffer.clone();
+        SampleKernels.softClip(buffer, length, KNEE);
+
+        double worst = 0.0;
+        boolean bounded = true;
+        boolean monotonic = true;
+        for (int i = 0; i < length; i++) {
+            double magnitude = Math.abs(input[i]);
+            double expected = magnitude <= KNEE ? input[i]
+                    : Math.copySign(KNEE + (1.0 - KNEE) * Math.tanh((magnitude - KNEE) / (1.0 - KNEE)), input[i]);
+            worst = Math.max(worst, Math.abs(buffer[i] - expected));
+            bounded &= Math.abs(buffer[i]) < 1.0;
+            monotonic &= i == 0 || buffer[i] >= buffer[i - 1];
+        }
+        check(worst < 1e-4, "Soft clip curve: worst error " + worst + " against tanh");
+        check(bounded && monotonic, "Soft clip shape: bounded " + bounded + ", monotonic " + monotonic);
+    }
+
+    /**
+     * Sends a sine peaking below the ceiling through the limiter and the soft clipper, in bus order,
+     * in blocks of changing length.
+     */
+    private static void testLimiterPassesQuietSignal() {
+        LookAheadLimiter limiter = createLimiter();
+        int latency = limiter.getLatency();
+        double[] buffer = new double[BLOCK_SIZE * 2];
+        int mismatches = 0;
+
+        int position = 0;
+        for (int block = 0; position < SAMPLE_RATE; block++) {
+            int frames = 1 + (block * 37) % BLOCK_SIZE;
+            for (int i = 0; i < frames; i++) {
+                buffer[2 * i] = quietSample(position + i);
+                buffer[2 * i + 1] = -quietSample(position + i);
+            }
+            limiter.process(buffer, frames);
+            SampleKernels.softClip(buffer, frames * 2, KNEE);
+            for (int i = 0; i < frames; i++) {
+                int source = position + i - latency;
+                double expected = source < 0 ? 0.0 : quietSample(source);
+                if (buffer[2 * i] != expected || buffer[2 * i + 1] != -expected) {
+                    mismatches++;
+                }
+            }
+            position += frames;
+        }
+        check(mismatches == 0, "Quiet signal: " + mismatches + " frames differ from the input delayed by " + latency);
+    }
+
+    private static double quietSample(int frame) {
+        return 0.99 * CEILING * Math.sin(2.0 * Math.PI * 440.0 * frame / SAMPLE_RATE);
+    }
+
+    /**
+     * Sends random bursts up to eight times the ceiling through the limiter and checks every output
+     * sample, and that the gain recovers once the bursts stop.
+     */
+    private static void testLimiterHoldsCeiling() {
+        LookAheadLimiter limiter = createLimiter();
+        Random random = new Random(11);
+        double[] buffer = new double[BLOCK_SIZE * 2];
+        double loudest = 0.0;
+        for (int block = 0; block < 400; block++) {
+            double level = random.nextInt(4) == 0 ? 8.0 * random.nextDouble() : 0.5;
+            for (int i = 0; i < BLOCK_SIZE * 2; i++) {
+                double burst = random.nextInt(50) == 0 ? level : 0.5 * CEILING;
+                buffer[i] = burst * (random.nextBoolean() ? 1.0 : -1.0);
+            }
+            limiter.process(buffer, BLOCK_SIZE);
+            for (double sample : buffer) {
+                loudest = Math.max(loudest, Math.abs(sample));
+            }
+        }
+        check(loudest <= CEILING * (1.0 + 1e-12), "Bursts: loudest output " + loudest + " against a ceiling of " + CEILING);
+
+        // A second of quiet signal, then the gain should be back to unity
+        double[] quiet = new double[BLOCK_SIZE * 2];
+        for (int block = 0; block < SAMPLE_RATE / BLOCK_SIZE; block++) {
+            Arrays.fill(quiet, 0.5);
+            limiter.process(quiet, BLOCK_SIZE);
+        }
+        check(Math.abs(quiet[0] - 0.5) < 1e-6, "Release: gain " + quiet[0] / 0.5 + " after a second of quiet");
+    }
+
+    /**
+     * Sends a full-scale 50 Hz sine through the limiter. Each falling quarter cycle asks for a
+     * steadily rising gain for several times the look-ahead, the longest run the running minimum
+     * has to queue.
+     */
+    private static void testLimiterLoudLowSine() {
+        LookAheadLimiter limiter = createLimiter();
+        double[] buffer = new double[BLOCK_SIZE * 2];
+        double loudest = 0.0;
+        int position = 0;
+        for (int block = 0; block < 200; block++) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                double sample = Math.sin(2.0 * Math.PI * 50.0 * (position + i) / SAMPLE_RATE);
+                buffer[2 * i] = sample;
+                buffer[2 * i + 1] = sample;
+            }
+            limiter.process(buffer, BLOCK_SIZE);
+            for (double sample : buffer) {
+                loudest = Math.max(loudest, Math.abs(sample));
+            }
+            position += BLOCK_SIZE;
+        }
+        check(loudest <= CEILING * (1.0 + 1e-12), "Loud low sine: loudest output " + loudest + " against a ceiling of " + CEILING);
+    }
+
+    /**
+     * Holds 64 full-velocity saw notes with the master volume far too high and checks the output peak.
+     */
+    private static void testSynthesiserOutput() {
+        int voiceCount = 64;
+        Synthesiser synth = new Synthesiser(voiceCount, SAMPLE_RATE, BLOCK_SIZE);
+        synth.setOscillatorWaveform(Synthesiser.Waveform.SAW);
+        synth.setAmpSustainLevel(1.0);
+        synth.setMasterVolume(4.0);
+        for (int i = 0; i < voiceCount; i++) {
+            synth.noteOn(0, (byte) (36 + i), 1.0, 0);
+        }
+        double[] block = new double[BLOCK_SIZE * 2];
+        double loudest = 0.0;
+        boolean finite = true;
+        for (int i = 0; i < 400; i++) {
+            synth.processBlock(block);
+            for (double sample : block) {
+                loudest = Math.max(loudest, Math.abs(sample));
+                finite &= Double.isFinite(sample);
+            }
+        }
+        check(finite && loudest <= CEILING * (1.0 + 1e-12), "Synthesiser: loudest output " + loudest);
+    }
+
+    private static LookAheadLimiter createLimiter() {
+        return new LookAheadLimiter(AudioConstants.LIMITER_LOOK_AHEAD, CEILING, AudioConstants.LIMITER_RELEASE_SECONDS, SAMPLE_RATE);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
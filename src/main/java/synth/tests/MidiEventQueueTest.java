@@ -0,0 +1,169 @@
+package synth.tests;
+
+import synth.components.Envelope;
+import synth.core.MidiEventQueue;
+import synth.core.Patch;
+import synth.core.Synthesiser;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks the MIDI event ring: that events come out in the order they went in, with their times and
+ * packed fields intact, across many trips around the ring; that a full ring refuses events instead
+ * of overwriting pending ones; that a patch change's patch travels with it and is let go once
+ * drained; and that the synthesiser counts the events it had to drop.
+ */
+public class MidiEventQueueTest {
+
+    private static final int CAPACITY = 8;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testOrderAndWraparound();
+        testFullRingRefusesEvents();
+        testPatchesReleased();
+        testDroppedEventCount();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All MIDI event queue tests passed.");
+    }
+
+    /**
+     * Offers batches of every size from 1 to the capacity, so the ring wraps at every position,
+     * and checks each drained event against the one sent.
+     */
+    private static void testOrderAndWraparound() {
+        MidiEventQueue queue = new MidiEventQueue(CAPACITY);
+        long[] events = new long[CAPACITY];
+        long[] times = new long[CAPACITY];
+        Patch[] patches = new Patch[CAPACITY];
+
+        int sent = 0;
+        int received = 0;
+        int mismatches = 0;
+        for (int round = 0; round < 200; round++) {
+            int batch = 1 + round % CAPACITY;
+            for (int i = 0; i < batch; i++) {
+                queue.offer(eventFor(sent), 1000L * sent);
+                sent++;
+            }
+            int count = queue.drainTo(events, times, patches);
+            for (int i = 0; i < count; i++) {
+                long event = events[i];
+                boolean fieldsMatch = MidiEventQueue.type(event) == (received % 2 == 0 ? MidiEventQueue.NOTE_ON : MidiEventQueue.NOTE_OFF)
+                        && MidiEventQueue.channel(event) == received % 16
+                        && MidiEventQueue.pitch(event) == received % 128
+                        && MidiEventQueue.velocity(event) == (received % 2 == 0 ? (float) ((received % 127) / 127.0) : 0.0f);
+                if (!fieldsMatch || times[i] != 1000L * received) {
+                    mismatches++;
+                }
+                received++;
+            }
+        }
+        check(mismatches == 0 && received == sent, "Order and wraparound: " + mismatches + " mismatched of " + received
+                + " received, " + sent + " sent");
+    }
+
+    private static long eventFor(int n) {
+        return n % 2 == 0
+                ? MidiEventQueue.pack(MidiEventQueue.NOTE_ON, n % 16, (byte) (n % 128), (n % 127) / 127.0)
+                : MidiEventQueue.pack(MidiEventQueue.NOTE_OFF, n % 16, (byte) (n % 128), 0.0);
+    }
+
+    /**
+     * Fills the ring part way round, then overfills it, and checks the refused events are the
+     * newest ones and the pending ones come out untouched.
+     */
+    private static void testFullRingRefusesEvents() {
+        MidiEventQueue queue = new MidiEventQueue(CAPACITY);
+        long[] events = new long[CAPACITY];
+        long[] times = new long[CAPACITY];
+        Patch[] patches = new Patch[CAPACITY];
+        for (int i = 0; i < CAPACITY / 2 + 1; i++) {
+            queue.offer(eventFor(i), i);
+        }
+        queue.drainTo(events, times, patches);
+
+        int accepted = 0;
+        int refused = 0;
+        for (int i = 0; i < CAPACITY + 3; i++) {
+            if (queue.offer(eventFor(i), i)) {
+                accepted++;
+            } else {
+                refused++;
+            }
+        }
+        int count = queue.drainTo(events, times, patches);
+        boolean intact = count == CAPACITY;
+        for (int i = 0; i < count; i++) {
+            intact &= events[i] == eventFor(i) && times[i] == i;
+        }
+        boolean reusable = queue.offer(eventFor(0), 0) && queue.drainTo(events, times, patches) == 1;
+        check(accepted == CAPACITY && refused == 3 && intact && reusable,
+                "Full ring: accepted " + accepted + ", refused " + refused + ", pending events intact " + intact
+                        + ", usable after draining " + reusable);
+    }
+
+    /**
+     * Checks that a patch travels with its event and that the ring lets go of it once drained.
+     */
+    private static void testPatchesReleased() {
+        MidiEventQueue queue = new MidiEventQueue(CAPACITY);
+        long[] events = new long[CAPACITY];
+        long[] times = new long[CAPACITY];
+        Patch[] patches = new Patch[CAPACITY];
+        Patch patch = new Patch(7, Synthesiser.Waveform.SAW,
+                1000, 1, 0, 1,
+                0, 0, 0, 0, Envelope.Curves.LINEAR,
+                0, 0, 0, 0, Envelope.Curves.LINEAR,
+                0, 0, 1.0,
+                Synthesiser.Waveform.SINE, 0, 0);
+
+        queue.offer(MidiEventQueue.packPatchChange(), 5, patch);
+        queue.offer(eventFor(0), 6);
+        int count = queue.drainTo(events, times, patches);
+        boolean carried = count == 2 && MidiEventQueue.type(events[0]) == MidiEventQueue.PATCH_CHANGE
+                && patches[0] == patch && patches[1] == null;
+
+        // Go once round the ring with plain events; every patch slot they pass through must read null
+        boolean released = true;
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(eventFor(i), i);
+        }
+        count = queue.drainTo(events, times, patches);
+        for (int i = 0; i < count; i++) {
+            released &= patches[i] == null;
+        }
+        check(carried && released, "Patch slots: carried " + carried + ", released after draining " + released);
+    }
+
+    /**
+     * Sends more note events than the synthesiser's queue holds before a block drains it.
+     */
+    private static void testDroppedEventCount() {
+        Synthesiser synth = new Synthesiser(4, AudioConstants.SAMPLE_RATE, 256);
+        int extra = 5;
+        for (int i = 0; i < AudioConstants.MIDI_EVENT_QUEUE_SIZE + extra; i++) {
+            synth.noteOff((byte) (i % 128));
+        }
+        long droppedBefore = synth.getDroppedEventCount();
+        synth.processBlock(new double[512]);
+        synth.noteOff((byte) 60);
+        synth.processBlock(new double[512]);
+        check(droppedBefore == extra && synth.getDroppedEventCount() == extra,
+                "Dropped events: counted " + droppedBefore + " of " + extra + " extra, "
+                        + synth.getDroppedEventCount() + " after draining");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package synth.tests;
+
+import synth.components.oscillators.Oscillator;
+import synth.components.oscillators.SawOscillator;
+import synth.components.oscillators.SineOscillator;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks the fixed-point oscillator phase: that it wraps cleanly past 2^32, and that a note held
+ * for a long session keeps exactly the same pitch. The old double phase was cast to an int for the
+ * table index, which saturated after 2^31 table steps (under three minutes of A4).
+ */
+public class OscillatorPhaseTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testWrapsAcrossOverflow();
+        testLongSessionPitch();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All oscillator phase tests passed.");
+    }
+
+    /**
+     * Renders a block that starts just before the phase overflows and compares every sample with
+     * the sine of the same phase computed in 64-bit arithmetic. The tolerance allows for the
+     * interpolated wavetable lookup, which is accurate to well under a millionth.
+     */
+    private static void testWrapsAcrossOverflow() {
+        Oscillator oscillator = new SineOscillator(SAMPLE_RATE);
+        oscillator.setFrequency(3520.0);
+        int increment = oscillator.getPhaseIncrement();
+        int start = -increment * (BLOCK_SIZE / 2); // Wraps half way through the block
+        oscillator.setPhase(start);
+        double[] output = new double[BLOCK_SIZE];
+        oscillator.processBlock(null, output, BLOCK_SIZE);
+
+        int mismatches = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            long phase = ((start & 0xFFFFFFFFL) + (long) i * increment) & 0xFFFFFFFFL;
+            double expected = Math.sin(2.0 * Math.PI * phase / 4294967296.0);
+            if (Math.abs(output[i] - expected) > 1e-6) {
+                mismatches++;
+            }
+        }
+        check(mismatches == 0, "Phase wrap: " + mismatches + " samples differ across the overflow");
+    }
+
+    /**
+     * Holds A4 on a saw oscillator for ten minutes, then counts the cycles (the falling edges of
+     * the saw) in the final second.
+     */
+    private static void testLongSessionPitch() {
+        Oscillator oscillator = new SawOscillator(SAMPLE_RATE);
+        double frequency = 440.0;
+        oscillator.setFrequency(frequency);
+        double[] output = new double[BLOCK_SIZE];
+        long totalSamples = (long) (SAMPLE_RATE * 600);
+        long lastSecond = totalSamples - (long) SAMPLE_RATE;
+
+        int cycles = 0;
+        double previous = 0.0;
+        for (long rendered = 0; rendered < totalSamples; rendered += BLOCK_SIZE) {
+            oscillator.processBlock(null, output, BLOCK_SIZE);
+            if (rendered + BLOCK_SIZE <= lastSecond) {
+                previous = output[BLOCK_SIZE - 1];
+                continue;
+            }
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                long sample = rendered + i;
+                if (sample >= lastSecond && sample < totalSamples && output[i] < previous - 1.0) {
+                    cycles++;
+                }
+                previous = output[i];
+            }
+        }
+        check(Math.abs(cycles - frequency) <= 1, "Long session pitch: " + cycles + " cycles in the tenth minute, expected " + frequency);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
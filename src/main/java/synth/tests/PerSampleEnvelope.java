@@ -0,0 +1,54 @@
+package synth.tests;
+
+import synth.components.Envelope;
+
+/**
+ * The original per-sample Envelope implementation, which runs the stage switch on every sample.
+ * Kept as the reference the segment-based Envelope is checked and benchmarked against.
+ */
+class PerSampleEnvelope extends Envelope {
+
+    PerSampleEnvelope(double sampleRate) {
+        super(sampleRate);
+    }
+
+    @Override
+    public void processBlock(double[] inputBuffer, double[] outputBuffer, int blockSize) {
+        for (int i = 0; i < blockSize; i++) {
+            switch (currentStage) {
+                case IDLE:
+                    currentMultiplier = 0.0;
+                    break;
+                case ATTACK:
+                    currentMultiplier += attackIncrement;
+                    if (currentMultiplier >= 1.0) {
+                        currentMultiplier = 1.0;
+                        setStage(Stage.DECAY);
+                    }
+                    break;
+                case DECAY:
+                    currentMultiplier -= decayIncrement;
+                    if (currentMultiplier <= sustainLevel) {
+                        currentMultiplier = sustainLevel;
+                        setStage(Stage.SUSTAIN);
+                    }
+                    break;
+                case SUSTAIN:
+                    currentMultiplier = sustainLevel;
+                    break;
+                case RELEASE:
+                    currentMultiplier -= releaseIncrement;
+                    if (currentMultiplier <= 0.0) {
+                        currentMultiplier = 0.0;
+                        setStage(Stage.IDLE);
+                    }
+                    break;
+            }
+            if (inputBuffer == null){
+                outputBuffer[i] = currentMultiplier;
+            } else {
+                outputBuffer[i] = inputBuffer[i] * currentMultiplier;
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package synth.tests;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import synth.core.StageTimings;
 import synth.core.Synthesiser;
+import synth.core.VoiceAllocator;
 import synth.utils.AudioConstants;
 
 public class PerformanceTest {
@@ -14,6 +16,12 @@ public class PerformanceTest {
         runStandardTest();
         System.out.println("\n");
         runContentionStressTest();
+        System.out.println("\n");
+        runParallelScalingTest();
+        System.out.println("\n");
+        runVoiceAllocationTest();
+        System.out.println("\n");
+        runSparsePolyphonyTest();
     }
 
     private static void runStandardTest() {
@@ -25,7 +33,8 @@ public class PerformanceTest {
                 AudioConstants.BLOCK_SIZE);
 
         double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
-        Map<String, Long> totalTimings = new HashMap<>();
+        synth.getStageTimings().setEnabled(true);
+        synth.getStageTimings().setVoiceStagesEnabled(true);
 
         // Activate voices
         System.out.println("Activating " + AudioConstants.NUMBER_OF_VOICES + " voices for the test...");
@@ -38,12 +47,9 @@ public class PerformanceTest {
         long totalTestTime = 0;
         for (int i = 0; i < numberOfBlocksToProcess; i++) {
             long blockStartTime = System.nanoTime();
-            Map<String, Long> blockTimings = synth.processBlockInstrumented(audioBlock);
+            synth.processBlock(audioBlock);
             long blockEndTime = System.nanoTime();
             totalTestTime += (blockEndTime - blockStartTime);
-
-            // Aggregate timings from this block into the total
-            blockTimings.forEach((key, value) -> totalTimings.merge(key, value, Long::sum));
         }
         System.out.println("Processing complete.\n");
 
@@ -52,15 +58,7 @@ public class PerformanceTest {
         System.out.println("--- Synthesiser Performance Test Results ---");
         System.out.println("Total processing time: " + TimeUnit.NANOSECONDS.toMillis(totalTestTime) + " ms");
         System.out.println("\n--- Average Time Per Stage (in microseconds) ---");
-
-        totalTimings.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()) // Sort by time, descending
-                .forEach(entry -> {
-                    long timeInNanos = entry.getValue();
-                    String stage = entry.getKey();
-                    long averageTime = timeInNanos / numberOfBlocksToProcess;
-                    System.out.printf("%-25s: %d µs%n", stage, TimeUnit.NANOSECONDS.toMicros(averageTime));
-                });
+        printAverageStageTimings(synth.getStageTimings());
         System.out.println("------------------------------------------");
     }
 
@@ -72,7 +70,8 @@ public class PerformanceTest {
                 AudioConstants.BLOCK_SIZE);
 
         double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
-        Map<String, Long> totalTimings = new HashMap<>();
+        synth.getStageTimings().setEnabled(true);
+        synth.getStageTimings().setVoiceStagesEnabled(true);
 
         // Activate voices
         System.out.println("=== Contention Stress Test ===");
@@ -106,10 +105,9 @@ public class PerformanceTest {
         long totalTestTime = 0;
         for (int i = 0; i < numberOfBlocksToProcess; i++) {
             long blockStartTime = System.nanoTime();
-            Map<String, Long> blockTimings = synth.processBlockInstrumented(audioBlock);
+            synth.processBlock(audioBlock);
             long blockEndTime = System.nanoTime();
             totalTestTime += (blockEndTime - blockStartTime);
-            blockTimings.forEach((key, value) -> totalTimings.merge(key, value, Long::sum));
         }
 
         running.set(false);
@@ -129,13 +127,141 @@ public class PerformanceTest {
         System.out.println("--- Contention Stress Test Results ---");
         System.out.println("Total processing time: " + TimeUnit.NANOSECONDS.toMillis(totalTestTime) + " ms");
         System.out.println("\n--- Average Time Per Stage (in microseconds) ---");
-        totalTimings.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .forEach(entry -> {
-                    long averageTime = entry.getValue() / numberOfBlocksToProcess;
-                    System.out.printf("%-25s: %d µs%n", entry.getKey(),
-                            TimeUnit.NANOSECONDS.toMicros(averageTime));
+        printAverageStageTimings(synth.getStageTimings());
+        System.out.println("------------------------------------------");
+    }
+
+    private static void printAverageStageTimings(StageTimings timings) {
+        long[] totals = new long[StageTimings.Stage.values().length];
+        long blocks = Math.max(1, timings.snapshot(totals));
+        long voiceStageBlocks = timings.getVoiceStageBlockCount();
+        Arrays.stream(StageTimings.Stage.values())
+                .sorted(Comparator.comparingLong((StageTimings.Stage stage) -> totals[stage.ordinal()]).reversed()) // Sort by time, descending
+                .forEach(stage -> {
+                    if (stage.isVoiceStage() && voiceStageBlocks == 0) {
+                        System.out.printf("%-25s: n/a%n", stage.getLabel()); // Voices were rendered in parallel
+                        return;
+                    }
+                    long averageTime = totals[stage.ordinal()] / (stage.isVoiceStage() ? voiceStageBlocks : blocks);
+                    System.out.printf("%-25s: %d µs%n", stage.getLabel(), TimeUnit.NANOSECONDS.toMicros(averageTime));
                 });
+    }
+
+    private static void runParallelScalingTest() {
+        int numberOfBlocksToProcess = 2000;
+        int voiceCount = 128;
+        int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        System.out.println("=== Parallel Voice Rendering Test ===");
+        System.out.println("Rendering " + voiceCount + " voices, single-threaded and with " + workerThreads + " worker thread(s)...");
+
+        long singleThreaded = timeBlocks(voiceCount, 0, numberOfBlocksToProcess);
+        long parallel = timeBlocks(voiceCount, workerThreads, numberOfBlocksToProcess);
+
+        System.out.println("\n--- Parallel Voice Rendering Results (average per block) ---");
+        System.out.printf("%-25s: %d µs%n", "Single-threaded", TimeUnit.NANOSECONDS.toMicros(singleThreaded / numberOfBlocksToProcess));
+        System.out.printf("%-25s: %d µs%n", "Parallel", TimeUnit.NANOSECONDS.toMicros(parallel / numberOfBlocksToProcess));
+        System.out.printf("%-25s: %.2fx%n", "Speed-up", (double) singleThreaded / parallel);
+        System.out.println("------------------------------------------");
+    }
+
+    private static long timeBlocks(int voiceCount, int workerThreads, int numberOfBlocksToProcess) {
+        Synthesiser synth = new Synthesiser(voiceCount, AudioConstants.SAMPLE_RATE, AudioConstants.BLOCK_SIZE);
+        synth.setRenderThreads(workerThreads);
+        synth.setAmpSustainLevel(1.0);
+        for (int i = 0; i < voiceCount; i++) {
+            synth.noteOn((byte) (i % 128), 1.0);
+        }
+
+        double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+        // Warm up so the JIT has compiled the render path before timing
+        for (int i = 0; i < numberOfBlocksToProcess / 4; i++) {
+            synth.processBlock(audioBlock);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numberOfBlocksToProcess; i++) {
+            synth.processBlock(audioBlock);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        synth.setRenderThreads(0);
+        synth.processBlock(audioBlock); // Lets the audio thread retire the worker pool
+        return elapsed;
+    }
+
+    private static void runVoiceAllocationTest() {
+        int allocations = 5_000_000;
+        int[] voiceCounts = {8, 256, 1024};
+
+        System.out.println("=== Voice Allocation Test ===");
+        System.out.println("Allocating " + allocations + " voices with every voice busy (steal) and with free voices...");
+        System.out.println("\n--- Voice Allocation Results (average per note-on) ---");
+        for (int voiceCount : voiceCounts) {
+            VoiceAllocator allocator = new VoiceAllocator(voiceCount);
+
+            // Warm up, leaving every voice allocated so each allocation has to steal
+            for (int i = 0; i < allocations; i++) {
+                allocator.allocate(0);
+            }
+            long startTime = System.nanoTime();
+            for (int i = 0; i < allocations; i++) {
+                allocator.allocate(0);
+            }
+            long stealing = System.nanoTime() - startTime;
+
+            // Steal by priority through the heap, with pseudo-random priorities such as envelope levels
+            allocator.setPrioritised(true);
+            long priority = 1;
+            startTime = System.nanoTime();
+            for (int i = 0; i < allocations; i++) {
+                priority = priority * 6364136223846793005L + 1442695040888963407L;
+                allocator.allocate(priority >>> 40);
+            }
+            long prioritised = System.nanoTime() - startTime;
+            allocator.setPrioritised(false);
+
+            // Free the oldest voice before every allocation so the free stack is used
+            startTime = System.nanoTime();
+            for (int i = 0; i < allocations; i++) {
+                allocator.free(allocator.oldest());
+                allocator.allocate(0);
+            }
+            long freeing = System.nanoTime() - startTime;
+
+            System.out.printf("%-25s: %.1f ns steal oldest, %.1f ns steal by priority, %.1f ns free + allocate%n",
+                    voiceCount + " voices", (double) stealing / allocations,
+                    (double) prioritised / allocations, (double) freeing / allocations);
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    private static void runSparsePolyphonyTest() {
+        int numberOfBlocksToProcess = 2000;
+        int soundingVoices = AudioConstants.NUMBER_OF_VOICES;
+        int[] voiceCounts = {AudioConstants.NUMBER_OF_VOICES, 1024};
+
+        System.out.println("=== Sparse Polyphony Test ===");
+        System.out.println("Rendering " + soundingVoices + " sounding voices in banks of increasing size...");
+        System.out.println("\n--- Sparse Polyphony Results (average per block) ---");
+        for (int voiceCount : voiceCounts) {
+            Synthesiser synth = new Synthesiser(voiceCount, AudioConstants.SAMPLE_RATE, AudioConstants.BLOCK_SIZE);
+            synth.setAmpSustainLevel(1.0);
+            for (int i = 0; i < soundingVoices; i++) {
+                synth.noteOn((byte) (60 + i), 1.0);
+            }
+
+            double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
+            for (int i = 0; i < numberOfBlocksToProcess / 4; i++) {
+                synth.processBlock(audioBlock);
+            }
+            long startTime = System.nanoTime();
+            for (int i = 0; i < numberOfBlocksToProcess; i++) {
+                synth.processBlock(audioBlock);
+            }
+            long elapsed = System.nanoTime() - startTime;
+            System.out.printf("%-25s: %d µs%n", voiceCount + " voice bank",
+                    TimeUnit.NANOSECONDS.toMicros(elapsed / numberOfBlocksToProcess));
+        }
         System.out.println("------------------------------------------");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,257 @@
+package synth.tests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import synth.core.StealPolicy;
+import synth.core.Synthesiser;
+import synth.core.VoiceAllocator;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks voice allocation and stealing: that the allocator always steals the slot a plain
+ * reference model says it should, by age or by (priority, age), through any mix of allocations,
+ * priority changes, frees, re-allocations and steal mode switches; and that each steal policy,
+ * played through a full synthesiser, steals the voice it describes.
+ */
+public class VoiceAllocatorTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+    private static final int VOICES = 4;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testStealOrderMatchesModel(false);
+        testStealOrderMatchesModel(true);
+        testSwitchingToPriorities();
+        testStealPolicy(StealPolicy.OLDEST, new int[]{60, 67, 72, 50});
+        testStealPolicy(StealPolicy.LOWEST_NOTE, new int[]{64, 67, 72, 50});
+        testStealPolicy(StealPolicy.HIGHEST_NOTE, new int[]{64, 60, 67, 50});
+        testStealPolicy(StealPolicy.QUIETEST, new int[]{64, 60, 72, 50});
+        testReleasedFirst();
+        testSamePitch();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All voice allocator tests passed.");
+    }
+
+    // --- Allocator against a reference model ---
+
+    /**
+     * The allocator's state, kept the obvious way: every slot's priority and age, searched in full.
+     */
+    private static final class Model {
+        final long[] priorities;
+        final long[] sequences;
+        final boolean[] allocated;
+        long nextSequence = 0;
+        int count = 0;
+
+        Model(int capacity) {
+            this.priorities = new long[capacity];
+            this.sequences = new long[capacity];
+            this.allocated = new boolean[capacity];
+        }
+
+        int expectedSteal(boolean prioritised) {
+            int best = VoiceAllocator.NONE;
+            for (int i = 0; i < this.allocated.length; i++) {
+                if (!this.allocated[i]) {
+                    continue;
+                }
+                if (best == VoiceAllocator.NONE
+                        || (prioritised && this.priorities[i] < this.priorities[best])
+                        || ((!prioritised || this.priorities[i] == this.priorities[best]) && this.sequences[i] < this.sequences[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        void take(int index, long priority) {
+            if (!this.allocated[index]) {
+                this.count++;
+            }
+            this.allocated[index] = true;
+            this.priorities[index] = priority;
+            this.sequences[index] = this.nextSequence++;
+        }
+
+        int randomAllocated(Random random) {
+            int skip = random.nextInt(this.count);
+            for (int i = 0; i < this.allocated.length; i++) {
+                if (this.allocated[i] && skip-- == 0) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("No allocated slot");
+        }
+    }
+
+    /**
+     * Runs random operations with a handful of priorities, so ties are common, and checks every
+     * steal against the model. Finishes by stealing every slot in turn.
+     */
+    private static void testStealOrderMatchesModel(boolean prioritised) {
+        int capacity = 16;
+        VoiceAllocator allocator = new VoiceAllocator(capacity);
+        allocator.setPrioritised(prioritised);
+        Model model = new Model(capacity);
+        Random random = new Random(prioritised ? 3 : 5);
+
+        int wrongSteals = 0;
+        int steals = 0;
+        for (int step = 0; step < 20000; step++) {
+            int operation = model.count == 0 ? 0 : random.nextInt(4);
+            long priority = random.nextInt(4);
+            if (operation == 0) {
+                wrongSteals += allocate(allocator, model, priority, prioritised);
+                steals += model.count == capacity ? 1 : 0;
+            } else if (operation == 1) {
+                int index = model.randomAllocated(random);
+                allocator.setStealPriority(index, priority);
+                model.priorities[index] = priority;
+            } else if (operation == 2) {
+                int index = model.randomAllocated(random);
+                allocator.free(index);
+                model.allocated[index] = false;
+                model.count--;
+            } else {
+                int index = model.randomAllocated(random);
+                allocator.reallocate(index, priority);
+                model.take(index, priority);
+            }
+        }
+        for (int i = 0; i < capacity * 2; i++) {
+            wrongSteals += allocate(allocator, model, random.nextInt(4), prioritised);
+        }
+        check(wrongSteals == 0 && steals > 0 && allocator.allocatedCount() == capacity,
+                (prioritised ? "Priority" : "Age") + " order: " + wrongSteals + " wrong steals");
+    }
+
+    /**
+     * Allocates a slot and checks it against the model.
+     * @return 1 if the allocator chose a different slot than the model, otherwise 0.
+     */
+    private static int allocate(VoiceAllocator allocator, Model model, long priority, boolean prioritised) {
+        boolean full = model.count == model.allocated.length;
+        int expected = full ? model.expectedSteal(prioritised) : VoiceAllocator.NONE;
+        int index = allocator.allocate(priority);
+        boolean wrong = full ? index != expected : model.allocated[index];
+        model.take(index, priority);
+        return wrong ? 1 : 0;
+    }
+
+    /**
+     * Writes priorities while stealing by age, then switches to priorities and checks the heap
+     * is rebuilt from them.
+     */
+    private static void testSwitchingToPriorities() {
+        VoiceAllocator allocator = new VoiceAllocator(VOICES);
+        long[] priorities = {3, 1, 2, 1};
+        for (long priority : priorities) {
+            allocator.allocate(priority);
+        }
+        allocator.writeStealPriority(2, 0);
+        allocator.setPrioritised(true);
+        int first = allocator.allocate(5);
+        int second = allocator.allocate(5);
+        int third = allocator.allocate(5);
+        check(first == 2 && second == 1 && third == 3,
+                "Switch to priorities: stole " + first + ", " + second + ", " + third + " instead of 2, 1, 3");
+    }
+
+    // --- Steal policies through the synthesiser ---
+
+    /**
+     * Holds four notes, from oldest to newest 64, 60, 72 and 67, with 67 the quietest, then plays
+     * a fifth note and checks which four notes are left.
+     * @param expected The notes that should still be held, in any order.
+     */
+    private static void testStealPolicy(StealPolicy policy, int[] expected) {
+        Synthesiser synth = createSynth(policy);
+        synth.noteOn((byte) 64, 0.9);
+        synth.noteOn((byte) 60, 0.8);
+        synth.noteOn((byte) 72, 0.7);
+        synth.noteOn((byte) 67, 0.2);
+        render(synth, 4);
+        synth.noteOn((byte) 50, 1.0);
+        render(synth, 1);
+        checkHeld(synth, expected, policy + ": ");
+    }
+
+    /**
+     * Releases the second-oldest note and checks that it, and not the oldest held note, is stolen.
+     */
+    private static void testReleasedFirst() {
+        Synthesiser synth = createSynth(StealPolicy.RELEASED_FIRST);
+        synth.noteOn((byte) 64, 1.0);
+        synth.noteOn((byte) 60, 1.0);
+        synth.noteOn((byte) 72, 1.0);
+        synth.noteOn((byte) 67, 1.0);
+        render(synth, 2);
+        synth.noteOff((byte) 60);
+        render(synth, 2);
+        synth.noteOn((byte) 50, 1.0);
+        synth.noteOn((byte) 52, 1.0);
+        render(synth, 1);
+        // 60 was releasing so goes first; then every voice is held, so the oldest goes
+        checkHeld(synth, new int[]{72, 67, 50, 52}, "RELEASED_FIRST: ");
+    }
+
+    /**
+     * Replays a held note with every voice in use and checks it is retriggered in place.
+     */
+    private static void testSamePitch() {
+        Synthesiser synth = createSynth(StealPolicy.SAME_PITCH);
+        synth.noteOn((byte) 64, 1.0);
+        synth.noteOn((byte) 60, 1.0);
+        synth.noteOn((byte) 72, 1.0);
+        synth.noteOn((byte) 67, 1.0);
+        render(synth, 2);
+        synth.noteOn((byte) 60, 0.5);
+        render(synth, 1);
+        checkHeld(synth, new int[]{64, 60, 72, 67}, "SAME_PITCH: ");
+    }
+
+    private static Synthesiser createSynth(StealPolicy policy) {
+        Synthesiser synth = new Synthesiser(VOICES, SAMPLE_RATE, BLOCK_SIZE);
+        synth.setStealPolicy(policy);
+        synth.setAmpEnvelope(0.0, 0.0, 1.0, 1.0);
+        return synth;
+    }
+
+    private static void render(Synthesiser synth, int blocks) {
+        double[] block = new double[BLOCK_SIZE * 2];
+        for (int i = 0; i < blocks; i++) {
+            synth.processBlock(block);
+        }
+    }
+
+    private static void checkHeld(Synthesiser synth, int[] expected, String label) {
+        byte[] notes = new byte[VOICES * 2];
+        int count = synth.getActiveNotes(notes);
+        int[] held = new int[count];
+        for (int i = 0; i < count; i++) {
+            held[i] = notes[i];
+        }
+        int[] sortedExpected = expected.clone();
+        Arrays.sort(held);
+        Arrays.sort(sortedExpected);
+        check(Arrays.equals(held, sortedExpected), label + "held " + Arrays.toString(held) + ", expected " + Arrays.toString(sortedExpected));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package synth.tests;
+
+import synth.components.Envelope;
+import synth.components.filters.ResonantLowPassFilter;
+import synth.core.Synthesiser;
+import synth.core.Voice;
+import synth.utils.AudioConstants;
+import synth.utils.SampleKernels;
+
+/**
+ * Checks the voice chain's protection against wasted work once a note dies away: that the filter's
+ * state is flushed to zero rather than decaying through the subnormal range after its input stops,
+ * that a releasing voice is retired once it has stayed below the silence threshold, but not on
+ * a brief quiet moment while it is still audible; and that when it is retired does not depend on
+ * the master volume.
+ */
+public class VoiceSilenceTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int BLOCK_SIZE = 256;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testFilterFlushesDouble();
+        testFilterFlushesFloat();
+        testQuietReleaseRetired();
+        testBriefSilenceIgnored();
+        testMasterVolumeIgnored();
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All voice silence tests passed.");
+    }
+
+    /**
+     * Rings the filter with an impulse at the cutoff that decays fastest, then feeds it silence and
+     * checks that no output sample or stored integrator is ever subnormal, and that the state ends at zero.
+     */
+    private static void testFilterFlushesDouble() {
+        ResonantLowPassFilter filter = new ResonantLowPassFilter(SAMPLE_RATE);
+        filter.setParameters(SAMPLE_RATE / 4, 1);
+        double[] input = new double[BLOCK_SIZE];
+        double[] output = new double[BLOCK_SIZE];
+        input[0] = 1.0;
+
+        int subnormals = 0;
+        for (int block = 0; block < 20; block++) {
+            filter.processBlock(input, output, BLOCK_SIZE);
+            input[0] = 0.0;
+            for (double sample : output) {
+                subnormals += isSubnormal(sample) ? 1 : 0;
+            }
+            subnormals += isSubnormal(filter.getIntegrator1()) || isSubnormal(filter.getIntegrator2()) ? 1 : 0;
+        }
+        boolean flushed = filter.getIntegrator1() == 0.0 && filter.getIntegrator2() == 0.0;
+        check(subnormals == 0 && flushed, "Double filter: " + subnormals + " subnormal values, state flushed " + flushed);
+    }
+
+    private static void testFilterFlushesFloat() {
+        ResonantLowPassFilter filter = new ResonantLowPassFilter(SAMPLE_RATE);
+        filter.setParameters(1000, 1);
+        float[] input = new float[BLOCK_SIZE];
+        float[] output = new float[BLOCK_SIZE];
+        input[0] = 1.0f;
+
+        int subnormals = 0;
+        for (int block = 0; block < 200; block++) {
+            filter.processBlock(input, output, BLOCK_SIZE);
+            input[0] = 0.0f;
+            for (float sample : output) {
+                subnormals += isSubnormal(sample) ? 1 : 0;
+            }
+        }
+        boolean flushed = filter.getIntegrator1F() == 0.0f && filter.getIntegrator2F() == 0.0f;
+        check(subnormals == 0 && flushed, "Float filter: " + subnormals + " subnormal values, state flushed " + flushed);
+    }
+
+    /**
+     * Releases a quiet note with a ten second exponential release, as the synthesiser renders it,
+     * and checks it is retired well before the release ends, only after SILENCE_HOLD samples
+     * below the threshold.
+     */
+    private static void testQuietReleaseRetired() {
+        double mixGain = 0.001; // A voice among many, at a moderate master volume
+        Voice voice = createVoice(10.0);
+        double[] output = new double[BLOCK_SIZE * 2];
+        for (int block = 0; block < 10; block++) {
+            voice.processBlock(null, output, BLOCK_SIZE);
+        }
+        voice.noteOff();
+
+        int rendered = 0;
+        int silentTail = 0;
+        int releaseSamples = (int) (10.0 * SAMPLE_RATE);
+        while (voice.isActive() && rendered < releaseSamples * 2) {
+            voice.processBlock(null, output, BLOCK_SIZE);
+            double peak = SampleKernels.peak(output, BLOCK_SIZE * 2) * mixGain;
+            silentTail = peak <= AudioConstants.SILENCE_THRESHOLD ? silentTail + BLOCK_SIZE : 0;
+            voice.endIfSilent(peak, AudioConstants.SILENCE_THRESHOLD, BLOCK_SIZE);
+            rendered += BLOCK_SIZE;
+        }
+        check(!voice.isActive() && rendered < releaseSamples * 0.9 && silentTail >= AudioConstants.SILENCE_HOLD,
+                "Quiet release: retired after " + rendered / SAMPLE_RATE + " s of a 10 s release, "
+                        + silentTail + " samples below the threshold");
+    }
+
+    /**
+     * Reports a single silent sample from a loud releasing voice, as a segment split at a zero
+     * crossing might, and checks the voice keeps playing.
+     */
+    private static void testBriefSilenceIgnored() {
+        Voice voice = createVoice(1.0);
+        double[] output = new double[BLOCK_SIZE * 2];
+        voice.processBlock(null, output, BLOCK_SIZE);
+        voice.noteOff();
+        voice.endIfSilent(0.0, AudioConstants.SILENCE_THRESHOLD, 1);
+        voice.processBlock(null, output, BLOCK_SIZE);
+        voice.endIfSilent(SampleKernels.peak(output, BLOCK_SIZE * 2), AudioConstants.SILENCE_THRESHOLD, BLOCK_SIZE);
+        check(voice.isActive(), "Brief silence: voice still active after a one-sample quiet segment");
+    }
+
+    /**
+     * Releases the same note at full and at a low master volume, measured and thresholded as the
+     * synthesiser does, and checks it is retired after the same number of samples.
+     */
+    private static void testMasterVolumeIgnored() {
+        int loud = samplesUntilRetired(1.0);
+        int quiet = samplesUntilRetired(0.05);
+        check(loud == quiet, "Master volume: retired after " + loud + " samples at full volume, " + quiet + " at -26 dB");
+    }
+
+    private static int samplesUntilRetired(double masterVolume) {
+        double mixGain = 0.001 * masterVolume;
+        double threshold = AudioConstants.SILENCE_THRESHOLD * masterVolume;
+        Voice voice = createVoice(10.0);
+        double[] output = new double[BLOCK_SIZE * 2];
+        voice.processBlock(null, output, BLOCK_SIZE);
+        voice.noteOff();
+
+        int rendered = 0;
+        while (voice.isActive() && rendered < SAMPLE_RATE * 20) {
+            voice.processBlock(null, output, BLOCK_SIZE);
+            voice.endIfSilent(SampleKernels.peak(output, BLOCK_SIZE * 2) * mixGain, threshold, BLOCK_SIZE);
+            rendered += BLOCK_SIZE;
+        }
+        return rendered;
+    }
+
+    private static Voice createVoice(double releaseTime) {
+        Voice voice = new Voice(Synthesiser.Waveform.SAW, 0, SAMPLE_RATE, BLOCK_SIZE);
+        voice.setFilterGainStaging(0, 0);
+        voice.setAmpEnvelope(0, 0, 1, releaseTime);
+        voice.setAmpEnvelopeCurves(new Envelope.Curves(Envelope.Curve.LINEAR, Envelope.Curve.LINEAR, Envelope.Curve.EXPONENTIAL));
+        voice.setOscillatorPitch((byte) 60);
+        voice.noteOn();
+        return voice;
+    }
+
+    private static boolean isSubnormal(double value) {
+        return value != 0.0 && Math.abs(value) < Double.MIN_NORMAL;
+    }
+
+    private static boolean isSubnormal(float value) {
+        return value != 0.0f && Math.abs(value) < Float.MIN_NORMAL;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package synth.tests;
+
+import synth.components.oscillators.Oscillator;
+import synth.components.oscillators.SawOscillator;
+import synth.components.oscillators.SquareOscillator;
+import synth.components.oscillators.TriangleOscillator;
+import synth.utils.AudioConstants;
+
+/**
+ * Checks that the band-limited wavetables do not alias. One second of a high note is rendered, so
+ * every harmonic lands on a whole-Hz DFT bin, and the energy outside the harmonics below the
+ * Nyquist frequency (anything folded back from above it) is measured as a fraction of the total.
+ * A naive saw at the same pitch is measured too, to show the test can see aliasing.
+ */
+public class WavetableAliasTest {
+
+    private static final double SAMPLE_RATE = AudioConstants.SAMPLE_RATE;
+    private static final int FREQUENCY = 3001; // Not a divisor of the sample rate, so aliases miss the harmonics
+    private static final double MAX_ALIAS_ENERGY = 1e-4; // -40 dB
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int length = (int) SAMPLE_RATE;
+
+        double naive = aliasEnergy(naiveSaw(length));
+        check(naive > MAX_ALIAS_ENERGY, "Naive saw: alias energy " + naive + " should be detectable");
+
+        Oscillator[] oscillators = {
+                new SawOscillator(SAMPLE_RATE),
+                new SquareOscillator(SAMPLE_RATE),
+                new TriangleOscillator(SAMPLE_RATE)
+        };
+        for (Oscillator oscillator : oscillators) {
+            oscillator.setFrequency(FREQUENCY);
+            double[] output = new double[length];
+            oscillator.processBlock(null, output, length);
+            double energy = aliasEnergy(output);
+            check(energy < MAX_ALIAS_ENERGY, oscillator.getClass().getSimpleName() + ": alias energy " + energy
+                    + " (naive saw " + naive + ")");
+        }
+
+        if (failures > 0) {
+            System.err.println(failures + " test(s) FAILED.");
+            System.exit(1);
+        }
+        System.out.println("All wavetable alias tests passed.");
+    }
+
+    private static double[] naiveSaw(int length) {
+        double[] output = new double[length];
+        for (int i = 0; i < length; i++) {
+            double phase = (double) i * FREQUENCY / SAMPLE_RATE;
+            output[i] = 2.0 * (phase - Math.floor(phase)) - 1.0;
+        }
+        return output;
+    }
+
+    /**
+     * Measures the fraction of a signal's energy that is not in the fundamental's harmonics, using
+     * Parseval's theorem for the total and a single-bin DFT for each harmonic.
+     */
+    private static double aliasEnergy(double[] signal) {
+        int length = signal.length;
+        double total = 0.0;
+        for (double sample : signal) {
+            total += sample * sample;
+        }
+        total /= length;
+
+        double harmonic = 0.0;
+        for (int bin = FREQUENCY; bin < length / 2; bin += FREQUENCY) {
+            double real = 0.0;
+            double imag = 0.0;
+            for (int i = 0; i < length; i++) {
+                double angle = 2.0 * Math.PI * (((long) bin * i) % length) / length;
+                real += signal[i] * Math.cos(angle);
+                imag -= signal[i] * Math.sin(angle);
+            }
+            harmonic += 2.0 * (real * real + imag * imag) / ((double) length * length);
+        }
+        return (total - harmonic) / total;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAIL: " + message);
+            failures++;
+        } else {
+            System.out.println("PASS: " + message.split(":")[0]);
+        }
+    }
+}
@@ -8,6 +8,8 @@ import javafx.stage.Stage;
 
 import java.util.Objects;
 
+import synth.utils.LookupTablePreloader;
+
 /**
  * The main application class for the synthesiser's GUI.
  * This class is responsible for loading the FXML layout and showing the main window.
@@ -37,6 +39,8 @@ public class SynthApplication extends Application {
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        // Build the lookup tables while the JavaFX toolkit starts up
+        LookupTablePreloader.start();
         launch(args);
     }
 }
\ No newline at end of file
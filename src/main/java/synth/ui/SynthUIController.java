@@ -1,10 +1,13 @@
 package synth.ui;
 
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.ResourceBundle;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -24,10 +27,12 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.layout.VBox;
+import synth.core.StageTimings;
 import synth.core.Synthesiser;
 import synth.midi.MidiDeviceConnector;
 import synth.utils.AudioConstants;
 import synth.utils.AudioDeviceConnector;
+import synth.utils.SampleKernels;
 
 /**
  * Controller for the main synthesiser user interface.
@@ -44,10 +49,12 @@ public class SynthUIController implements Initializable {
     private volatile Thread audioThread;
     private volatile boolean audioThreadRunning = false;
     
-    // Performance logging variables
-    private final Map<String, Long> totalTimings = new HashMap<>();
-    private int blockCount = 0;
-    private long lastReportTime = 0;
+    // Performance logging variables, owned by the background reporting task
+    private static final long PERFORMANCE_REPORT_INTERVAL_SECONDS = 5;
+    private final long[] reportTotals = new long[StageTimings.Stage.values().length];
+    private final long[] lastReportTotals = new long[StageTimings.Stage.values().length];
+    private long lastReportBlockCount = 0;
+    private long lastReportVoiceStageBlockCount = 0;
     
     // Formatters for parameter readouts
     private final DecimalFormat frequencyFormat = new DecimalFormat("0.0");
@@ -152,6 +159,48 @@ public class SynthUIController implements Initializable {
         });
         long intervalMs = (long) (AudioConstants.DEVICE_SCAN_INTERVAL_SECONDS * 1000);
         deviceScanExecutor.scheduleAtFixedRate(this::refreshDeviceLists, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+
+        // Live performance report, read lock-free from the audio thread's stage timings. Only the
+        // block-level stages are timed, so the voices keep their fused and lane render paths.
+        synth.getStageTimings().setEnabled(true);
+        deviceScanExecutor.scheduleAtFixedRate(this::reportPerformance,
+                PERFORMANCE_REPORT_INTERVAL_SECONDS, PERFORMANCE_REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Prints the average time per processing stage over the last reporting interval.
+     * Per-voice stages are only listed for the blocks they were recorded in.
+     * Runs on the background executor so the audio thread never formats or prints.
+     */
+    private void reportPerformance() {
+        long voiceStageBlockCount = synth.getStageTimings().getVoiceStageBlockCount();
+        long blockCount = synth.getStageTimings().snapshot(reportTotals);
+        long intervalBlocks = blockCount - lastReportBlockCount;
+        long intervalVoiceStageBlocks = voiceStageBlockCount - lastReportVoiceStageBlockCount;
+
+        System.out.println("\n--- Live Performance Report ---");
+        if (intervalBlocks > 0) {
+            Arrays.stream(StageTimings.Stage.values())
+                .filter(stage -> !stage.isVoiceStage() || intervalVoiceStageBlocks > 0)
+                .sorted(Comparator.comparingLong(
+                        (StageTimings.Stage stage) -> reportTotals[stage.ordinal()] - lastReportTotals[stage.ordinal()]).reversed())
+                .forEach(stage -> {
+                    long stageBlocks = stage.isVoiceStage() ? intervalVoiceStageBlocks : intervalBlocks;
+                    long avgTimeNanos = (reportTotals[stage.ordinal()] - lastReportTotals[stage.ordinal()]) / stageBlocks;
+                    System.out.printf("%-25s: %d µs%n", stage.getLabel(),
+                                      TimeUnit.NANOSECONDS.toMicros(avgTimeNanos));
+                });
+            if (synth.getStageTimings().isVoiceStagesEnabled() && intervalVoiceStageBlocks < intervalBlocks) {
+                System.out.println("Per-voice stages unavailable for " + (intervalBlocks - intervalVoiceStageBlocks)
+                        + " of " + intervalBlocks + " blocks (voices rendered in parallel)");
+            }
+        }
+        System.out.println("---------------------------------");
+
+        // Remember this snapshot as the start of the next reporting interval
+        System.arraycopy(reportTotals, 0, lastReportTotals, 0, reportTotals.length);
+        lastReportBlockCount = blockCount;
+        lastReportVoiceStageBlockCount = voiceStageBlockCount;
     }
 
     /**
@@ -596,34 +645,25 @@ public class SynthUIController implements Initializable {
 
     /**
      * Starts the main audio processing loop on a separate, non-UI thread.
-     * Includes performance instrumentation that reports timing data every 5 seconds.
+     * Stage timings are recorded by the synthesiser and reported by a background task every 5 seconds.
      */
     private void startAudioProcessingThread() {
         audioThreadRunning = true;
         audioThread = new Thread(() -> {
             double[] audioBlock = new double[AudioConstants.BLOCK_SIZE * 2];
             byte[] buffer = new byte[AudioConstants.BLOCK_SIZE * 4];
-            lastReportTime = System.nanoTime();
+            short[] pcmBlock = new short[AudioConstants.BLOCK_SIZE * 2];
+            ShortBuffer pcmOut = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
 
             while (audioThreadRunning && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // Use the instrumented version of processBlock
-                    Map<String, Long> blockTimings = synth.processBlockInstrumented(audioBlock);
-
-                    // Aggregate timings from this block into the total
-                    blockTimings.forEach((key, value) -> totalTimings.merge(key, value, Long::sum));
-                    blockCount++;
-
-                    // Convert double array to byte array for audio output
-                    for (int i = 0; i < AudioConstants.BLOCK_SIZE; i++) {
-                        short pcmLeft = (short) (audioBlock[i * 2] * Short.MAX_VALUE);
-                        buffer[i * 4] = (byte) (pcmLeft >> 8);
-                        buffer[i * 4 + 1] = (byte) pcmLeft;
-                        short pcmRight = (short) (audioBlock[i * 2 + 1] * Short.MAX_VALUE);
-                        buffer[i * 4 + 2] = (byte) (pcmRight >> 8);
-                        buffer[i * 4 + 3] = (byte) pcmRight;
-                    }
-                    
+                    synth.processBlock(audioBlock);
+
+                    // Convert double array to big-endian 16-bit PCM for audio output
+                    SampleKernels.toPcm16(audioBlock, pcmBlock, pcmBlock.length);
+                    pcmOut.clear();
+                    pcmOut.put(pcmBlock);
+
                     // Check if line is still open before writing
                     if (line != null && line.isOpen()) {
                         line.write(buffer, 0, buffer.length);
@@ -631,27 +671,6 @@ public class SynthUIController implements Initializable {
                         // Line was closed, exit gracefully
                         break;
                     }
-
-                    // Print a performance report every 5 seconds
-                    long now = System.nanoTime();
-                    if (now - lastReportTime > 5_000_000_000L) { // 5 billion nanoseconds = 5 seconds
-                        System.out.println("\n--- Live Performance Report ---");
-                        if (blockCount > 0) {
-                            totalTimings.entrySet().stream()
-                                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                                .forEach(entry -> {
-                                    long avgTimeNanos = entry.getValue() / blockCount;
-                                    System.out.printf("%-25s: %d µs%n", entry.getKey(),
-                                                      TimeUnit.NANOSECONDS.toMicros(avgTimeNanos));
-                                });
-                        }
-                        System.out.println("---------------------------------");
-
-                        // Reset for the next reporting interval
-                        totalTimings.clear();
-                        blockCount = 0;
-                        lastReportTime = now;
-                    }
                 } catch (Exception e) {
                     // If an exception occurs (e.g., during device switching), exit gracefully
                     if (audioThreadRunning) {
@@ -5,6 +5,16 @@ public interface AudioConstants {
     int BLOCK_SIZE = 256;
     int BUFFER_SIZE =  BLOCK_SIZE * 8;
     int NUMBER_OF_VOICES = 8;
+    int MIDI_EVENT_QUEUE_SIZE = 1024;
+    int PARALLEL_VOICE_THRESHOLD = 16;
+    int FILTER_CONTROL_PERIOD = 16;
     int LOOKUP_TABLE_SIZE = 16384*2;
+    int WAVETABLE_SIZE = 4096; // Oscillator tables, small enough to share the L2 cache
+    double SOFT_CLIP_KNEE = 0.9; // Just above the limiter's ceiling
+    int LIMITER_LOOK_AHEAD = 64; // Frames, about 1.5 ms
+    double LIMITER_CEILING = 0.891; // -1 dBFS
+    double LIMITER_RELEASE_SECONDS = 0.05;
+    double SILENCE_THRESHOLD = 1e-5; // -100 dBFS
+    int SILENCE_HOLD = 512; // Samples a releasing voice must stay below the threshold to be retired
     double DEVICE_SCAN_INTERVAL_SECONDS = 3.0;
 }
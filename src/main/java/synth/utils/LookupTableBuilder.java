@@ -0,0 +1,274 @@
+package synth.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Fills lookup tables in parallel on the common fork-join pool.
+ *
+ * The table formulas live here rather than in LookupTables because the tables are built from
+ * LookupTables' static initialiser: a worker thread that ran code belonging to LookupTables
+ * would wait for that initialiser to finish, while the initialiser waits for the worker.
+ * Nothing in this class may read LookupTables' static fields; tables are passed in instead.
+ */
+final class LookupTableBuilder {
+
+    private static final int TABLE_SIZE = AudioConstants.LOOKUP_TABLE_SIZE;
+    private static final int WAVETABLE_SIZE = AudioConstants.WAVETABLE_SIZE;
+
+    // Ranges at or below this size are filled directly instead of being split further
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private LookupTableBuilder() {
+    }
+
+    /**
+     * Fills the tables every voice needs, all at once.
+     */
+    static void buildCoreTables(double[] sine, double[] cosine, double[] tan, double[] resonanceK, double[] midiToHz) {
+        ForkJoinTask.invokeAll(
+                // Sine Table
+                new FillTask(sine, i -> Math.sin(2.0 * Math.PI * (double) i / TABLE_SIZE)),
+                // Cosine Table
+                new FillTask(cosine, i -> Math.cos(2.0 * Math.PI * (double) i / TABLE_SIZE)),
+                // Tan Table (from 0 to PI)
+                new FillTask(tan, i -> Math.tan(Math.PI * (double) i / TABLE_SIZE)),
+                // Filter Damping: map the index to a resonance value (from 1.0 to 20.0), k = 1/Q
+                new FillTask(resonanceK, i -> 1.0 / (1.0 + (i / (double) (resonanceK.length - 1)) * 19.0)),
+                // Midi note to pitch
+                new FillTask(midiToHz, i -> 440.0 * Math.pow(2.0, (i - 69) / 12.0))
+        );
+    }
+
+    /**
+     * Builds the sine wavetable, with a guard point (see sumHarmonics).
+     */
+    static double[] buildSineWave() {
+        double[] table = new double[WAVETABLE_SIZE + 1];
+        new FillTask(table, i -> Math.sin(2.0 * Math.PI * (double) (i % WAVETABLE_SIZE) / WAVETABLE_SIZE)).invoke();
+        return table;
+    }
+
+    /**
+     * Builds the tanh table for soft clipping over 0 to range, with a guard point at the end.
+     * @param size The number of steps.
+     * @param range The input the last step reaches.
+     */
+    static double[] buildTanh(int size, double range) {
+        double[] table = new double[size + 1];
+        new FillTask(table, i -> Math.tanh(range * i / size)).invoke();
+        return table;
+    }
+
+    /**
+     * Builds band-limited square wave tables (1 for the first half of the cycle, -1 for the second),
+     * one per mipmap level: (4 / pi) * sin(h * x) / h over the odd harmonics h.
+     */
+    static double[][] buildSquareLevels(int levels) {
+        return buildLevels(levels, h -> h % 2 == 1 ? 4.0 / (Math.PI * h) : 0.0, false);
+    }
+
+    /**
+     * Builds band-limited saw wave tables (rising from -1 to 1), one per mipmap level:
+     * -(2 / pi) * sin(h * x) / h over every harmonic h.
+     */
+    static double[][] buildSawLevels(int levels) {
+        return buildLevels(levels, h -> -2.0 / (Math.PI * h), false);
+    }
+
+    /**
+     * Builds band-limited triangle wave tables (from -1 at the start of the cycle to 1 half way),
+     * one per mipmap level: -(8 / pi^2) * cos(h * x) / h^2 over the odd harmonics h.
+     */
+    static double[][] buildTriangleLevels(int levels) {
+        return buildLevels(levels, h -> h % 2 == 1 ? -8.0 / (Math.PI * Math.PI * h * h) : 0.0, true);
+    }
+
+    /**
+     * Builds a naive square wave table (1 for the first half of the cycle, -1 for the second), with
+     * a guard point. Every harmonic is present, so it aliases at audio rates; it is meant for LFOs,
+     * where it stays within -1 to 1 instead of ringing past the edges.
+     */
+    static double[] buildNaiveSquare() {
+        return buildNaiveWave(i -> i < WAVETABLE_SIZE / 2 ? 1.0 : -1.0);
+    }
+
+    /**
+     * Builds a naive saw wave table (rising from -1 to 1), with a guard point.
+     */
+    static double[] buildNaiveSaw() {
+        return buildNaiveWave(i -> 2.0 * ((double) i / WAVETABLE_SIZE) - 1.0);
+    }
+
+    /**
+     * Builds a naive triangle wave table (from -1 at the start of the cycle to 1 half way), with a guard point.
+     */
+    static double[] buildNaiveTriangle() {
+        return buildNaiveWave(i -> {
+            double value = 2.0 * ((double) i / WAVETABLE_SIZE);
+            if (value > 1.0) {
+                value = 2.0 - value;
+            }
+            return 2.0 * value - 1.0;
+        });
+    }
+
+    private static double[] buildNaiveWave(IntToDoubleFunction entry) {
+        double[] table = new double[WAVETABLE_SIZE + 1];
+        new FillTask(table, i -> entry.applyAsDouble(i % WAVETABLE_SIZE)).invoke();
+        return table;
+    }
+
+    /**
+     * Builds one table per mipmap level, each summing the Fourier series up to its harmonic limit:
+     * WAVETABLE_SIZE / 2 harmonics at level 0, halving with every level up to a single harmonic. The
+     * levels are summed in parallel, each with an inverse FFT.
+     * @param levels The number of levels.
+     * @param amplitude The amplitude of each harmonic.
+     * @param cosine true for a cosine series, false for a sine series.
+     */
+    private static double[][] buildLevels(int levels, IntToDoubleFunction amplitude, boolean cosine) {
+        double[][] tables = new double[levels][];
+        List<RecursiveAction> tasks = new ArrayList<>(levels);
+        for (int level = 0; level < levels; level++) {
+            int index = level;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    tables[index] = sumHarmonics((WAVETABLE_SIZE / 2) >> index, amplitude, cosine);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return tables;
+    }
+
+    /**
+     * Sums a sine or cosine series of the given number of harmonics over one table cycle, by
+     * placing the harmonics in a spectrum and taking its inverse FFT. The table has one guard
+     * point past the end of the cycle, a copy of the first, so an interpolating lookup never wraps.
+     */
+    private static double[] sumHarmonics(int harmonics, IntToDoubleFunction amplitude, boolean cosine) {
+        double[] real = new double[WAVETABLE_SIZE];
+        double[] imaginary = new double[WAVETABLE_SIZE];
+        for (int h = 1; h <= harmonics; h++) {
+            double a = amplitude.applyAsDouble(h);
+            // a cos(hx) = (a / 2)(e^ihx + e^-ihx), a sin(hx) = (a / 2i)(e^ihx - e^-ihx)
+            if (cosine) {
+                real[h] += a / 2.0;
+                real[WAVETABLE_SIZE - h] += a / 2.0;
+            } else {
+                imaginary[h] -= a / 2.0;
+                imaginary[WAVETABLE_SIZE - h] += a / 2.0;
+            }
+        }
+        inverseFft(real, imaginary);
+        double[] table = Arrays.copyOf(real, WAVETABLE_SIZE + 1);
+        table[WAVETABLE_SIZE] = table[0];
+        return table;
+    }
+
+    /**
+     * An in-place iterative radix-2 inverse FFT without the 1/N scaling, so each bin's value is the
+     * amplitude of its complex exponential in the output. The length must be a power of two.
+     */
+    private static void inverseFft(double[] real, double[] imaginary) {
+        int n = real.length;
+        // Bit-reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double swap = real[i];
+                real[i] = real[j];
+                real[j] = swap;
+                swap = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = swap;
+            }
+        }
+        // Butterflies, with the twiddle factors computed directly to avoid accumulating rounding
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1;
+            for (int k = 0; k < half; k++) {
+                double angle = 2.0 * Math.PI * k / length;
+                double twiddleReal = Math.cos(angle);
+                double twiddleImaginary = Math.sin(angle);
+                for (int start = 0; start < n; start += length) {
+                    int even = start + k;
+                    int odd = even + half;
+                    double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+                    double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a single-precision copy of a table.
+     * @param table The double table.
+     * @return The float copy.
+     */
+    static float[] toFloat(double[] table) {
+        float[] copy = new float[table.length];
+        for (int i = 0; i < table.length; i++) {
+            copy[i] = (float) table[i];
+        }
+        return copy;
+    }
+
+    static float[][] toFloat(double[][] tables) {
+        float[][] copies = new float[tables.length][];
+        for (int i = 0; i < tables.length; i++) {
+            copies[i] = toFloat(tables[i]);
+        }
+        return copies;
+    }
+
+    /**
+     * Fills a range of a table from a per-index formula, halving the range until it is small enough.
+     * Never serialised, like any fork-join task here.
+     */
+    @SuppressWarnings("serial")
+    private static final class FillTask extends RecursiveAction {
+        private final double[] table;
+        private final IntToDoubleFunction entry;
+        private final int from;
+        private final int to;
+
+        private FillTask(double[] table, IntToDoubleFunction entry) {
+            this(table, entry, 0, table.length);
+        }
+
+        private FillTask(double[] table, IntToDoubleFunction entry, int from, int to) {
+            this.table = table;
+            this.entry = entry;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SPLIT_THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.table[i] = this.entry.applyAsDouble(i);
+                }
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new FillTask(this.table, this.entry, this.from, middle),
+                    new FillTask(this.table, this.entry, middle, this.to));
+        }
+    }
+}
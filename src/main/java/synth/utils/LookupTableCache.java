@@ -0,0 +1,187 @@
+package synth.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent binary cache of the core lookup tables, so later launches can skip computing them.
+ *
+ * The file is memory-mapped on load. It starts with a header (magic, format version, table size,
+ * resonance steps, sample rate, section count, CRC32 of the data), followed by a section directory
+ * of (id, length) pairs and then the table data itself, in native byte order. A file with a different
+ * key, an unknown section layout or a checksum mismatch is ignored and rewritten.
+ *
+ * The cache lives in ~/.midisynth by default. Set the system property synth.lutCache to another
+ * file path to move it, or to "off" to disable it.
+ */
+public final class LookupTableCache {
+
+    private static final int MAGIC = 0x4D534C54; // "MSLT"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 40;
+
+
+    private LookupTableCache() {
+    }
+
+    /**
+     * Gets the cache file for the current table size and sample rate.
+     * @return The cache file, or null if the cache is disabled.
+     */
+    public static Path cacheFile() {
+        String configured = System.getProperty("synth.lutCache");
+        if ("off".equalsIgnoreCase(configured)) {
+            return null;
+        }
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured);
+        }
+        String name = "lut-v" + FORMAT_VERSION + "-" + LookupTables.TABLE_SIZE + "-" + (long) AudioConstants.SAMPLE_RATE + ".bin";
+        return Paths.get(System.getProperty("user.home"), ".midisynth", name);
+    }
+
+    /**
+     * Fills the lookup tables from the cache file.
+     * @return true if every table was loaded, false if the cache is disabled, missing or invalid.
+     */
+    static boolean load() {
+        Path file = cacheFile();
+        if (file == null || !Files.isRegularFile(file)) {
+            return false;
+        }
+        double[][] sections = sections();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() != expectedFileBytes(sections)) {
+                return false;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+
+            // Header: reject any file built for different tables
+            if (mapped.getInt() != MAGIC
+                    || mapped.getInt() != FORMAT_VERSION
+                    || mapped.getInt() != LookupTables.TABLE_SIZE
+                    || mapped.getInt() != LookupTables.RESONANCE_STEPS
+                    || mapped.getDouble() != AudioConstants.SAMPLE_RATE
+                    || mapped.getInt() != sections.length) {
+                return false;
+            }
+            mapped.getInt(); // Padding
+            long storedChecksum = mapped.getLong();
+
+            // Section directory
+            for (int id = 0; id < sections.length; id++) {
+                if (mapped.getInt() != id || mapped.getInt() != sections[id].length) {
+                    return false;
+                }
+            }
+
+            // Data: verify before copying anything into the live tables
+            int dataStart = mapped.position();
+            CRC32 crc = new CRC32();
+            crc.update(mapped.slice());
+            if (crc.getValue() != storedChecksum) {
+                System.err.println("Lookup table cache " + file + " failed its checksum, rebuilding.");
+                return false;
+            }
+            mapped.position(dataStart);
+            for (double[] table : sections) {
+                mapped.asDoubleBuffer().get(table);
+                mapped.position(mapped.position() + table.length * Double.BYTES);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not read lookup table cache " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the current lookup tables to the cache file. The file is written under a temporary
+     * name and moved into place, so a concurrent or interrupted launch never sees a partial file.
+     * Failures are reported and otherwise ignored; the cache is only an optimisation.
+     */
+    static void store() {
+        Path file = cacheFile();
+        if (file == null) {
+            return;
+        }
+        double[][] sections = sections();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            ByteBuffer buffer = ByteBuffer.allocate((int) expectedFileBytes(sections)).order(ByteOrder.nativeOrder());
+
+            // Header, with the checksum filled in once the data is written
+            buffer.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(LookupTables.TABLE_SIZE)
+                    .putInt(LookupTables.RESONANCE_STEPS)
+                    .putDouble(AudioConstants.SAMPLE_RATE)
+                    .putInt(sections.length)
+                    .putInt(0); // Padding
+            int checksumPosition = buffer.position();
+            buffer.putLong(0L);
+
+            for (int id = 0; id < sections.length; id++) {
+                buffer.putInt(id).putInt(sections[id].length);
+            }
+            int dataStart = buffer.position();
+            for (double[] table : sections) {
+                buffer.asDoubleBuffer().put(table);
+                buffer.position(buffer.position() + table.length * Double.BYTES);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), dataStart, buffer.position() - dataStart);
+            buffer.putLong(checksumPosition, crc.getValue());
+            buffer.flip();
+
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write lookup table cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the cached tables in file order. Section ids are fixed once released; add new ones at the end.
+     * Built on demand rather than held in a static field, as this runs during LookupTables initialisation.
+     */
+    private static double[][] sections() {
+        return new double[][] {
+                LookupTables.SINE,
+                LookupTables.COSINE,
+                LookupTables.TAN_TABLE,
+                LookupTables.RESONANCE_K,
+                LookupTables.MIDI_TO_HZ
+        };
+    }
+
+    private static long expectedFileBytes(double[][] sections) {
+        long bytes = HEADER_BYTES + (long) sections.length * 2 * Integer.BYTES;
+        for (double[] table : sections) {
+            bytes += (long) table.length * Double.BYTES;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,52 @@
+package synth.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Builds the lookup tables on a background thread, so start-up work such as loading the UI and
+ * scanning for devices overlaps with it. Anything that touches LookupTables before the build has
+ * finished simply waits for it, as with any class initialisation.
+ *
+ * Kept separate from LookupTables so that calling start() does not itself initialise the tables
+ * on the caller's thread.
+ */
+public final class LookupTablePreloader {
+
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static final AtomicBoolean singlePrecisionStarted = new AtomicBoolean(false);
+
+    private LookupTablePreloader() {
+    }
+
+    /**
+     * Starts building the core lookup tables and the double-precision waveform tables in the
+     * background. Only the first call has any effect.
+     */
+    public static void start() {
+        start(false);
+    }
+
+    /**
+     * Starts building the core lookup tables and the waveform tables in the background, unless a
+     * previous call already has.
+     * @param singlePrecision true to also build the single-precision copies for the float engine.
+     */
+    public static void start(boolean singlePrecision) {
+        boolean first = !started.getAndSet(true);
+        boolean firstSinglePrecision = singlePrecision && !singlePrecisionStarted.getAndSet(true);
+        if (!first && !firstSinglePrecision) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                MethodHandles.lookup().ensureInitialized(LookupTables.class);
+                LookupTables.preloadTables(singlePrecision);
+            } catch (IllegalAccessException e) {
+                System.err.println("Could not preload lookup tables: " + e.getMessage());
+            }
+        }, "lut-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -2,87 +2,257 @@ package synth.utils;
 
 /**
  * Pre-Computes expensive math functions on startup in order to optimise real-time performance.
+ * The core tables every voice needs are loaded from the on-disk cache (see LookupTableCache) or,
+ * failing that, computed in parallel. The other waveform tables and the single-precision copies
+ * are built by preloadTables, which LookupTablePreloader runs in the background; the Synthesiser
+ * constructor starts it, and the app starts it earlier still. Call LookupTablePreloader.start()
+ * early to build the tables in the background instead of on whichever thread first touches this class.
+ *
+ * The oscillator wavetables are WAVETABLE_SIZE entries long, small enough for every waveform a
+ * voice bank plays to stay in cache, and are read with linear interpolation (see Oscillator).
+ * Each has a guard point past the end of the cycle, so the interpolation never wraps. The square,
+ * saw and triangle waves are band-limited and mipmapped: one table per octave of fundamental
+ * frequency, each holding only the harmonics that stay below the Nyquist frequency across its
+ * octave. An oscillator picks its level with mipmapLevel whenever its frequency changes. LFOs read
+ * naive copies of those waves instead: far below the audio range nothing aliases, and a
+ * band-limited table's ringing would take the LFO past -1 to 1.
  */
 public class LookupTables {
 
     public static final int TABLE_SIZE = AudioConstants.LOOKUP_TABLE_SIZE;
+    public static final int WAVETABLE_SIZE = AudioConstants.WAVETABLE_SIZE;
     public static final int RESONANCE_STEPS = 128;
 
+    // Soft clipping: tanh from 0 to TANH_RANGE, beyond which it is within 1e-6 of 1
+    public static final int TANH_TABLE_SIZE = 1024;
+    public static final double TANH_RANGE = 8.0;
+
+    // Mipmaps: level 0 holds WAVETABLE_SIZE / 2 harmonics (as many as the table can represent), and
+    // each level after it half as many, down to a pure sine at the last level
+    private static final int HARMONIC_BITS = Integer.numberOfTrailingZeros(WAVETABLE_SIZE / 2);
+    public static final int MIPMAP_LEVELS = HARMONIC_BITS + 1;
+
     public static final double[] SINE = new double[TABLE_SIZE];
     public static final double[] COSINE = new double[TABLE_SIZE];
-    public static final double[] SQUARE = new double[TABLE_SIZE];
-    public static final double[] SAW = new double[TABLE_SIZE];
-    public static final double[] TRIANGLE = new double[TABLE_SIZE];
     public static final double[] TAN_TABLE = new double[TABLE_SIZE];
 
-    // Filter Coefficients
-    public static final double[][] A1_TABLE = new double[TABLE_SIZE][RESONANCE_STEPS];
-    public static final double[][] A2_TABLE = new double[TABLE_SIZE][RESONANCE_STEPS];
-    public static final double[][] A3_TABLE = new double[TABLE_SIZE][RESONANCE_STEPS];
+    // Filter Damping: k = 1/Q for each resonance step. The SVF coefficients are derived from
+    // TAN_TABLE and this table in closed form (see filterA1), instead of being stored per
+    // cutoff and resonance pair.
+    public static final double[] RESONANCE_K = new double[RESONANCE_STEPS];
 
     // Midi to pitch
     public static final double[] MIDI_TO_HZ = new double[128];
 
     static {
-        System.out.println("Pre-computing LUTs... (This may take a moment)");
-        // Sine Table
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            SINE[i] = Math.sin(2.0 * Math.PI * (double) i / TABLE_SIZE);
+        if (LookupTableCache.load()) {
+            System.out.println("Loaded LUTs from " + LookupTableCache.cacheFile());
+        } else {
+            System.out.println("Pre-computing LUTs... (This may take a moment)");
+            LookupTableBuilder.buildCoreTables(SINE, COSINE, TAN_TABLE, RESONANCE_K, MIDI_TO_HZ);
+            System.out.println("LUT pre-computation complete.");
+            LookupTableCache.store();
         }
+    }
 
-        // Cosine Table
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            COSINE[i] = Math.cos(2.0 * Math.PI * (double) i / TABLE_SIZE);
-        }
-        // Square Table
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            SQUARE[i] = (i < TABLE_SIZE / 2) ? 1.0 : -1.0;
-        }
+    // Tables built on demand. Each holder class is initialised by the JVM on first use, so an
+    // unused precision costs nothing, and later reads need no checks.
 
-        // Saw Table (from -1 to 1)
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            SAW[i] = 2.0 * ((double) i / TABLE_SIZE) - 1.0;
-        }
+    private static final class Sine {
+        static final double[] TABLE = LookupTableBuilder.buildSineWave();
+    }
 
-        // Triangle Table (from -1 to 1)
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            double value = 2.0 * ((double) i / TABLE_SIZE);
-            if (value > 1.0) {
-                value = 2.0 - value;
-            }
-            TRIANGLE[i] = 2.0 * value - 1.0;
-        }
+    private static final class Tanh {
+        static final double[] TABLE = LookupTableBuilder.buildTanh(TANH_TABLE_SIZE, TANH_RANGE);
+    }
 
-        // Tan Table (from 0 to PI)
-        for (int i = 0; i < TABLE_SIZE; i++) {
-            TAN_TABLE[i] = Math.tan(Math.PI * (double) i / TABLE_SIZE);
-        }
+    private static final class Square {
+        static final double[][] LEVELS = LookupTableBuilder.buildSquareLevels(MIPMAP_LEVELS);
+    }
 
-        // Filter Coefficients
-        for (int cutoffIndex = 0; cutoffIndex < TABLE_SIZE; cutoffIndex++) {
-            double g = TAN_TABLE[cutoffIndex];
-
-            for (int resIndex = 0; resIndex < RESONANCE_STEPS; resIndex++) {
-                // Map the index to a resonance value (from 1.0 to 20.0)
-                double resonanceQ = 1.0 + (resIndex / (double)(RESONANCE_STEPS - 1)) * 19.0;
-                double k = 1.0 / resonanceQ;
-
-                // Calculate Filter Coefficients
-                double a1 = 1.0 / (1.0 + g * (g + k));
-                double a2 = g * a1;
-                double a3 = g * a2;
-
-                // Store the results in 2D LUTs
-                A1_TABLE[cutoffIndex][resIndex] = a1;
-                A2_TABLE[cutoffIndex][resIndex] = a2;
-                A3_TABLE[cutoffIndex][resIndex] = a3;
-            }
-        }
+    private static final class Saw {
+        static final double[][] LEVELS = LookupTableBuilder.buildSawLevels(MIPMAP_LEVELS);
+    }
+
+    private static final class Triangle {
+        static final double[][] LEVELS = LookupTableBuilder.buildTriangleLevels(MIPMAP_LEVELS);
+    }
 
-        // Midi not to pitch
-        for (int i = 0; i < 128; i++) {
-            MIDI_TO_HZ[i] = 440.0 * Math.pow(2.0, (i - 69) / 12.0);
+    private static final class SquareFloat {
+        static final float[][] LEVELS = LookupTableBuilder.toFloat(Square.LEVELS);
+    }
+
+    private static final class SawFloat {
+        static final float[][] LEVELS = LookupTableBuilder.toFloat(Saw.LEVELS);
+    }
+
+    private static final class TriangleFloat {
+        static final float[][] LEVELS = LookupTableBuilder.toFloat(Triangle.LEVELS);
+    }
+
+    private static final class SineFloat {
+        static final float[] TABLE = LookupTableBuilder.toFloat(Sine.TABLE);
+    }
+
+    private static final class Naive {
+        static final double[] SQUARE = LookupTableBuilder.buildNaiveSquare();
+        static final double[] SAW = LookupTableBuilder.buildNaiveSaw();
+        static final double[] TRIANGLE = LookupTableBuilder.buildNaiveTriangle();
+    }
+
+    private static final class NaiveFloat {
+        static final float[] SQUARE = LookupTableBuilder.toFloat(Naive.SQUARE);
+        static final float[] SAW = LookupTableBuilder.toFloat(Naive.SAW);
+        static final float[] TRIANGLE = LookupTableBuilder.toFloat(Naive.TRIANGLE);
+    }
+
+    /**
+     * Builds the waveform mipmaps and the tanh table now, if they have not been built already.
+     * The saw mipmaps alone take tens of milliseconds, several blocks' worth, so this should run on
+     * a background thread (see LookupTablePreloader) before the tables are first read by the audio
+     * thread, which otherwise waits for them.
+     * @param singlePrecision true to also build the single-precision copies for the float engine.
+     */
+    public static void preloadTables(boolean singlePrecision) {
+        // Reading each holder's field is enough to initialise it
+        double[] sine = Sine.TABLE;
+        double[] tanh = Tanh.TABLE;
+        double[][] square = Square.LEVELS;
+        double[][] saw = Saw.LEVELS;
+        double[][] triangle = Triangle.LEVELS;
+        double[] naive = Naive.SQUARE;
+        if (singlePrecision) {
+            float[] sineF = SineFloat.TABLE;
+            float[][] squareF = SquareFloat.LEVELS;
+            float[][] sawF = SawFloat.LEVELS;
+            float[][] triangleF = TriangleFloat.LEVELS;
+            float[] naiveF = NaiveFloat.SQUARE;
         }
-        System.out.println("LUT pre-computation complete.");
+    }
+
+    /**
+     * Chooses the mipmap level for an oscillator's phase increment: the first level whose highest
+     * harmonic stays below the Nyquist frequency for every increment in the same octave.
+     * @param phaseIncrement The fixed-point phase increment, a fraction of a cycle per sample in
+     *                       units of 2^-32 (see Oscillator). Increments at or above the Nyquist
+     *                       frequency get the last level.
+     * @return The level, from 0 to MIPMAP_LEVELS - 1.
+     */
+    public static int mipmapLevel(int phaseIncrement) {
+        // Level k holds 2^(HARMONIC_BITS - k) harmonics, which reach the Nyquist frequency
+        // (an increment of 2^31) at an increment of 2^(31 - HARMONIC_BITS + k)
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(phaseIncrement);
+        return Math.max(0, Math.min(MIPMAP_LEVELS - 1, bits - (31 - HARMONIC_BITS)));
+    }
+
+    /**
+     * Gets the sine wavetable, building it if preloadTables has not.
+     * @return The table. Must not be modified.
+     */
+    public static double[] sine() {
+        return Sine.TABLE;
+    }
+
+    /**
+     * Gets the tanh table for soft clipping, building it if preloadTables has not: TANH_TABLE_SIZE steps from 0
+     * to TANH_RANGE, with a guard point at TANH_RANGE.
+     * @return The table. Must not be modified.
+     */
+    public static double[] tanh() {
+        return Tanh.TABLE;
+    }
+
+    /**
+     * Gets a band-limited square wave table, building the mipmaps if preloadTables has not.
+     * @param level The mipmap level (see mipmapLevel).
+     * @return The table. Must not be modified.
+     */
+    public static double[] square(int level) {
+        return Square.LEVELS[level];
+    }
+
+    /**
+     * Gets a band-limited saw wave table (from -1 to 1), building the mipmaps if preloadTables has not.
+     * @param level The mipmap level (see mipmapLevel).
+     * @return The table. Must not be modified.
+     */
+    public static double[] saw(int level) {
+        return Saw.LEVELS[level];
+    }
+
+    /**
+     * Gets a band-limited triangle wave table (from -1 to 1), building the mipmaps if preloadTables has not.
+     * @param level The mipmap level (see mipmapLevel).
+     * @return The table. Must not be modified.
+     */
+    public static double[] triangle(int level) {
+        return Triangle.LEVELS[level];
+    }
+
+    /**
+     * Gets a naive, not band-limited, square wave table for LFOs, building it if preloadTables has not.
+     * @return The table. Must not be modified.
+     */
+    public static double[] naiveSquare() {
+        return Naive.SQUARE;
+    }
+
+    /**
+     * Gets a naive saw wave table (from -1 to 1) for LFOs, building it if preloadTables has not.
+     * @return The table. Must not be modified.
+     */
+    public static double[] naiveSaw() {
+        return Naive.SAW;
+    }
+
+    /**
+     * Gets a naive triangle wave table (from -1 to 1) for LFOs, building it if preloadTables has not.
+     * @return The table. Must not be modified.
+     */
+    public static double[] naiveTriangle() {
+        return Naive.TRIANGLE;
+    }
+
+    // Single-precision copies of the waveform tables, for the float engine
+
+    public static float[] sineF() {
+        return SineFloat.TABLE;
+    }
+
+    public static float[] squareF(int level) {
+        return SquareFloat.LEVELS[level];
+    }
+
+    public static float[] sawF(int level) {
+        return SawFloat.LEVELS[level];
+    }
+
+    public static float[] triangleF(int level) {
+        return TriangleFloat.LEVELS[level];
+    }
+
+    public static float[] naiveSquareF() {
+        return NaiveFloat.SQUARE;
+    }
+
+    public static float[] naiveSawF() {
+        return NaiveFloat.SAW;
+    }
+
+    public static float[] naiveTriangleF() {
+        return NaiveFloat.TRIANGLE;
+    }
+
+    /**
+     * Computes the first TPT SVF coefficient for a cutoff and resonance grid point.
+     * The other two follow as a2 = g * a1 and a3 = g * a2, with g = TAN_TABLE[cutoffIndex].
+     * This is the same expression the coefficient grids were once filled with, so the result is bit-identical.
+     * @param cutoffIndex The cutoff index, TABLE_SIZE * cutoff / sampleRate.
+     * @param resonanceIndex The resonance step.
+     * @return The a1 coefficient.
+     */
+    public static double filterA1(int cutoffIndex, int resonanceIndex) {
+        double g = TAN_TABLE[cutoffIndex];
+        return 1.0 / (1.0 + g * (g + RESONANCE_K[resonanceIndex]));
     }
 }
@@ -0,0 +1,300 @@
+package synth.utils;
+
+/**
+ * Element-wise sample loops shared by the voices, the mixer and the audio output: gain, stereo
+ * panning, voice summing, hard clipping and 16-bit PCM conversion.
+ *
+ * Each kernel except PCM conversion has a plain scalar loop and, when the jdk.incubator.vector
+ * module is present (run with --add-modules jdk.incubator.vector), an explicit SIMD version in
+ * VectorSampleKernels.
+ * Both perform the same IEEE operations on each sample in the same order, so they produce
+ * identical output and can be switched at any time, even while audio is running.
+ *
+ * The vector kernels are used by default when available. Set the system property synth.simd to
+ * "off" to start with the scalar loops, or call setVectorised at runtime.
+ */
+public final class SampleKernels {
+
+    private static final boolean VECTOR_SUPPORTED = detectVectorSupport();
+
+    private static volatile boolean vectorised = VECTOR_SUPPORTED
+            && !"off".equalsIgnoreCase(System.getProperty("synth.simd"));
+
+    private SampleKernels() {
+    }
+
+    /**
+     * Checks whether the SIMD kernels can be used in this JVM.
+     * @return true if the jdk.incubator.vector module is loaded.
+     */
+    public static boolean isVectorSupported() {
+        return VECTOR_SUPPORTED;
+    }
+
+    /**
+     * Checks whether the SIMD kernels are currently in use.
+     * @return true for the SIMD kernels, false for the scalar loops.
+     */
+    public static boolean isVectorised() {
+        return vectorised;
+    }
+
+    /**
+     * Switches between the SIMD kernels and the scalar loops.
+     * @param enabled true to use the SIMD kernels.
+     * @throws IllegalArgumentException if enabled is true and the Vector API is not available.
+     */
+    public static void setVectorised(boolean enabled) {
+        if (enabled && !VECTOR_SUPPORTED) {
+            throw new IllegalArgumentException("The Vector API is not available; run with --add-modules jdk.incubator.vector.");
+        }
+        vectorised = enabled;
+    }
+
+    /**
+     * Multiplies a buffer by a gain in place.
+     * @param buffer The samples to scale.
+     * @param length The number of samples to scale, from the start of the buffer.
+     * @param gain The linear gain.
+     */
+    public static void scale(double[] buffer, int length, double gain) {
+        if (vectorised) {
+            VectorSampleKernels.scale(buffer, length, gain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+    public static void scale(float[] buffer, int length, float gain) {
+        if (vectorised) {
+            VectorSampleKernels.scale(buffer, length, gain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+    /**
+     * Applies a gain to a mono buffer and pans it into an interleaved stereo buffer.
+     * Each output sample is (mono * gain) * channelGain.
+     * @param mono The mono input.
+     * @param stereo The interleaved stereo output, at least twice the length.
+     * @param length The number of mono samples.
+     * @param gain The gain applied to both channels.
+     * @param leftGain The left channel's pan gain.
+     * @param rightGain The right channel's pan gain.
+     */
+    public static void panToStereo(double[] mono, double[] stereo, int length, double gain, double leftGain, double rightGain) {
+        if (vectorised) {
+            VectorSampleKernels.panToStereo(mono, stereo, length, gain, leftGain, rightGain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            double monoSample = mono[i] * gain;
+            stereo[i * 2] = monoSample * leftGain;
+            stereo[i * 2 + 1] = monoSample * rightGain;
+        }
+    }
+
+    public static void panToStereo(float[] mono, float[] stereo, int length, float gain, float leftGain, float rightGain) {
+        if (vectorised) {
+            VectorSampleKernels.panToStereo(mono, stereo, length, gain, leftGain, rightGain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            float monoSample = mono[i] * gain;
+            stereo[i * 2] = monoSample * leftGain;
+            stereo[i * 2 + 1] = monoSample * rightGain;
+        }
+    }
+
+    /**
+     * Adds a scaled buffer into a mix: mix[mixOffset + i] += source[i] * gain.
+     * @param mix The buffer to sum into.
+     * @param mixOffset The first index written in the mix.
+     * @param source The samples to add.
+     * @param length The number of samples to add.
+     * @param gain The gain applied to the source.
+     */
+    public static void mixInto(double[] mix, int mixOffset, double[] source, int length, double gain) {
+        if (vectorised) {
+            VectorSampleKernels.mixInto(mix, mixOffset, source, length, gain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            mix[mixOffset + i] += source[i] * gain;
+        }
+    }
+
+    public static void mixInto(float[] mix, int mixOffset, float[] source, int length, float gain) {
+        if (vectorised) {
+            VectorSampleKernels.mixInto(mix, mixOffset, source, length, gain);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            mix[mixOffset + i] += source[i] * gain;
+        }
+    }
+
+    /**
+     * Adds the output of a FIR filter into a buffer:
+     * output[i] += source[sourceOffset + i] * taps[0] + source[sourceOffset + i - 1] * taps[1] + ...,
+     * accumulated in tap order.
+     * @param output The buffer to sum into, from its start.
+     * @param source The filter input. Must hold taps.length - 1 samples of history before sourceOffset.
+     * @param sourceOffset The index of the input sample aligned with output[0].
+     * @param taps The filter taps, newest input first.
+     * @param length The number of output samples.
+     */
+    public static void convolveInto(double[] output, double[] source, int sourceOffset, double[] taps, int length) {
+        if (vectorised) {
+            VectorSampleKernels.convolveInto(output, source, sourceOffset, taps, length);
+            return;
+        }
+        // A tap at a time across the block, so the samples don't wait on each other's sums
+        for (int k = 0; k < taps.length; k++) {
+            double tap = taps[k];
+            int from = sourceOffset - k;
+            for (int i = 0; i < length; i++) {
+                output[i] += source[from + i] * tap;
+            }
+        }
+    }
+
+    /**
+     * Adds a buffer into a mix without scaling: mix[mixOffset + i] += source[i].
+     * @param mix The buffer to sum into.
+     * @param mixOffset The first index written in the mix.
+     * @param source The samples to add.
+     * @param length The number of samples to add.
+     */
+    public static void addInto(double[] mix, int mixOffset, double[] source, int length) {
+        if (vectorised) {
+            VectorSampleKernels.addInto(mix, mixOffset, source, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            mix[mixOffset + i] += source[i];
+        }
+    }
+
+    public static void addInto(float[] mix, int mixOffset, float[] source, int length) {
+        if (vectorised) {
+            VectorSampleKernels.addInto(mix, mixOffset, source, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            mix[mixOffset + i] += source[i];
+        }
+    }
+
+    /**
+     * Hard clips a buffer in place to the range -1.0 to 1.0.
+     * @param buffer The samples to clip.
+     * @param length The number of samples to clip, from the start of the buffer.
+     */
+    public static void hardClip(double[] buffer, int length) {
+        if (vectorised) {
+            VectorSampleKernels.hardClip(buffer, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] > 1.0) {
+                buffer[i] = 1.0;
+            } else if (buffer[i] < -1.0) {
+                buffer[i] = -1.0;
+            }
+        }
+    }
+
+    /**
+     * Finds the largest magnitude in a buffer. Scalar in both modes; it only runs on releasing voices.
+     * @param buffer The samples to measure.
+     * @param length The number of samples to measure, from the start of the buffer.
+     * @return The peak magnitude, or 0.0 for an empty buffer.
+     */
+    public static double peak(double[] buffer, int length) {
+        double peak = 0.0;
+        for (int i = 0; i < length; i++) {
+            peak = Math.max(peak, Math.abs(buffer[i]));
+        }
+        return peak;
+    }
+
+    /**
+     * Finds the largest magnitude in a single-precision buffer. See peak(double[], int).
+     * @param buffer The samples to measure.
+     * @param length The number of samples to measure, from the start of the buffer.
+     * @return The peak magnitude, or 0.0 for an empty buffer.
+     */
+    public static float peak(float[] buffer, int length) {
+        float peak = 0.0f;
+        for (int i = 0; i < length; i++) {
+            peak = Math.max(peak, Math.abs(buffer[i]));
+        }
+        return peak;
+    }
+
+    /**
+     * Soft clips a buffer in place. Samples up to the knee pass unchanged; above it they follow a
+     * tanh curve that leaves the knee at the same slope and approaches 1.0, so
+     * y = knee + (1 - knee) * tanh((|x| - knee) / (1 - knee)), with the sign of x.
+     * The curve is read from the tanh lookup table with linear interpolation. Scalar in both modes,
+     * as the table reads are a gather; most samples take the cheap branch below the knee.
+     * @param buffer The samples to clip.
+     * @param length The number of samples to clip, from the start of the buffer.
+     * @param knee The level at which clipping starts, between 0.0 and 1.0.
+     */
+    public static void softClip(double[] buffer, int length, double knee) {
+        double[] table = LookupTables.tanh();
+        double range = 1.0 - knee;
+        double scale = LookupTables.TANH_TABLE_SIZE / (LookupTables.TANH_RANGE * range);
+        double last = LookupTables.TANH_TABLE_SIZE;
+        for (int i = 0; i < length; i++) {
+            double sample = buffer[i];
+            double magnitude = Math.abs(sample);
+            if (!(magnitude > knee)) {
+                continue; // Also leaves NaN alone, like hardClip
+            }
+            double position = Math.min((magnitude - knee) * scale, last);
+            int index = (int) position;
+            double shaped;
+            if (index >= LookupTables.TANH_TABLE_SIZE) {
+                shaped = table[LookupTables.TANH_TABLE_SIZE];
+            } else {
+                double fraction = position - index;
+                shaped = table[index] + (table[index + 1] - table[index]) * fraction;
+            }
+            buffer[i] = Math.copySign(knee + range * shaped, sample);
+        }
+    }
+
+    /**
+     * Converts samples in the range -1.0 to 1.0 to signed 16-bit PCM, truncating towards zero.
+     * Scalar in both modes: the Vector API's double to short conversion is not compiled to SIMD
+     * instructions on JDK 17 and measured several times slower than this loop.
+     * @param samples The samples to convert.
+     * @param pcm The PCM output.
+     * @param length The number of samples to convert.
+     */
+    public static void toPcm16(double[] samples, short[] pcm, int length) {
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) (samples[i] * Short.MAX_VALUE);
+        }
+    }
+
+    private static boolean detectVectorSupport() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            // Initialises the species, which fails if the module cannot be used on this platform
+            return VectorSampleKernels.isUsable();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package synth.utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the SampleKernels loops, using the incubating Vector API.
+ * Only loaded once SampleKernels has found the jdk.incubator.vector module, so nothing else may
+ * refer to this class directly. Every kernel does the same IEEE operations per sample as its
+ * scalar loop (no fused multiply-add), with a scalar tail for the samples past the last full vector.
+ */
+final class VectorSampleKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    // Interleaving: lane i of the low and high half of a mono vector, each lane duplicated
+    private static final VectorShuffle<Double> DOUBLE_LOW_PAIRS = VectorShuffle.fromOp(DOUBLES, i -> i / 2);
+    private static final VectorShuffle<Double> DOUBLE_HIGH_PAIRS = VectorShuffle.fromOp(DOUBLES, i -> DOUBLES.length() / 2 + i / 2);
+    private static final VectorShuffle<Float> FLOAT_LOW_PAIRS = VectorShuffle.fromOp(FLOATS, i -> i / 2);
+    private static final VectorShuffle<Float> FLOAT_HIGH_PAIRS = VectorShuffle.fromOp(FLOATS, i -> FLOATS.length() / 2 + i / 2);
+    private static final VectorMask<Double> DOUBLE_LEFT_LANES = VectorMask.fromLong(DOUBLES, 0x5555_5555_5555_5555L);
+    private static final VectorMask<Float> FLOAT_LEFT_LANES = VectorMask.fromLong(FLOATS, 0x5555_5555_5555_5555L);
+
+    private VectorSampleKernels() {
+    }
+
+    /**
+     * Checks that the preferred vector shape holds at least two lanes, so the kernels do any work in parallel.
+     */
+    static boolean isUsable() {
+        return DOUBLES.length() >= 2 && FLOATS.length() >= 2;
+    }
+
+    static void scale(double[] buffer, int length, double gain) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, buffer, i).mul(gain).intoArray(buffer, i);
+        }
+        for (; i < length; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+    static void scale(float[] buffer, int length, float gain) {
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, buffer, i).mul(gain).intoArray(buffer, i);
+        }
+        for (; i < length; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+    static void panToStereo(double[] mono, double[] stereo, int length, double gain, double leftGain, double rightGain) {
+        int lanes = DOUBLES.length();
+        DoubleVector channelGains = DoubleVector.broadcast(DOUBLES, rightGain).blend(leftGain, DOUBLE_LEFT_LANES);
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            DoubleVector monoSamples = DoubleVector.fromArray(DOUBLES, mono, i).mul(gain);
+            monoSamples.rearrange(DOUBLE_LOW_PAIRS).mul(channelGains).intoArray(stereo, i * 2);
+            monoSamples.rearrange(DOUBLE_HIGH_PAIRS).mul(channelGains).intoArray(stereo, i * 2 + lanes);
+        }
+        for (; i < length; i++) {
+            double monoSample = mono[i] * gain;
+            stereo[i * 2] = monoSample * leftGain;
+            stereo[i * 2 + 1] = monoSample * rightGain;
+        }
+    }
+
+    static void panToStereo(float[] mono, float[] stereo, int length, float gain, float leftGain, float rightGain) {
+        int lanes = FLOATS.length();
+        FloatVector channelGains = FloatVector.broadcast(FLOATS, rightGain).blend(leftGain, FLOAT_LEFT_LANES);
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            FloatVector monoSamples = FloatVector.fromArray(FLOATS, mono, i).mul(gain);
+            monoSamples.rearrange(FLOAT_LOW_PAIRS).mul(channelGains).intoArray(stereo, i * 2);
+            monoSamples.rearrange(FLOAT_HIGH_PAIRS).mul(channelGains).intoArray(stereo, i * 2 + lanes);
+        }
+        for (; i < length; i++) {
+            float monoSample = mono[i] * gain;
+            stereo[i * 2] = monoSample * leftGain;
+            stereo[i * 2 + 1] = monoSample * rightGain;
+        }
+    }
+
+    static void mixInto(double[] mix, int mixOffset, double[] source, int length, double gain) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector scaled = DoubleVector.fromArray(DOUBLES, source, i).mul(gain);
+            DoubleVector.fromArray(DOUBLES, mix, mixOffset + i).add(scaled).intoArray(mix, mixOffset + i);
+        }
+        for (; i < length; i++) {
+            mix[mixOffset + i] += source[i] * gain;
+        }
+    }
+
+    static void convolveInto(double[] output, double[] source, int sourceOffset, double[] taps, int length) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        // Each vector of outputs stays in a register while every tap is added in
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, output, i);
+            for (int k = 0; k < taps.length; k++) {
+                sum = sum.add(DoubleVector.fromArray(DOUBLES, source, sourceOffset + i - k).mul(taps[k]));
+            }
+            sum.intoArray(output, i);
+        }
+        for (; i < length; i++) {
+            double sum = output[i];
+            for (int k = 0; k < taps.length; k++) {
+                sum += source[sourceOffset + i - k] * taps[k];
+            }
+            output[i] = sum;
+        }
+    }
+
+    static void mixInto(float[] mix, int mixOffset, float[] source, int length, float gain) {
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector scaled = FloatVector.fromArray(FLOATS, source, i).mul(gain);
+            FloatVector.fromArray(FLOATS, mix, mixOffset + i).add(scaled).intoArray(mix, mixOffset + i);
+        }
+        for (; i < length; i++) {
+            mix[mixOffset + i] += source[i] * gain;
+        }
+    }
+
+    static void addInto(double[] mix, int mixOffset, double[] source, int length) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, mix, mixOffset + i)
+                    .add(DoubleVector.fromArray(DOUBLES, source, i))
+                    .intoArray(mix, mixOffset + i);
+        }
+        for (; i < length; i++) {
+            mix[mixOffset + i] += source[i];
+        }
+    }
+
+    static void addInto(float[] mix, int mixOffset, float[] source, int length) {
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, mix, mixOffset + i)
+                    .add(FloatVector.fromArray(FLOATS, source, i))
+                    .intoArray(mix, mixOffset + i);
+        }
+        for (; i < length; i++) {
+            mix[mixOffset + i] += source[i];
+        }
+    }
+
+    static void hardClip(double[] buffer, int length) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            // min and max leave NaN and in-range samples (including -0.0) untouched, like the scalar compare
+            DoubleVector.fromArray(DOUBLES, buffer, i).max(-1.0).min(1.0).intoArray(buffer, i);
+        }
+        for (; i < length; i++) {
+            if (buffer[i] > 1.0) {
+                buffer[i] = 1.0;
+            } else if (buffer[i] < -1.0) {
+                buffer[i] = -1.0;
+            }
+        }
+    }
+}